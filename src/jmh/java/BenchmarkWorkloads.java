@@ -0,0 +1,177 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.function.IntSupplier;
+
+/**
+ * Benchmark workloads over the graph classes. JMH only accepts benchmarks in a named package, which cannot see
+ * classes in the default package, so each workload does its setup here and hands back an IntSupplier that performs
+ * one operation. The benchmarks package obtains them reflectively (see benchmarks.Workloads) and only ever calls
+ * getAsInt in the measured loop. Results are returned so that JMH can consume them.
+ */
+public class BenchmarkWorkloads {
+
+    /**
+     * Generate a synthetic graph by name.
+     * @param kind "grid", "geometric" (average degree 6) or "scalefree" (3 edges per new node)
+     * @param n Number of nodes
+     * @param seed Random seed
+     * @return Generated graph
+     */
+    static Graph generate(String kind, int n, long seed) {
+        switch (kind) {
+            case "grid": return GraphGenerators.grid(n);
+            case "geometric": return GraphGenerators.randomGeometric(n, 6, seed);
+            case "scalefree": return GraphGenerators.scaleFree(n, 3, seed);
+            default: throw new IllegalArgumentException("Unknown graph kind '" + kind + "'");
+        }
+    }
+
+    // LOADER ========================================================================================================
+
+    public static IntSupplier loadNodes(String file, String nodesKey) {
+        File f = new File(file);
+        return () -> {
+            Graph g = new Graph();
+            try {
+                GraphLoader.loadNodes(g, f, nodesKey);
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+            return g.nodeCount();
+        };
+    }
+
+    /**
+     * Load nodes then add paths with addPathsData, addPathsDataUndirected or addPathsDataParallel. Subtract the
+     * loadNodes score to get the cost of adding the paths.
+     */
+    public static IntSupplier loadNodesAndPaths(String file, String nodesKey, String pathsKey, String pathsLabelKey,
+                                                String pathsNodesKey, String mode) {
+        File f = new File(file);
+        return () -> {
+            Graph g = new Graph();
+            try {
+                GraphLoader.loadNodes(g, f, nodesKey);
+                switch (mode) {
+                    case "directed": GraphLoader.addPathsData(g, f, pathsKey, pathsLabelKey, pathsNodesKey); break;
+                    case "undirected": GraphLoader.addPathsDataUndirected(g, f, pathsKey, pathsLabelKey,
+                            pathsNodesKey, "-fwd", "-bwd"); break;
+                    case "parallel": GraphLoader.addPathsDataParallel(g, f, pathsKey, pathsLabelKey,
+                            pathsNodesKey); break;
+                    default: throw new IllegalArgumentException("Unknown mode '" + mode + "'");
+                }
+            } catch (FileNotFoundException e) {
+                throw new UncheckedIOException(e);
+            }
+            return g.edgeCount();
+        };
+    }
+
+    /**
+     * Load nodes and paths in a single streaming pass.
+     */
+    public static IntSupplier streamLoad(String file, String nodesKey, String pathsKey, String pathsLabelKey,
+                                         String pathsNodesKey) {
+        File f = new File(file);
+        return () -> {
+            Graph g = new Graph();
+            try {
+                GraphLoader.load(g, f, nodesKey, pathsKey, pathsLabelKey, pathsNodesKey, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return g.edgeCount();
+        };
+    }
+
+    // GRAPH =========================================================================================================
+
+    /**
+     * Rebuild a generated graph from scratch with addNode and addEdge.
+     */
+    public static IntSupplier build(String kind, int n, long seed) {
+        Graph source = generate(kind, n, seed);
+        Node[] nodes = new Node[source.nodeCount()];
+        for (int v = 0; v < nodes.length; v++) nodes[v] = source.getNode(v);
+        Edge[] edges = new Edge[source.edgeCount()];
+        for (int e = 0; e < edges.length; e++) edges[e] = source.getEdge(e);
+        return () -> {
+            Graph g = new Graph();
+            for (Node node : nodes) g.addNode(node);
+            for (Edge edge : edges) g.addEdge(edge.tail, edge.head, edge.data);
+            return g.edgeCount();
+        };
+    }
+
+    /**
+     * Look up edges by endpoint ids, half of them existing and half missing.
+     */
+    public static IntSupplier getEdge(String kind, int n, long seed) {
+        Graph g = generate(kind, n, seed);
+        Random rnd = new Random(seed);
+        String[] tails = new String[1 << 16], heads = new String[1 << 16];
+        for (int i = 0; i < tails.length; i++) {
+            Edge e = g.getEdge(rnd.nextInt(g.edgeCount()));
+            tails[i] = e.tail.id;
+            heads[i] = (i % 2 == 0) ? e.head.id : g.getNode(rnd.nextInt(g.nodeCount())).id;
+        }
+        int[] next = {0};
+        return () -> {
+            int i = next[0]++ & (tails.length - 1);
+            return (g.getEdge(tails[i], heads[i]) != null) ? 1 : 0;
+        };
+    }
+
+    // ALGORITHMS ====================================================================================================
+
+    /**
+     * Shortest path queries between random node pairs of a generated graph.
+     * @param weighted Minimise total edge length rather than hops
+     */
+    public static IntSupplier shortestPath(String kind, int n, long seed, boolean weighted) {
+        return shortestPath(generate(kind, n, seed), "x", "y", weighted ? "length" : null, seed);
+    }
+
+    /**
+     * Shortest path queries between random stations of an undirected network file.
+     */
+    public static IntSupplier networkShortestPath(String file, String nodesKey, String pathsKey, String pathsLabelKey,
+                                                  String pathsNodesKey, String xLabel, String yLabel) {
+        Graph g = new Graph();
+        try {
+            GraphLoader.loadUndirected(g, new File(file), nodesKey, pathsKey, pathsLabelKey, pathsNodesKey,
+                    "-fwd", "-bwd", null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return shortestPath(g, xLabel, yLabel, null, 42);
+    }
+
+    private static IntSupplier shortestPath(Graph g, String xLabel, String yLabel, String weightLabel, long seed) {
+        Random rnd = new Random(seed);
+        Node[] src = new Node[1 << 10], dst = new Node[1 << 10];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = g.getNode(rnd.nextInt(g.nodeCount()));
+            dst[i] = g.getNode(rnd.nextInt(g.nodeCount()));
+        }
+        PathMetric metric = g.freeze().metric(xLabel, yLabel, weightLabel);
+        int[] next = {0};
+        return () -> {
+            int i = next[0]++ & (src.length - 1);
+            ArrayList<Node> path = g.getShortestPath(src[i], dst[i], metric);
+            return (path == null) ? 0 : path.size();
+        };
+    }
+
+    /**
+     * Find the connected components of a generated graph as component graphs.
+     */
+    public static IntSupplier connectedComponents(String kind, int n, long seed) {
+        Graph g = generate(kind, n, seed);
+        return () -> g.getConnectedComponents().size();
+    }
+}
@@ -0,0 +1,117 @@
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Seeded generators of synthetic undirected graphs for benchmarking. Every node has "x" and "y" coordinates and
+ * every edge a "length" equal to the euclidian distance between its endpoints, so generated graphs work with the
+ * A* heuristic and weighted queries alike. The same arguments always generate the same graph.
+ */
+public class GraphGenerators {
+
+    /**
+     * Square grid with 4-neighbour connectivity, the side rounded down to fit the node count.
+     * @param n Approximate number of nodes
+     * @return Grid graph with unit edge lengths
+     */
+    public static Graph grid(int n) {
+        int side = Math.max(1, (int) Math.sqrt(n));
+        Graph g = new Graph();
+        Node[] nodes = new Node[side * side];
+        for (int i = 0; i < nodes.length; i++) nodes[i] = addNode(g, i, i % side, i / side);
+        for (int i = 0; i < nodes.length; i++) {
+            if (i % side + 1 < side) connect(g, nodes[i], nodes[i + 1]);
+            if (i + side < nodes.length) connect(g, nodes[i], nodes[i + side]);
+        }
+        return g;
+    }
+
+    /**
+     * Random geometric graph: points uniform in the unit square, joined when closer than the radius that gives the
+     * requested average degree. Neighbours are found through a grid of radius sized cells.
+     * @param n Number of nodes
+     * @param degree Expected average degree
+     * @param seed Random seed
+     * @return Random geometric graph
+     */
+    public static Graph randomGeometric(int n, double degree, long seed) {
+        Random rnd = new Random(seed);
+        double radius = Math.sqrt(degree / (Math.PI * n));
+        int cells = Math.max(1, (int) (1 / radius));
+        Graph g = new Graph();
+        Node[] nodes = new Node[n];
+        double[] xs = new double[n], ys = new double[n];
+        int[] cellOf = new int[n], cellStart = new int[cells * cells + 1], members = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = rnd.nextDouble();
+            ys[i] = rnd.nextDouble();
+            nodes[i] = addNode(g, i, xs[i], ys[i]);
+            cellOf[i] = cell(xs[i], cells) * cells + cell(ys[i], cells);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++) cellStart[c + 1] += cellStart[c];
+        int[] fill = cellStart.clone();
+        for (int i = 0; i < n; i++) members[fill[cellOf[i]]++] = i;
+
+        // Only check the 3x3 cells around each point, and only higher indexed points so each pair is added once
+        for (int i = 0; i < n; i++) {
+            int cx = cellOf[i] / cells, cy = cellOf[i] % cells;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    int x = cx + dx, y = cy + dy;
+                    if (x < 0 || y < 0 || x >= cells || y >= cells) continue;
+                    for (int k = cellStart[x * cells + y]; k < cellStart[x * cells + y + 1]; k++) {
+                        int j = members[k];
+                        if (j > i && Math.hypot(xs[i] - xs[j], ys[i] - ys[j]) <= radius) connect(g, nodes[i], nodes[j]);
+                    }
+                }
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Scale-free graph by Barabasi-Albert preferential attachment: each new node joins m existing nodes picked with
+     * probability proportional to their degree. Coordinates are uniform in the unit square.
+     * @param n Number of nodes
+     * @param m Edges added per new node
+     * @param seed Random seed
+     * @return Scale-free graph
+     */
+    public static Graph scaleFree(int n, int m, long seed) {
+        Random rnd = new Random(seed);
+        Graph g = new Graph();
+        Node[] nodes = new Node[n];
+        int[] endpoints = new int[2 * m * n];  // Every edge endpoint so far, so a uniform pick is degree-weighted
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            nodes[i] = addNode(g, i, rnd.nextDouble(), rnd.nextDouble());
+            if (i == 0) continue;
+            for (int k = 0; k < Math.min(m, i); k++) {
+                int j = (size == 0) ? 0 : endpoints[rnd.nextInt(size)];
+                if (j == i || g.getEdge(nodes[i].id, nodes[j].id) != null) continue;
+                connect(g, nodes[i], nodes[j]);
+                endpoints[size++] = i;
+                endpoints[size++] = j;
+            }
+        }
+        return g;
+    }
+
+    private static int cell(double coordinate, int cells) {
+        return Math.min(cells - 1, (int) (coordinate * cells));
+    }
+
+    private static Node addNode(Graph g, int i, double x, double y) {
+        Node node = new Node(Integer.toString(i), new JSONObject().put("x", x).put("y", y));
+        g.addNode(node);
+        return node;
+    }
+
+    private static void connect(Graph g, Node a, Node b) {
+        double length = Math.hypot(a.data.getDouble("x") - b.data.getDouble("x"),
+                a.data.getDouble("y") - b.data.getDouble("y"));
+        g.addEdge(a, b, new JSONObject().put("length", length));
+        g.addEdge(b, a, new JSONObject().put("length", length));
+    }
+}
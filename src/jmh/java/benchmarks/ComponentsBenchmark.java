@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * getConnectedComponents on generated graphs. The largest sizes need a large heap, e.g. -jvmArgsAppend -Xmx24g.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComponentsBenchmark {
+    @Param({"grid", "geometric", "scalefree"})
+    public String kind;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int nodes;
+
+    @Param("42")
+    public long seed;
+
+    private IntSupplier components;
+
+    @Setup
+    public void setup() {
+        components = Workloads.create("connectedComponents", kind, nodes, seed);
+    }
+
+    @Benchmark
+    public int getConnectedComponents() { return components.getAsInt(); }
+}
@@ -0,0 +1,45 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Graph construction (addNode/addEdge) and edge lookup (getEdge) on generated graphs.
+ * The largest sizes need a large heap, e.g. -jvmArgsAppend -Xmx24g, or can be skipped with -p nodes=1000,100000.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBenchmark {
+    @Param({"grid", "geometric", "scalefree"})
+    public String kind;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int nodes;
+
+    @Param("42")
+    public long seed;
+
+    private IntSupplier build, getEdge;
+
+    @Setup
+    public void setup() {
+        build = Workloads.create("build", kind, nodes, seed);
+        getEdge = Workloads.create("getEdge", kind, nodes, seed);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 5)
+    public int build() { return build.getAsInt(); }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int getEdge() { return getEdge.getAsInt(); }
+}
@@ -0,0 +1,42 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * GraphLoader throughput on a JSON network file. Run from the project root, or point file at another network with
+ * -p file=... (the keys default to those of the bundled train network).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoaderBenchmark {
+    @Param("src/test/resources/test-train-network.json")
+    public String file;
+
+    @Param({"directed", "undirected", "parallel"})
+    public String mode;
+
+    private IntSupplier loadNodes, loadNodesAndPaths, streamLoad;
+
+    @Setup
+    public void setup() {
+        loadNodes = Workloads.create("loadNodes", file, "stations");
+        loadNodesAndPaths = Workloads.create("loadNodesAndPaths", file, "stations", "lines", "name", "stations", mode);
+        streamLoad = Workloads.create("streamLoad", file, "stations", "lines", "name", "stations");
+    }
+
+    @Benchmark
+    public int loadNodes() { return loadNodes.getAsInt(); }
+
+    @Benchmark
+    public int loadNodesAndPaths() { return loadNodesAndPaths.getAsInt(); }
+
+    @Benchmark
+    public int streamLoad() { return streamLoad.getAsInt(); }
+}
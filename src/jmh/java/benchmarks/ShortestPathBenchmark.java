@@ -0,0 +1,60 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Point to point getShortestPath queries between seeded random node pairs, on the bundled train network and on
+ * generated graphs. The largest sizes need a large heap, e.g. -jvmArgsAppend -Xmx24g.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShortestPathBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Network {
+        @Param("src/test/resources/test-train-network.json")
+        public String file;
+
+        IntSupplier query;
+
+        @Setup
+        public void setup() {
+            query = Workloads.create("networkShortestPath", file, "stations", "lines", "name", "stations",
+                    "longitude", "latitude");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Generated {
+        @Param({"grid", "geometric", "scalefree"})
+        public String kind;
+
+        @Param({"1000", "10000", "100000", "1000000", "10000000"})
+        public int nodes;
+
+        @Param({"false", "true"})
+        public boolean weighted;
+
+        @Param("42")
+        public long seed;
+
+        IntSupplier query;
+
+        @Setup
+        public void setup() {
+            query = Workloads.create("shortestPath", kind, nodes, seed, weighted);
+        }
+    }
+
+    @Benchmark
+    public int trainNetwork(Network state) { return state.query.getAsInt(); }
+
+    @Benchmark
+    public int generated(Generated state) { return state.query.getAsInt(); }
+}
@@ -0,0 +1,33 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.IntSupplier;
+
+/**
+ * Bridge to BenchmarkWorkloads in the default package, which named packages cannot reference directly.
+ * Only used during setup: the returned suppliers are called without reflection.
+ */
+final class Workloads {
+    private Workloads() {}
+
+    /**
+     * Create a workload.
+     * @param name Name of the BenchmarkWorkloads factory method
+     * @param args Factory arguments
+     * @return Supplier performing one operation of the workload per call
+     */
+    static IntSupplier create(String name, Object... args) {
+        try {
+            for (Method m : Class.forName("BenchmarkWorkloads").getMethods()) {
+                if (m.getName().equals(name) && m.getParameterCount() == args.length)
+                    return (IntSupplier) m.invoke(null, args);
+            }
+            throw new IllegalArgumentException("No workload " + name + " taking " + args.length + " arguments");
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Workload " + name + " failed to set up", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
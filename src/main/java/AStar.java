@@ -0,0 +1,169 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.IntToDoubleFunction;
+
+/**
+ * A* shortest path search over a Topology.
+ * Per-query state lives in primitive arrays owned by a per-thread Scratch, which is reset in O(1) between queries by
+ * bumping a generation stamp, so a query allocates nothing but its result.
+ */
+public class AStar {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * Reusable search state, sized to the largest graph the owning thread has searched.
+     */
+    static final class Scratch {
+        double[] g = new double[0];  // Best known distance from src, valid while seen[v] == generation
+        int[] prev = new int[0];     // Predecessor node on the best known path, -1 for src
+        int[] seen = new int[0];     // Generation stamp of the query that first reached the node
+        int[] closed = new int[0];   // Generation stamp of the query that settled the node
+        int generation;
+        IndexedMinHeap open = new IndexedMinHeap(0);
+        int expanded, pushes, pops, relaxed; // Counters of the last search, for GraphMetrics
+
+        void prepare(int n) {
+            if (g.length < n) {
+                g = new double[n];
+                prev = new int[n];
+                seen = new int[n];
+                closed = new int[n];
+                generation = 0;
+                open.ensureCapacity(n);
+            }
+            if (++generation == 0) { // Stamp wrapped around, so old stamps could collide with new ones
+                Arrays.fill(seen, 0);
+                Arrays.fill(closed, 0);
+                generation = 1;
+            }
+        }
+
+        boolean reached(int v) { return seen[v] == generation; }
+        double distance(int v) { return reached(v) ? g[v] : Double.POSITIVE_INFINITY; }
+    }
+
+    static Scratch scratch() { return SCRATCH.get(); }
+
+    /**
+     * Find the shortest path between two nodes.
+     * @param cg Snapshot to search
+     * @param src Dense index of the source node
+     * @param dst Dense index of the destination node
+     * @param metric Edge weights and heuristic, resolved against cg
+     * @param weightFn Optional weight of each edge index, used instead of the metric weights (disables the heuristic)
+     * @return Nodes on the shortest path from src to dst inclusive, or null if dst is unreachable
+     */
+    public static ArrayList<Node> shortestPath(CompactGraph cg, int src, int dst, PathMetric metric,
+                                               IntToDoubleFunction weightFn) {
+        Scratch s = scratch();
+        if (!search(cg, src, dst, metric, weightFn, s)) return null;
+        return path(cg, s, dst);
+    }
+
+    /**
+     * Find the shortest path between two nodes of any topology.
+     * @param t Topology to search
+     * @param src Dense index of the source node
+     * @param dst Dense index of the destination node
+     * @param metric Edge weights and heuristic, resolved against t
+     * @return Dense indices of the nodes on the shortest path from src to dst inclusive, or null if unreachable
+     */
+    public static int[] shortestPath(Topology t, int src, int dst, PathMetric metric) {
+        Scratch s = scratch();
+        if (!search(t, src, dst, metric, null, s)) return null;
+        int hops = 0;
+        for (int v = dst; s.prev[v] >= 0; v = s.prev[v]) hops++;
+        int[] path = new int[hops + 1];
+        for (int v = dst, i = hops; i >= 0; v = s.prev[v], i--) path[i] = v;
+        return path;
+    }
+
+    /**
+     * Run the search, leaving distances and predecessors in the scratch.
+     * With dst < 0 every node reachable from src is settled (Dijkstra's algorithm).
+     * @return True if dst was settled
+     */
+    static boolean search(Topology t, int src, int dst, PathMetric metric, IntToDoubleFunction weightFn,
+                          Scratch s) {
+        return search(t, src, dst, metric, weightFn, null, 0, s);
+    }
+
+    /**
+     * Run a one-to-many Dijkstra search from src that stops once the given targets are all settled.
+     * @param targets Target flags by dense index
+     * @param remaining Number of distinct targets flagged
+     * @return True if every target was settled
+     */
+    static boolean search(Topology t, int src, PathMetric metric, boolean[] targets, int remaining, Scratch s) {
+        return search(t, src, -1, metric, null, targets, remaining, s);
+    }
+
+    private static boolean search(Topology t, int src, int dst, PathMetric metric, IntToDoubleFunction weightFn,
+                                  boolean[] targets, int remaining, Scratch s) {
+        s.prepare(t.nodeCount());
+        final int gen = s.generation;
+        final double[] g = s.g;
+        final int[] prev = s.prev, seen = s.seen, closed = s.closed;
+        final IndexedMinHeap open = s.open;
+        final double[] weights = (weightFn == null) ? metric.weights : null;
+        final boolean heuristic = weightFn == null && dst >= 0 && metric.scale > 0;
+
+        int expanded = 0, pushes = 1, pops = 0, relaxed = 0;
+        seen[src] = gen;
+        g[src] = 0;
+        prev[src] = -1;
+        open.insertOrDecrease(src, heuristic ? metric.heuristic(src, dst) : 0);
+        try {
+            while (!open.isEmpty()) {
+                int v = open.poll();
+                pops++;
+                closed[v] = gen;
+                if (v == dst) return true;
+                if (targets != null && targets[v] && --remaining == 0) return true;
+                expanded++;
+
+                // Relax out-edges, lowering the key of nodes already queued if a shorter path is found
+                double gv = g[v];
+                relaxed += t.edgeEnd(v) - t.edgeStart(v);
+                for (int e = t.edgeStart(v), end = t.edgeEnd(v); e < end; e++) {
+                    int u = t.edgeTarget(e);
+                    if (closed[u] == gen || !t.edgeVisible(e)) continue;
+                    double w;
+                    if (weights != null) w = weights[e];
+                    else if (weightFn != null) {
+                        w = weightFn.applyAsDouble(e);
+                        if (!(w >= 0)) throw new IllegalArgumentException("Edge weight must be non-negative, got " + w);
+                    }
+                    else w = 1.0;
+                    double cost = gv + w;
+                    if (seen[u] != gen) {
+                        seen[u] = gen;
+                    } else if (cost >= g[u]) continue;
+                    g[u] = cost;
+                    prev[u] = v;
+                    open.insertOrDecrease(u, heuristic ? cost + metric.heuristic(u, dst) : cost);
+                    pushes++;
+                }
+            }
+            return targets != null && remaining == 0;
+        } finally {
+            open.clear();
+            s.expanded = expanded;
+            s.pushes = pushes;
+            s.pops = pops;
+            s.relaxed = relaxed;
+        }
+    }
+
+    /**
+     * Backtrace the path to dst from the predecessors left by the last search.
+     */
+    static ArrayList<Node> path(CompactGraph cg, Scratch s, int dst) {
+        int hops = 0;
+        for (int v = dst; s.prev[v] >= 0; v = s.prev[v]) hops++;
+        ArrayList<Node> path = new ArrayList<>(hops + 1);
+        for (int i = 0; i <= hops; i++) path.add(null);
+        for (int v = dst, i = hops; i >= 0; v = s.prev[v], i--) path.set(i, cg.node(v));
+        return path;
+    }
+}
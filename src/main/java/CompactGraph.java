@@ -0,0 +1,329 @@
+import java.util.Arrays;
+
+/**
+ * Immutable compressed sparse row (CSR) snapshot of a Graph, for read-heavy algorithms.
+ * Nodes are addressed by the dense index their graph assigned them, and the out-edges of node v occupy the edge
+ * indices edgeStart(v) (inclusive) to edgeEnd(v) (exclusive). Edge payloads are looked up by edge index.
+ *
+ * The CSR arrays are split into chunks of 4096 consecutive nodes, laid end to end in edge index order. Chunks are
+ * immutable and shared between successive snapshots of a graph, so a snapshot taken after a write copies only the
+ * chunks whose nodes gained edges (plus small per-chunk tables) rather than the whole graph.
+ */
+public class CompactGraph implements Topology {
+    static final int CHUNK_SHIFT = 12;                 // Nodes per chunk, as a power of two
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    private static final int PAGE_SHIFT = 10;          // Edge indices per entry of the edge-to-chunk table
+
+    private final int nodeCount, edgeCount;
+    private final Chunk[] chunks;       // Chunk of v is chunks[v >>> CHUNK_SHIFT]
+    private final int[] chunkStart;     // Edge index of each chunk's first edge, plus edgeCount at the end
+    private final int[] pageChunk;      // Chunk holding edge index p << PAGE_SHIFT, where searches for a chunk start
+    private final AttributeStore nodeAttributes, edgeAttributes;  // The graph's attribute columns
+    private final SortedIds ids, recentIds;  // Node ids for lookups without a hash map: most, and the latest added
+    private volatile PathMetric[] metrics = new PathMetric[0];  // Resolved metrics, one per label triple
+    private volatile IntTopology reverse;  // In-edges, built on first use
+
+    private CompactGraph(int nodeCount, Chunk[] chunks, AttributeStore nodeAttributes, AttributeStore edgeAttributes,
+                         SortedIds ids, SortedIds recentIds) {
+        this.nodeCount = nodeCount;
+        this.chunks = chunks;
+        this.nodeAttributes = nodeAttributes;
+        this.edgeAttributes = edgeAttributes;
+        this.ids = ids;
+        this.recentIds = recentIds;
+
+        // Lay the chunks out end to end, and index which chunk each page of edge indices starts in
+        chunkStart = new int[chunks.length + 1];
+        for (int k = 0; k < chunks.length; k++) chunkStart[k + 1] = chunkStart[k] + chunks[k].targets.length;
+        edgeCount = chunkStart[chunks.length];
+        pageChunk = new int[(edgeCount + (1 << PAGE_SHIFT) - 1) >>> PAGE_SHIFT];
+        for (int p = 0, k = 0; p < pageChunk.length; p++) {
+            while (chunkStart[k + 1] <= p << PAGE_SHIFT) k++;
+            pageChunk[p] = k;
+        }
+    }
+
+    // Accessors
+    @Override public int nodeCount() { return nodeCount; }
+    @Override public int edgeCount() { return edgeCount; }
+
+    @Override
+    public int edgeStart(int v) {
+        int k = v >>> CHUNK_SHIFT;
+        return chunkStart[k] + chunks[k].offsets[v & CHUNK_MASK];
+    }
+
+    @Override
+    public int edgeEnd(int v) {
+        int k = v >>> CHUNK_SHIFT;
+        return chunkStart[k] + chunks[k].offsets[(v & CHUNK_MASK) + 1];
+    }
+
+    @Override
+    public int degree(int v) {
+        int[] offsets = chunks[v >>> CHUNK_SHIFT].offsets;
+        return offsets[(v & CHUNK_MASK) + 1] - offsets[v & CHUNK_MASK];
+    }
+
+    @Override
+    public int edgeTarget(int e) {
+        int k = chunkOf(e);
+        return chunks[k].targets[e - chunkStart[k]];
+    }
+
+    public Node node(int v) { return chunks[v >>> CHUNK_SHIFT].nodes[v & CHUNK_MASK]; }
+
+    public Edge edge(int e) {
+        int k = chunkOf(e);
+        return chunks[k].edges[e - chunkStart[k]];
+    }
+
+    public int edgeId(int e) {
+        int k = chunkOf(e);
+        return chunks[k].edgeIds[e - chunkStart[k]];
+    }
+
+    public AttributeStore nodeAttributes() { return nodeAttributes; }
+    public AttributeStore edgeAttributes() { return edgeAttributes; }
+    /** @return Version of the graph's node and edge data, changed by every write to either (not by adds) */
+    public long dataVersion() { return nodeAttributes.dataVersion() + edgeAttributes.dataVersion(); }
+
+    /**
+     * @return Index of the chunk holding edge index e; usually the one its page starts in
+     */
+    private int chunkOf(int e) {
+        int k = pageChunk[e >>> PAGE_SHIFT];
+        while (chunkStart[k + 1] <= e) k++;
+        return k;
+    }
+
+    /**
+     * Get the dense index of the node with the given id.
+     * @param id Node id
+     * @return Dense node index, or -1 if no node has the id
+     */
+    public int indexOf(String id) {
+        int v = ids.indexOf(id);
+        return (v >= 0) ? v : recentIds.indexOf(id);
+    }
+
+    /**
+     * Get the reverse topology (in-edges of every node), building and caching it on first use.
+     * @return Reverse of this snapshot's topology
+     */
+    public IntTopology reverse() {
+        IntTopology r = reverse;
+        if (r == null) reverse = r = IntTopology.transpose(this); // Racing builds produce equal results
+        return r;
+    }
+
+    /**
+     * Get the shortest path metric for the given labels, resolving and caching it on first use. A cached metric is
+     * resolved again once the graph's element data has been written since (see dataVersion), so edits to
+     * weights or coordinates reach the next query. Snapshots hold few metrics, so the lookup scans them comparing
+     * labels, which allocates nothing.
+     * @param xLabel Node data key of the x coordinate, or null for no heuristic
+     * @param yLabel Node data key of the y coordinate, or null for no heuristic
+     * @param weightLabel Edge data key of the edge weight, or null to count hops
+     * @return Metric resolved against this snapshot
+     */
+    public PathMetric metric(String xLabel, String yLabel, String weightLabel) {
+        long version = dataVersion();
+        for (PathMetric m : metrics) {
+            if (m.matches(xLabel, yLabel, weightLabel) && m.dataVersion == version) return m;
+        }
+        PathMetric m = PathMetric.of(this, xLabel, yLabel, weightLabel);
+        cache(m);
+        return m;
+    }
+
+    /**
+     * Publish a resolved metric in place of any earlier one for the same labels.
+     */
+    private synchronized void cache(PathMetric m) {
+        PathMetric[] metrics = this.metrics;
+        for (int i = 0; i < metrics.length; i++) {
+            if (metrics[i].matches(m.xLabel, m.yLabel, m.weightLabel)) {
+                metrics = metrics.clone();
+                metrics[i] = m;
+                this.metrics = metrics;
+                return;
+            }
+        }
+        metrics = Arrays.copyOf(metrics, metrics.length + 1);
+        metrics[metrics.length - 1] = m;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * Build the CSR snapshot of a graph. Node indices are the graph's own dense indices, so the snapshot can be
+     * cross-referenced with the graph it came from.
+     * @param g Graph to snapshot
+     * @return Immutable snapshot of g
+     */
+    static CompactGraph of(Graph g) {
+        return of(g, null);
+    }
+
+    /**
+     * Build the snapshot of a graph from an earlier snapshot of the same graph. Graphs only ever grow and keep
+     * their dense indices, so prev's nodes and edges are a prefix of the graph's: chunks without new nodes or edges
+     * are shared with prev, and only the chunks that gained some are rebuilt.
+     * @param g Graph to snapshot
+     * @param prev Earlier snapshot of g, or null
+     * @return Immutable snapshot of g
+     */
+    static CompactGraph of(Graph g, CompactGraph prev) {
+        int n = g.nodeCount(), m = g.edgeCount();
+        if (prev != null && (prev.nodeAttributes != g.nodeAttributes() || prev.nodeCount > n || prev.edgeCount > m))
+            prev = null;
+        int n0 = (prev == null) ? 0 : prev.nodeCount, m0 = (prev == null) ? 0 : prev.edgeCount, added = m - m0;
+
+        // Group the new edges by the chunk of their tail, keeping insertion order
+        int chunkCount = (n + CHUNK_MASK) >>> CHUNK_SHIFT;
+        int[] tails = new int[added], from = new int[chunkCount + 1], byChunk = new int[added];
+        for (int i = 0; i < added; i++) {
+            tails[i] = g.indexOf(g.getEdge(m0 + i).tail);
+            from[(tails[i] >>> CHUNK_SHIFT) + 1]++;
+        }
+        for (int k = 0; k < chunkCount; k++) from[k + 1] += from[k];
+        int[] fill = Arrays.copyOf(from, chunkCount);
+        for (int i = 0; i < added; i++) byChunk[fill[tails[i] >>> CHUNK_SHIFT]++] = i;
+
+        // Share the chunks that did not change and rebuild the others
+        Chunk[] chunks = new Chunk[chunkCount];
+        for (int k = 0; k < chunkCount; k++) {
+            Chunk old = (prev != null && k < prev.chunks.length) ? prev.chunks[k] : null;
+            int lo = k << CHUNK_SHIFT, hi = Math.min(n, lo + (1 << CHUNK_SHIFT));
+            boolean unchanged = old != null && old.nodes.length == hi - lo && from[k] == from[k + 1];
+            chunks[k] = unchanged ? old : Chunk.extend(old, g, lo, hi, m0, tails, byChunk, from[k], from[k + 1]);
+        }
+
+        // Keep the ids of nodes added since the last full sort apart, up to about the square root of the node count,
+        // so that adding a node costs a merge into a short array rather than into all ids
+        if (prev == null) return new CompactGraph(n, chunks, g.nodeAttributes(), g.edgeAttributes(),
+                SortedIds.of(g, 0, n), SortedIds.EMPTY);
+        SortedIds recent = (n == n0) ? prev.recentIds : SortedIds.merge(prev.recentIds, SortedIds.of(g, n0, n));
+        if (recent.ids.length <= Math.max(64, (int) Math.sqrt(n)))
+            return new CompactGraph(n, chunks, g.nodeAttributes(), g.edgeAttributes(), prev.ids, recent);
+        return new CompactGraph(n, chunks, g.nodeAttributes(), g.edgeAttributes(), SortedIds.merge(prev.ids, recent),
+                SortedIds.EMPTY);
+    }
+
+    /**
+     * CSR arrays of up to 4096 consecutive nodes, with edge indices relative to the chunk's first edge.
+     */
+    private static final class Chunk {
+        final Node[] nodes;    // Node by dense index within the chunk
+        final int[] offsets;   // Out-edges of the chunk's i-th node are [offsets[i], offsets[i+1])
+        final int[] targets;   // Head node index of each edge
+        final Edge[] edges;    // Edge payload of each edge
+        final int[] edgeIds;   // Graph edge id of each edge, for indexing edge attribute columns
+
+        private Chunk(Node[] nodes, int[] offsets, int[] targets, Edge[] edges, int[] edgeIds) {
+            this.nodes = nodes;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.edges = edges;
+            this.edgeIds = edgeIds;
+        }
+
+        /**
+         * Build a chunk from its previous version and the graph's new nodes and edges in it. The new edges of a node
+         * follow its old ones, so edges stay in insertion order within each node.
+         * @param old Previous version of the chunk, or null
+         * @param lo Dense index of the chunk's first node
+         * @param hi Dense index past the chunk's last node
+         * @param m0 Graph edge id of the first new edge
+         * @param tails Tail node index of each new edge, by new edge number
+         * @param byChunk New edge numbers grouped by chunk; this chunk's are [from, to)
+         */
+        static Chunk extend(Chunk old, Graph g, int lo, int hi, int m0, int[] tails, int[] byChunk, int from, int to) {
+            int size = hi - lo, n0 = (old == null) ? 0 : old.nodes.length;
+            Node[] nodes = (old == null) ? new Node[size] : Arrays.copyOf(old.nodes, size);
+            for (int i = n0; i < size; i++) nodes[i] = g.getNode(lo + i);
+
+            // Lay out the offsets: old degree plus new edges of every node
+            int[] offsets = new int[size + 1];
+            for (int i = 0; i < n0; i++) offsets[i + 1] = old.offsets[i + 1] - old.offsets[i];
+            for (int j = from; j < to; j++) offsets[tails[byChunk[j]] - lo + 1]++;
+            for (int i = 0; i < size; i++) offsets[i + 1] += offsets[i];
+
+            // Copy each node's old edges, then place the new ones after them
+            int m = offsets[size];
+            int[] targets = new int[m], edgeIds = new int[m], fill = Arrays.copyOf(offsets, size);
+            Edge[] edges = new Edge[m];
+            for (int i = 0; i < n0; i++) {
+                int start = old.offsets[i], len = old.offsets[i + 1] - start;
+                System.arraycopy(old.targets, start, targets, fill[i], len);
+                System.arraycopy(old.edges, start, edges, fill[i], len);
+                System.arraycopy(old.edgeIds, start, edgeIds, fill[i], len);
+                fill[i] += len;
+            }
+            for (int j = from; j < to; j++) {
+                int i = byChunk[j], e = fill[tails[i] - lo]++;
+                Edge edge = g.getEdge(m0 + i);
+                targets[e] = g.indexOf(edge.head);
+                edges[e] = edge;
+                edgeIds[e] = m0 + i;
+            }
+            return new Chunk(nodes, offsets, targets, edges, edgeIds);
+        }
+    }
+
+    /**
+     * Node ids in lexical order with the dense index of each, for binary search.
+     */
+    private static final class SortedIds {
+        static final SortedIds EMPTY = new SortedIds(new String[0], new int[0]);
+
+        final String[] ids;
+        final int[] index;  // Dense index of ids[i]
+
+        private SortedIds(String[] ids, int[] index) {
+            this.ids = ids;
+            this.index = index;
+        }
+
+        int indexOf(String id) {
+            int i = Arrays.binarySearch(ids, id);
+            return (i < 0) ? -1 : index[i];
+        }
+
+        /**
+         * @return The ids of the graph's nodes [from, to) in sorted order
+         */
+        static SortedIds of(Graph g, int from, int to) {
+            Integer[] order = new Integer[to - from];
+            for (int i = 0; i < order.length; i++) order[i] = from + i;
+            Arrays.sort(order, (a, b) -> g.getNode(a).id.compareTo(g.getNode(b).id));
+            String[] ids = new String[order.length];
+            int[] index = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                index[i] = order[i];
+                ids[i] = g.getNode(order[i]).id;
+            }
+            return new SortedIds(ids, index);
+        }
+
+        /**
+         * @return The ids of a and b (which are disjoint) in sorted order
+         */
+        static SortedIds merge(SortedIds a, SortedIds b) {
+            int n = a.ids.length + b.ids.length;
+            String[] ids = new String[n];
+            int[] index = new int[n];
+            for (int i = 0, j = 0, k = 0; k < n; k++) {
+                if (j >= b.ids.length || (i < a.ids.length && a.ids[i].compareTo(b.ids[j]) < 0)) {
+                    ids[k] = a.ids[i];
+                    index[k] = a.index[i++];
+                } else {
+                    ids[k] = b.ids[j];
+                    index[k] = b.index[j++];
+                }
+            }
+            return new SortedIds(ids, index);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Compact labelling of a graph's nodes into components, with component ids 0..count()-1 ordered by the smallest
+ * node index in each component. Graph objects for components are only built when asked for.
+ */
+public class Components {
+    private static final int PARALLEL_THRESHOLD = 1 << 12; // Nodes per fork-join task
+
+    private final int[] componentOf;  // Component id by dense node index
+    private final int[] sizes;        // Node count by component id
+
+    Components(int[] componentOf, int[] sizes) {
+        this.componentOf = componentOf;
+        this.sizes = sizes;
+    }
+
+    // Accessors
+    public int count() { return sizes.length; }
+    public int componentOf(int v) { return componentOf[v]; }
+    public int size(int component) { return sizes[component]; }
+    public int[] labels() { return componentOf.clone(); }
+    public int[] sizes() { return sizes.clone(); }
+
+    /**
+     * Label the (weakly) connected components of a topology with a concurrent union-find, unioning the endpoints of
+     * every edge in parallel on the common fork-join pool.
+     * @param t Topology to label
+     * @return Component labelling
+     */
+    public static Components connected(Topology t) {
+        return connected(t, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Label the (weakly) connected components of a topology on the given pool.
+     * @param t Topology to label
+     * @param pool Pool to run on
+     * @return Component labelling
+     */
+    public static Components connected(Topology t, ForkJoinPool pool) {
+        int n = t.nodeCount();
+        ConcurrentUnionFind uf = new ConcurrentUnionFind(n);
+        int[] roots = new int[n];
+        pool.invoke(new UnionEdges(t, uf, 0, n));
+        pool.invoke(new FindRoots(uf, roots, 0, n));
+        return fromRoots(roots);
+    }
+
+    /**
+     * Compact a representative per node into component ids, numbering components in order of first appearance.
+     * @param roots Representative node of each node's component
+     * @return Component labelling
+     */
+    static Components fromRoots(int[] roots) {
+        int n = roots.length;
+        int[] idOfRoot = new int[n];
+        int[] componentOf = new int[n];
+        int[] sizes = new int[Math.max(1, n)];
+        int count = 0;
+        Arrays.fill(idOfRoot, -1);
+        for (int v = 0; v < n; v++) {
+            int r = roots[v];
+            if (idOfRoot[r] < 0) idOfRoot[r] = count++;
+            componentOf[v] = idOfRoot[r];
+            sizes[componentOf[v]]++;
+        }
+        return new Components(componentOf, Arrays.copyOf(sizes, count));
+    }
+
+    /**
+     * Build a graph (shallow copy, sharing nodes and edge data) for every component.
+     * @param cg Snapshot the labelling was computed on
+     * @return Component graphs, by component id
+     */
+    public ArrayList<Graph> toGraphs(CompactGraph cg) {
+        ArrayList<Graph> graphs = new ArrayList<>(count());
+        for (int c = 0; c < count(); c++) graphs.add(new Graph());
+        for (int v = 0; v < cg.nodeCount(); v++) graphs.get(componentOf[v]).addNode(cg.node(v));
+        for (int v = 0; v < cg.nodeCount(); v++) {
+            for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) {
+                int u = cg.edgeTarget(e);
+                if (componentOf[u] == componentOf[v])
+                    graphs.get(componentOf[v]).addParallelEdge(cg.node(v), cg.node(u), cg.edge(e).data);
+            }
+        }
+        return graphs;
+    }
+
+    /**
+     * Build the graph (shallow copy) of a single component.
+     * @param cg Snapshot the labelling was computed on
+     * @param component Component id
+     * @return Component graph
+     */
+    public Graph toGraph(CompactGraph cg, int component) {
+        Graph g = new Graph();
+        for (int v = 0; v < cg.nodeCount(); v++) if (componentOf[v] == component) g.addNode(cg.node(v));
+        for (int v = 0; v < cg.nodeCount(); v++) {
+            if (componentOf[v] != component) continue;
+            for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) {
+                int u = cg.edgeTarget(e);
+                if (componentOf[u] == component) g.addParallelEdge(cg.node(v), cg.node(u), cg.edge(e).data);
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Union the endpoints of the out-edges of nodes [lo, hi), splitting the range across the pool.
+     */
+    private static class UnionEdges extends RecursiveAction {
+        private final Topology t;
+        private final ConcurrentUnionFind uf;
+        private final int lo, hi;
+
+        UnionEdges(Topology t, ConcurrentUnionFind uf, int lo, int hi) {
+            this.t = t;
+            this.uf = uf;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > PARALLEL_THRESHOLD) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new UnionEdges(t, uf, lo, mid), new UnionEdges(t, uf, mid, hi));
+                return;
+            }
+            for (int v = lo; v < hi; v++) {
+                for (int e = t.edgeStart(v), end = t.edgeEnd(v); e < end; e++)
+                    if (t.edgeVisible(e)) uf.union(v, t.edgeTarget(e));
+            }
+        }
+    }
+
+    /**
+     * Resolve the root of nodes [lo, hi), splitting the range across the pool.
+     */
+    private static class FindRoots extends RecursiveAction {
+        private final ConcurrentUnionFind uf;
+        private final int[] roots;
+        private final int lo, hi;
+
+        FindRoots(ConcurrentUnionFind uf, int[] roots, int lo, int hi) {
+            this.uf = uf;
+            this.roots = roots;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > PARALLEL_THRESHOLD) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new FindRoots(uf, roots, lo, mid), new FindRoots(uf, roots, mid, hi));
+                return;
+            }
+            for (int v = lo; v < hi; v++) roots[v] = uf.find(v);
+        }
+    }
+}
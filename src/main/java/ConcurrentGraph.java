@@ -0,0 +1,95 @@
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Graph that can be updated while other threads query it. Writers are serialised on a lock, and every write (or
+ * batch of writes) publishes a new immutable CSR snapshot of the topology, built incrementally from the previous
+ * one: it shares every chunk of nodes whose edges did not change (see CompactGraph), so a write costs in proportion
+ * to the chunks it touches rather than to the whole graph. Readers pick up the latest snapshot with a single volatile
+ * read, so they never block on writers and every query sees one consistent version. Superseded snapshots are
+ * reclaimed by the garbage collector once the last reader holding one drops it. Snapshots share node and edge
+ * objects and attribute columns, so attribute changes to existing elements are not versioned, only the topology is;
+ * the columns are safe to read concurrently, and a reader sees at least every value written before its snapshot was
+ * published.
+ */
+public class ConcurrentGraph {
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Graph graph;               // Only touched while holding writeLock
+    private volatile CompactGraph snapshot;  // Latest published version
+
+    public ConcurrentGraph() {
+        this(new Graph());
+    }
+
+    /**
+     * @param graph Initial graph, which the concurrent graph takes ownership of (it must not be used directly after)
+     */
+    public ConcurrentGraph(Graph graph) {
+        this.graph = graph;
+        this.snapshot = graph.freeze();
+    }
+
+    // Accessors
+    public CompactGraph snapshot() { return snapshot; }
+    public int nodeCount() { return snapshot.nodeCount(); }
+    public int edgeCount() { return snapshot.edgeCount(); }
+
+    public boolean addNode(Node n) {
+        return update(g -> g.addNode(n));
+    }
+
+    public boolean addEdge(Node tail, Node head, JSONObject data) {
+        return update(g -> g.addEdge(tail, head, data));
+    }
+
+    public boolean addEdge(String tailId, String headId, JSONObject data) {
+        return update(g -> g.addEdge(tailId, headId, data));
+    }
+
+    /**
+     * Apply a batch of writes atomically: readers see either none or all of them. Batching also publishes a single
+     * snapshot for the whole batch rather than one per write. A batch that throws is not published, but graphs
+     * cannot be rolled back, so the writes it made before throwing stay in the graph and are published with the next
+     * batch that completes.
+     * @param batch Writes to apply to the underlying graph, which must not escape the batch
+     * @return The batch's result
+     */
+    public <T> T update(Function<Graph, T> batch) {
+        writeLock.lock();
+        try {
+            T result = batch.apply(graph);
+            snapshot = graph.freeze();
+            return result;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Get the shortest weighted path between two nodes of the latest snapshot, using A*.
+     * @see Graph#getShortestPath(Node, Node, String, String, String)
+     * @return Nodes on the shortest path from src to dst inclusive, or null if either node is missing or dst is
+     *         unreachable
+     */
+    public ArrayList<Node> getShortestPath(String srcId, String dstId, String xLabel, String yLabel,
+                                           String weightLabel) {
+        CompactGraph cg = snapshot;
+        int s = cg.indexOf(srcId), t = cg.indexOf(dstId);
+        if (s < 0 || t < 0) return null;
+        return AStar.shortestPath(cg, s, t, cg.metric(xLabel, yLabel, weightLabel), null);
+    }
+
+    /**
+     * Check whether dst can be reached from src in the latest snapshot.
+     * @return True if both nodes exist and there is a path from src to dst
+     */
+    public boolean isReachable(String srcId, String dstId) {
+        CompactGraph cg = snapshot;
+        int s = cg.indexOf(srcId), t = cg.indexOf(dstId);
+        if (s < 0 || t < 0) return false;
+        return Reachability.get(Reachability.reachable(cg, cg.reverse(), s, t, Integer.MAX_VALUE), t);
+    }
+}
@@ -0,0 +1,52 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Lock-free union-find over dense ints, safe for concurrent union and find calls.
+ * Roots are always linked from the larger index to the smaller, so the root of every set is its smallest member
+ * and concurrent links can never form a cycle. Finds compress paths by halving with CAS.
+ */
+public class ConcurrentUnionFind {
+    private final AtomicIntegerArray parent;
+
+    public ConcurrentUnionFind(int n) {
+        this.parent = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++) parent.set(i, i);
+    }
+
+    public int size() { return parent.length(); }
+
+    /**
+     * @param x Element
+     * @return Root (smallest member) of the set containing x
+     */
+    public int find(int x) {
+        int p;
+        while ((p = parent.get(x)) != x) {
+            int gp = parent.get(p);
+            if (p != gp) parent.compareAndSet(x, p, gp); // Path halving, losing the race is harmless
+            x = gp;
+        }
+        return x;
+    }
+
+    /**
+     * Merge the sets containing a and b.
+     * @return True if they were in different sets
+     */
+    public boolean union(int a, int b) {
+        while (true) {
+            int ra = find(a), rb = find(b);
+            if (ra == rb) return false;
+            if (ra < rb) { int tmp = ra; ra = rb; rb = tmp; }
+            if (parent.compareAndSet(ra, ra, rb)) return true; // Retry if ra stopped being a root meanwhile
+        }
+    }
+
+    public boolean sameSet(int a, int b) {
+        while (true) {
+            int ra = find(a), rb = find(b);
+            if (ra == rb) return true;
+            if (parent.get(ra) == ra) return false; // ra still a root, so the sets really differ
+        }
+    }
+}
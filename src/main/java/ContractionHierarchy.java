@@ -0,0 +1,419 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Contraction hierarchy over a graph snapshot, for fast point to point shortest path queries.
+ * Preprocessing contracts nodes one at a time in order of importance (edge difference plus contracted neighbours,
+ * updated lazily), adding a shortcut arc u->w whenever removing v would lengthen the shortest u->w path. A query is
+ * then a bidirectional Dijkstra search that only ever moves to higher ranked nodes, and shortcuts are unpacked back
+ * into the original nodes through the two arcs each one replaces.
+ * Arcs 0..originalArcs-1 are the graph's edges (the lightest of any parallel edges, without self loops), the rest
+ * are shortcuts.
+ */
+public class ContractionHierarchy {
+    static final int MAGIC = 0x4A474348;  // "JGCH"
+    static final int VERSION = 1;
+    private static final int WITNESS_SETTLE_LIMIT = 500; // Witness searches give up (adding a shortcut) after this
+    private static final ThreadLocal<AStar.Scratch[]> SCRATCH =
+            ThreadLocal.withInitial(() -> new AStar.Scratch[] {new AStar.Scratch(), new AStar.Scratch()});
+
+    private final CompactGraph graph;
+    private final String weightLabel;
+    private final int[] rank;         // Contraction order by dense node index
+    private final int[] arcTail, arcHead;
+    private final double[] arcWeight;
+    private final int[] arcFirst, arcSecond; // Arcs a shortcut replaces, -1 for original arcs
+    // Upward search graphs: up arcs of v lead to higher ranked heads, down arcs of v come from higher ranked tails
+    private final int[] upOffsets, upArcs, downOffsets, downArcs;
+
+    private ContractionHierarchy(CompactGraph graph, String weightLabel, int[] rank, int[] arcTail, int[] arcHead,
+                                 double[] arcWeight, int[] arcFirst, int[] arcSecond) {
+        this.graph = graph;
+        this.weightLabel = weightLabel;
+        this.rank = rank;
+        this.arcTail = arcTail;
+        this.arcHead = arcHead;
+        this.arcWeight = arcWeight;
+        this.arcFirst = arcFirst;
+        this.arcSecond = arcSecond;
+
+        int n = rank.length;
+        upOffsets = new int[n + 1];
+        downOffsets = new int[n + 1];
+        for (int a = 0; a < arcHead.length; a++) {
+            if (rank[arcHead[a]] > rank[arcTail[a]]) upOffsets[arcTail[a] + 1]++;
+            else downOffsets[arcHead[a] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            upOffsets[v + 1] += upOffsets[v];
+            downOffsets[v + 1] += downOffsets[v];
+        }
+        upArcs = new int[upOffsets[n]];
+        downArcs = new int[downOffsets[n]];
+        int[] upFill = Arrays.copyOf(upOffsets, n), downFill = Arrays.copyOf(downOffsets, n);
+        for (int a = 0; a < arcHead.length; a++) {
+            if (rank[arcHead[a]] > rank[arcTail[a]]) upArcs[upFill[arcTail[a]]++] = a;
+            else downArcs[downFill[arcHead[a]]++] = a;
+        }
+    }
+
+    // Accessors
+    public CompactGraph graph() { return graph; }
+    public String weightLabel() { return weightLabel; }
+    public int arcCount() { return arcHead.length; }
+    public int rank(int v) { return rank[v]; }
+
+    /**
+     * Get the shortest path from src to dst.
+     * @param src Source node
+     * @param dst Destination node
+     * @return Nodes on the shortest path from src to dst inclusive, or null if dst is unreachable
+     */
+    public ArrayList<Node> getShortestPath(Node src, Node dst) {
+        int s = graph.indexOf(src.id), t = graph.indexOf(dst.id);
+        if (s < 0 || t < 0) return null;
+        AStar.Scratch[] scratch = SCRATCH.get();
+        int meet = search(s, t, scratch[0], scratch[1]);
+        if (meet < 0) return null;
+
+        // Arcs from src up to the meeting node, then from it down to dst
+        int[] arcs = new int[16];
+        int count = 0;
+        for (int v = meet; v != s; v = arcTail[scratch[0].prev[v]]) {
+            if (count == arcs.length) arcs = Arrays.copyOf(arcs, count * 2);
+            arcs[count++] = scratch[0].prev[v];
+        }
+        for (int i = 0, j = count - 1; i < j; i++, j--) { int a = arcs[i]; arcs[i] = arcs[j]; arcs[j] = a; }
+        for (int v = meet; v != t; v = arcHead[scratch[1].prev[v]]) {
+            if (count == arcs.length) arcs = Arrays.copyOf(arcs, count * 2);
+            arcs[count++] = scratch[1].prev[v];
+        }
+
+        ArrayList<Node> path = new ArrayList<>();
+        path.add(graph.node(s));
+        int[] stack = new int[16];
+        for (int i = 0; i < count; i++) {
+            int sp = 0;
+            stack[sp++] = arcs[i];
+            while (sp > 0) { // Unpack shortcuts depth first, first half before second
+                int a = stack[--sp];
+                if (arcFirst[a] < 0) {
+                    path.add(graph.node(arcHead[a]));
+                    continue;
+                }
+                if (sp + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[sp++] = arcSecond[a];
+                stack[sp++] = arcFirst[a];
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Get the length of the shortest path from src to dst.
+     * @param src Dense index of the source node
+     * @param dst Dense index of the destination node
+     * @return Total weight of the shortest path, positive infinity if dst is unreachable
+     */
+    public double distance(int src, int dst) {
+        AStar.Scratch[] scratch = SCRATCH.get();
+        int meet = search(src, dst, scratch[0], scratch[1]);
+        return (meet < 0) ? Double.POSITIVE_INFINITY : scratch[0].g[meet] + scratch[1].g[meet];
+    }
+
+    /**
+     * Bidirectional upward search, leaving distances and predecessor arcs in the two scratches.
+     * @return Node where the shortest path peaks, or -1 if dst is unreachable
+     */
+    private int search(int s, int t, AStar.Scratch fwd, AStar.Scratch bwd) {
+        int n = rank.length;
+        fwd.prepare(n);
+        bwd.prepare(n);
+        fwd.seen[s] = fwd.generation;
+        fwd.g[s] = 0;
+        bwd.seen[t] = bwd.generation;
+        bwd.g[t] = 0;
+        fwd.open.insertOrDecrease(s, 0);
+        bwd.open.insertOrDecrease(t, 0);
+        double best = Double.POSITIVE_INFINITY;
+        int meet = -1;
+        try {
+            while (true) {
+                boolean fOpen = !fwd.open.isEmpty() && fwd.open.peekKey() < best;
+                boolean bOpen = !bwd.open.isEmpty() && bwd.open.peekKey() < best;
+                if (!fOpen && !bOpen) return meet;
+
+                // Settle from whichever side has the closer node, then check whether the searches meet there
+                boolean forward = fOpen && (!bOpen || fwd.open.peekKey() <= bwd.open.peekKey());
+                AStar.Scratch side = forward ? fwd : bwd, other = forward ? bwd : fwd;
+                int v = side.open.poll();
+                double d = side.g[v];
+                if (other.reached(v) && d + other.g[v] < best) {
+                    best = d + other.g[v];
+                    meet = v;
+                }
+                int[] offsets = forward ? upOffsets : downOffsets, arcs = forward ? upArcs : downArcs;
+                for (int i = offsets[v], end = offsets[v + 1]; i < end; i++) {
+                    int a = arcs[i];
+                    int u = forward ? arcHead[a] : arcTail[a];
+                    double cost = d + arcWeight[a];
+                    if (side.seen[u] != side.generation) side.seen[u] = side.generation;
+                    else if (cost >= side.g[u]) continue;
+                    side.g[u] = cost;
+                    side.prev[u] = a;
+                    side.open.insertOrDecrease(u, cost);
+                }
+            }
+        } finally {
+            fwd.open.clear();
+            bwd.open.clear();
+        }
+    }
+
+    /**
+     * Contract a graph snapshot.
+     * @param cg Snapshot to preprocess
+     * @param metric Edge weights, resolved against cg
+     * @return Contraction hierarchy of cg
+     */
+    public static ContractionHierarchy build(CompactGraph cg, PathMetric metric) {
+        Builder b = new Builder(cg.nodeCount());
+
+        // Original arcs, keeping only the lightest of parallel edges
+        int[] arcTo = new int[cg.nodeCount()], arcFrom = new int[cg.nodeCount()];
+        Arrays.fill(arcFrom, -1);
+        for (int v = 0; v < cg.nodeCount(); v++) {
+            for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) {
+                int u = cg.edgeTarget(e);
+                if (u == v) continue;
+                double w = metric.weight(e);
+                if (arcFrom[u] != v) {
+                    arcFrom[u] = v;
+                    arcTo[u] = b.addArc(v, u, w, -1, -1);
+                } else if (w < b.weight[arcTo[u]]) b.weight[arcTo[u]] = w;
+            }
+        }
+        return new ContractionHierarchy(cg, metric.weightLabel, b.contractAll(), Arrays.copyOf(b.tail, b.arcs),
+                Arrays.copyOf(b.head, b.arcs), Arrays.copyOf(b.weight, b.arcs), Arrays.copyOf(b.first, b.arcs),
+                Arrays.copyOf(b.second, b.arcs));
+    }
+
+    /**
+     * Mutable state of the contraction: a growable arc table, per-node arc lists and the witness search scratch.
+     * Arc lists keep arcs to contracted nodes, which are skipped rather than removed.
+     */
+    private static class Builder {
+        int arcs;
+        int[] tail = new int[16], head = new int[16], first = new int[16], second = new int[16];
+        double[] weight = new double[16];
+        final int[][] out, in;
+        final int[] outSize, inSize, contractedNeighbours;
+        final boolean[] contracted;
+        final AStar.Scratch witness = new AStar.Scratch();
+
+        Builder(int n) {
+            out = new int[n][];
+            in = new int[n][];
+            outSize = new int[n];
+            inSize = new int[n];
+            contractedNeighbours = new int[n];
+            contracted = new boolean[n];
+        }
+
+        int addArc(int t, int h, double w, int a1, int a2) {
+            if (arcs == tail.length) {
+                int cap = arcs * 2;
+                tail = Arrays.copyOf(tail, cap);
+                head = Arrays.copyOf(head, cap);
+                first = Arrays.copyOf(first, cap);
+                second = Arrays.copyOf(second, cap);
+                weight = Arrays.copyOf(weight, cap);
+            }
+            tail[arcs] = t;
+            head[arcs] = h;
+            weight[arcs] = w;
+            first[arcs] = a1;
+            second[arcs] = a2;
+            append(out, outSize, t, arcs);
+            append(in, inSize, h, arcs);
+            return arcs++;
+        }
+
+        private static void append(int[][] lists, int[] sizes, int v, int a) {
+            if (lists[v] == null) lists[v] = new int[4];
+            else if (sizes[v] == lists[v].length) lists[v] = Arrays.copyOf(lists[v], sizes[v] * 2);
+            lists[v][sizes[v]++] = a;
+        }
+
+        /**
+         * Contract every node, most important last.
+         * @return Rank of each node
+         */
+        int[] contractAll() {
+            int n = out.length;
+            int[] rank = new int[n];
+            IndexedMinHeap queue = new IndexedMinHeap(n);
+            for (int v = 0; v < n; v++) queue.insertOrDecrease(v, priority(v));
+            int next = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                double p = priority(v);
+                if (!queue.isEmpty() && p > queue.peekKey()) { // Stale priority, so requeue instead
+                    queue.insertOrDecrease(v, p);
+                    continue;
+                }
+                shortcuts(v, true);
+                contracted[v] = true;
+                rank[v] = next++;
+                for (int i = 0; i < outSize[v]; i++) contractedNeighbours[head[out[v][i]]]++;
+                for (int i = 0; i < inSize[v]; i++) contractedNeighbours[tail[in[v][i]]]++;
+            }
+            return rank;
+        }
+
+        private double priority(int v) {
+            int degree = 0;
+            for (int i = 0; i < outSize[v]; i++) if (!contracted[head[out[v][i]]]) degree++;
+            for (int i = 0; i < inSize[v]; i++) if (!contracted[tail[in[v][i]]]) degree++;
+            return 2 * (shortcuts(v, false) - degree) + contractedNeighbours[v];
+        }
+
+        /**
+         * Find the shortcuts contracting v needs: one for every u->v->w path with no witness path avoiding v that
+         * is at most as long.
+         * @param add Add the shortcuts, rather than only counting them
+         * @return Number of shortcuts
+         */
+        private int shortcuts(int v, boolean add) {
+            int count = 0;
+            for (int i = 0; i < inSize[v]; i++) {
+                int in1 = in[v][i], u = tail[in1];
+                if (contracted[u]) continue;
+                double limit = -1;
+                for (int j = 0; j < outSize[v]; j++) {
+                    int w = head[out[v][j]];
+                    if (!contracted[w] && w != u) limit = Math.max(limit, weight[in1] + weight[out[v][j]]);
+                }
+                if (limit < 0) continue;
+                witnessSearch(u, v, limit);
+                for (int j = 0; j < outSize[v]; j++) {
+                    int out1 = out[v][j], w = head[out1];
+                    if (contracted[w] || w == u) continue;
+                    double via = weight[in1] + weight[out1];
+                    if (witness.distance(w) <= via) continue;
+                    count++;
+                    if (add) addArc(u, w, via, in1, out1);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Dijkstra from src over uncontracted nodes other than skip, up to the given distance or settle limit.
+         * Tentative distances are lengths of real paths, so any reached node's distance is a valid witness.
+         */
+        private void witnessSearch(int src, int skip, double limit) {
+            AStar.Scratch s = witness;
+            s.prepare(out.length);
+            s.seen[src] = s.generation;
+            s.g[src] = 0;
+            s.open.insertOrDecrease(src, 0);
+            try {
+                for (int settled = 0; !s.open.isEmpty() && settled < WITNESS_SETTLE_LIMIT; settled++) {
+                    if (s.open.peekKey() > limit) break;
+                    int v = s.open.poll();
+                    for (int i = 0; i < outSize[v]; i++) {
+                        int a = out[v][i], u = head[a];
+                        if (u == skip || contracted[u]) continue;
+                        double cost = s.g[v] + weight[a];
+                        if (s.seen[u] != s.generation) s.seen[u] = s.generation;
+                        else if (cost >= s.g[u]) continue;
+                        s.g[u] = cost;
+                        s.open.insertOrDecrease(u, cost);
+                    }
+                }
+            } finally {
+                s.open.clear();
+            }
+        }
+    }
+
+    // SERIALISATION =================================================================================================
+
+    /**
+     * Save the hierarchy so that preprocessing only runs once per dataset. Nodes are stored by id, so the file can
+     * be read back against any graph with the same nodes.
+     * @param file File to write
+     * @throws IOException If the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(weightLabel != null);
+            if (weightLabel != null) out.writeUTF(weightLabel);
+            out.writeInt(rank.length);
+            for (int v = 0; v < rank.length; v++) {
+                out.writeUTF(graph.node(v).id);
+                out.writeInt(rank[v]);
+            }
+            out.writeInt(arcHead.length);
+            for (int a = 0; a < arcHead.length; a++) {
+                out.writeInt(arcTail[a]);
+                out.writeInt(arcHead[a]);
+                out.writeDouble(arcWeight[a]);
+                out.writeInt(arcFirst[a]);
+                out.writeInt(arcSecond[a]);
+            }
+        }
+    }
+
+    /**
+     * Load a hierarchy saved with write, binding it to a graph's current snapshot.
+     * @param file File to read
+     * @param g Graph with the same nodes as the one the hierarchy was built from
+     * @return Contraction hierarchy over g.freeze()
+     * @throws IOException If the file cannot be read, is not a hierarchy file, or does not match g's nodes
+     */
+    public static ContractionHierarchy read(File file, Graph g) throws IOException {
+        CompactGraph cg = g.freeze();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a contraction hierarchy file: " + file);
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported contraction hierarchy version " + version + ": " + file);
+            String weightLabel = in.readBoolean() ? in.readUTF() : null;
+            int n = in.readInt();
+            if (n != cg.nodeCount())
+                throw new IOException("Hierarchy has " + n + " nodes but the graph has " + cg.nodeCount());
+
+            // Map the stored node order onto the graph's dense indices
+            int[] index = new int[n], rank = new int[n];
+            for (int i = 0; i < n; i++) {
+                String id = in.readUTF();
+                index[i] = cg.indexOf(id);
+                if (index[i] < 0) throw new IOException("Hierarchy node " + id + " is not in the graph");
+                rank[index[i]] = in.readInt();
+            }
+            int m = in.readInt();
+            int[] tail = new int[m], head = new int[m], first = new int[m], second = new int[m];
+            double[] weight = new double[m];
+            for (int a = 0; a < m; a++) {
+                tail[a] = index[in.readInt()];
+                head[a] = index[in.readInt()];
+                weight[a] = in.readDouble();
+                first[a] = in.readInt();
+                second[a] = in.readInt();
+            }
+            return new ContractionHierarchy(cg, weightLabel, rank, tail, head, weight, first, second);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Many-to-many shortest path distances between a set of sources and a set of targets.
+ * Each source runs one Dijkstra search that stops once every target is settled, and sources are spread across a
+ * fork-join pool, each worker searching with its own AStar scratch. Paths can optionally be kept, at the cost of one
+ * predecessor array (one int per node) per source.
+ */
+public class DistanceMatrix {
+    private static final int SOURCES_PER_TASK = 4;
+
+    private final CompactGraph graph;  // Snapshot the matrix was computed on
+    private final int[] sources;       // Dense index of each row's source
+    private final int[] targets;       // Dense index of each column's target
+    private final double[][] distances; // distances[i][j] from sources[i] to targets[j], infinite if unreachable
+    private final int[][] prev;         // Predecessor arrays by row, or null if paths were not kept
+
+    private DistanceMatrix(CompactGraph graph, int[] sources, int[] targets, double[][] distances, int[][] prev) {
+        this.graph = graph;
+        this.sources = sources;
+        this.targets = targets;
+        this.distances = distances;
+        this.prev = prev;
+    }
+
+    // Accessors
+    public int rows() { return sources.length; }
+    public int columns() { return targets.length; }
+    public Node source(int i) { return graph.node(sources[i]); }
+    public Node target(int j) { return graph.node(targets[j]); }
+    public double distance(int i, int j) { return distances[i][j]; }
+    public boolean hasPaths() { return prev != null; }
+
+    /**
+     * Get the distance matrix (rows are sources, columns targets). Unreachable pairs are positive infinity.
+     * @return Copy of the distances
+     */
+    public double[][] toArray() {
+        double[][] copy = new double[distances.length][];
+        for (int i = 0; i < copy.length; i++) copy[i] = distances[i].clone();
+        return copy;
+    }
+
+    /**
+     * Get the matrix of hop counts, for matrices computed without a weight label.
+     * @return Hops from each source to each target, -1 if unreachable
+     */
+    public int[][] toHopArray() {
+        int[][] hops = new int[distances.length][targets.length];
+        for (int i = 0; i < hops.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                double d = distances[i][j];
+                hops[i][j] = (d == Double.POSITIVE_INFINITY) ? -1 : (int) d;
+            }
+        }
+        return hops;
+    }
+
+    /**
+     * Reconstruct the shortest path from source i to target j.
+     * @param i Row (source) index
+     * @param j Column (target) index
+     * @return Nodes on the shortest path inclusive, or null if the target is unreachable
+     * @throws IllegalStateException If the matrix was computed without paths
+     */
+    public ArrayList<Node> getPath(int i, int j) {
+        if (prev == null) throw new IllegalStateException("Distance matrix was computed without paths");
+        if (distances[i][j] == Double.POSITIVE_INFINITY) return null;
+        int[] p = prev[i];
+        int hops = 0;
+        for (int v = targets[j]; v != sources[i]; v = p[v]) hops++;
+        Node[] path = new Node[hops + 1];
+        for (int v = targets[j], k = hops; k >= 0; v = p[v], k--) path[k] = graph.node(v);
+        return new ArrayList<>(Arrays.asList(path));
+    }
+
+    /**
+     * Compute the shortest path distance from every source to every target.
+     * @param cg Snapshot to search
+     * @param sources Dense indices of the sources (matrix rows)
+     * @param targets Dense indices of the targets (matrix columns)
+     * @param metric Edge weights, resolved against cg
+     * @param paths Keep predecessors so that paths can be reconstructed with getPath
+     * @param pool Pool to spread sources across, or null to run on the calling thread
+     * @return Distance matrix
+     */
+    public static DistanceMatrix compute(CompactGraph cg, int[] sources, int[] targets, PathMetric metric,
+                                         boolean paths, ForkJoinPool pool) {
+        boolean[] isTarget = new boolean[cg.nodeCount()];
+        int distinct = 0;
+        for (int t : targets) {
+            if (!isTarget[t]) distinct++;
+            isTarget[t] = true;
+        }
+        double[][] distances = new double[sources.length][];
+        int[][] prev = paths ? new int[sources.length][] : null;
+        Rows rows = new Rows(cg, sources, targets, metric, isTarget, distinct, distances, prev, 0, sources.length);
+        if (pool == null) rows.fill();
+        else pool.invoke(rows);
+        return new DistanceMatrix(cg, sources.clone(), targets.clone(), distances, prev);
+    }
+
+    /**
+     * Fill rows [lo, hi) of the matrix, splitting the range across the pool.
+     */
+    private static class Rows extends RecursiveAction {
+        private final CompactGraph cg;
+        private final int[] sources, targets;
+        private final PathMetric metric;
+        private final boolean[] isTarget;
+        private final int distinct;
+        private final double[][] distances;
+        private final int[][] prev;
+        private final int lo, hi;
+
+        Rows(CompactGraph cg, int[] sources, int[] targets, PathMetric metric, boolean[] isTarget, int distinct,
+             double[][] distances, int[][] prev, int lo, int hi) {
+            this.cg = cg;
+            this.sources = sources;
+            this.targets = targets;
+            this.metric = metric;
+            this.isTarget = isTarget;
+            this.distinct = distinct;
+            this.distances = distances;
+            this.prev = prev;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > SOURCES_PER_TASK) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Rows(cg, sources, targets, metric, isTarget, distinct, distances, prev, lo, mid),
+                        new Rows(cg, sources, targets, metric, isTarget, distinct, distances, prev, mid, hi));
+                return;
+            }
+            fill();
+        }
+
+        void fill() {
+            AStar.Scratch s = AStar.scratch(); // Per worker thread
+            for (int i = lo; i < hi; i++) {
+                if (distinct > 0) AStar.search(cg, sources[i], metric, isTarget, distinct, s);
+                double[] row = new double[targets.length];
+                for (int j = 0; j < targets.length; j++) row[j] = s.distance(targets[j]);
+                distances[i] = row;
+                if (prev != null) prev[i] = Arrays.copyOf(s.prev, cg.nodeCount());
+            }
+        }
+    }
+}
@@ -1,7 +1,5 @@
 import org.json.JSONObject;
 
-import java.util.Objects;
-
 public class Edge {
     Node tail;
     Node head;
@@ -14,9 +12,7 @@ public class Edge {
     }
 
     public void addData(JSONObject newData) {
-        JSONObject combinedData = new JSONObject(this.data, JSONObject.getNames(this.data));
-        for(String key : JSONObject.getNames(newData)) { combinedData.put(key, newData.get(key)); }
-        this.data = combinedData;
+        for (String key : newData.keySet()) { this.data.put(key, newData.get(key)); } // Merge in place
     }
 
     public void addData(String key, String val) {
@@ -25,6 +21,6 @@ public class Edge {
 
     @Override
     public int hashCode() {
-        return Objects.hash(tail.id, head.id);
+        return 31 * (31 + tail.id.hashCode()) + head.id.hashCode(); // Objects.hash(tail.id, head.id) without varargs
     }
 }
@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table from an exact (tail, head) pair of dense node indices to edge ids.
+ * The pair is packed into a single long key, so lookups hash two ints and never allocate. Parallel edges between the
+ * same pair are chained in insertion order through a per-edge next array.
+ */
+public class EdgeIndex {
+    private static final long EMPTY = -1L; // Node indices are non-negative, so no real key is -1
+    private static final int NONE = -1;
+
+    private long[] keys;     // Packed (tail, head) key per slot, EMPTY if unused
+    private int[] firsts;    // First edge id per slot
+    private int[] lasts;     // Last edge id per slot, so parallel edges append in O(1)
+    private int[] next;      // Next parallel edge id by edge id, NONE at the end of a chain
+    private int pairs;       // Number of distinct pairs stored
+    private int mask;
+
+    public EdgeIndex() {
+        this(16);
+    }
+
+    public EdgeIndex(int expectedPairs) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedPairs * 2 - 1)) << 1;
+        allocate(capacity);
+        this.next = new int[Math.max(16, expectedPairs)];
+    }
+
+    public int pairCount() { return pairs; }
+
+    /**
+     * Get the first edge added between two nodes.
+     * @param tail Dense index of the tail node
+     * @param head Dense index of the head node
+     * @return Edge id, or -1 if there is no edge from tail to head
+     */
+    public int get(int tail, int head) {
+        long key = pack(tail, head);
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) return firsts[i];
+            if (k == EMPTY) return NONE;
+        }
+    }
+
+    /**
+     * Get the parallel edge added after the given one between the same pair of nodes.
+     * @param edgeId Edge id returned by get or next
+     * @return Next edge id, or -1 if there is none
+     */
+    public int next(int edgeId) {
+        return next[edgeId];
+    }
+
+    /**
+     * Record an edge. Ids must be added in increasing order; an edge between an already indexed pair is appended to
+     * that pair's chain of parallel edges.
+     * @param tail Dense index of the tail node
+     * @param head Dense index of the head node
+     * @param edgeId Id of the edge
+     */
+    public void add(int tail, int head, int edgeId) {
+        if (edgeId >= next.length) next = Arrays.copyOf(next, Math.max(edgeId + 1, next.length * 2));
+        next[edgeId] = NONE;
+
+        long key = pack(tail, head);
+        int i = slot(key);
+        for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+            if (keys[i] == key) { // Parallel edge
+                next[lasts[i]] = edgeId;
+                lasts[i] = edgeId;
+                return;
+            }
+        }
+        keys[i] = key;
+        firsts[i] = edgeId;
+        lasts[i] = edgeId;
+        if (++pairs * 2 > keys.length) rehash(keys.length * 2); // Keep load factor at most 1/2
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldFirsts = firsts, oldLasts = lasts;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY) continue;
+            int i = slot(oldKeys[j]);
+            while (keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            firsts[i] = oldFirsts[j];
+            lasts[i] = oldLasts[j];
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        firsts = new int[capacity];
+        lasts = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static long pack(int tail, int head) {
+        return ((long) tail << 32) | (head & 0xffffffffL);
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads sequential indices across the table
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -1,33 +1,85 @@
 import org.json.JSONObject;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Graph {
     private HashMap<String, Node> nodes;
-    private HashMap<Integer, Edge> edges;  // Use hash based on Node ids
+    private ArrayList<Edge> edges;  // Edges by id (insertion order)
+    private EdgeIndex edgeIndex;    // Edge ids keyed on the exact (tail, head) node index pair
     private HashMap<Node, HashMap<Node, Edge>> adjList; // Secondary edge datastructure to accelerate algos
+    private ArrayList<Node> nodeList;          // Nodes by dense index (insertion order)
+    private HashMap<String, Integer> nodeIndex; // Dense index of each node id
+    private int modCount;                      // Incremented on every topology change
+    private CompactGraph compact;              // Cached CSR snapshot, valid while compactModCount == modCount
+    private int compactModCount;
+    private final AttributeStore nodeAttributes = new AttributeStore(); // Node data columns by dense index
+    private final AttributeStore edgeAttributes = new AttributeStore(); // Edge data columns by edge id
+    private IncrementalConnectivity connectivity; // Maintained once the first connectivity query is made
+    private final ArrayList<SpatialIndex> spatialIndexes = new ArrayList<>(); // Kept up to date as nodes are added
 
     public Graph() {
         this.nodes = new HashMap<>();
-        this.edges = new HashMap<>();
+        this.edges = new ArrayList<>();
+        this.edgeIndex = new EdgeIndex();
         this.adjList = new HashMap<>();
+        this.nodeList = new ArrayList<>();
+        this.nodeIndex = new HashMap<>();
     }
 
     public boolean addNode(Node n) {
         if (nodes.containsKey(n.id)) return false;
         nodes.put(n.id, n);
         adjList.put(n, new HashMap<>());
+        indexNode(n);
+        modCount++;
         return true;
     }
 
     public void setNodes(HashMap<String, Node> nodes) {
         this.nodes = nodes;
+        for (Node n : nodes.values()) { // Keep the adjacency list and dense index covering every node
+            adjList.putIfAbsent(n, new HashMap<>());
+            indexNode(n);
+        }
+        modCount++;
+    }
+
+    private void indexNode(Node n) {
+        if (nodeIndex.containsKey(n.id)) return;
+        nodeIndex.put(n.id, nodeList.size());
+        n.data = nodeAttributes.adopt(nodeList.size(), n.data);
+        nodeList.add(n);
+        if (connectivity != null) connectivity.addNode();
+        for (SpatialIndex index : spatialIndexes) index.insert(nodeList.size() - 1);
     }
 
     public boolean addEdge(Node tail, Node head, JSONObject data) {
         // Abort if edge exists
-        if (adjList.containsKey(tail) && adjList.get(tail).containsKey(head)) return false;
+        if (getEdgeId(tail, head) >= 0) return false;
+        insertEdge(tail, head, data);
+        return true;
+    }
 
+    /**
+     * Add an edge even if the pair of nodes already has one, e.g. one edge per train line serving a pair of stations.
+     * The adjacency list keeps referencing the first edge of the pair; getEdges and the CSR snapshot include all.
+     * @param tail Tail node, added to the graph if new
+     * @param head Head node, added to the graph if new
+     * @param data Edge data
+     * @return The new edge
+     */
+    public Edge addParallelEdge(Node tail, Node head, JSONObject data) {
+        return insertEdge(tail, head, data);
+    }
+
+    private Edge insertEdge(Node tail, Node head, JSONObject data) {
         // Create edge
         Edge e = new Edge(tail, head, data);
 
@@ -36,12 +88,14 @@ public class Graph {
         if (!nodes.containsKey(e.head.id)) addNode(e.head);
 
         // Update edge datastructures
-        edges.put(e.hashCode(), e); // Add edge
-//        if (!adjList.containsKey(e.tail)) adjList.put(e.tail, new HashMap<>()); // Add adjList entry if not present
-        adjList.get(e.tail).put(e.head, e); // Add adjacent node (and ref the shared edge)
-//        if (!adjList.containsKey(e.head)) adjList.put(e.head, new HashMap<>()); // Add adjList entry if not present
+        edgeIndex.add(nodeIndex.get(e.tail.id), nodeIndex.get(e.head.id), edges.size());
+        e.data = edgeAttributes.adopt(edges.size(), e.data);
+        edges.add(e); // Add edge
+        if (connectivity != null) connectivity.union(nodeIndex.get(e.tail.id), nodeIndex.get(e.head.id));
+        adjList.get(e.tail).putIfAbsent(e.head, e); // Add adjacent node (and ref the shared edge)
+        modCount++;
 
-        return true;
+        return e;
     }
 
     public boolean addEdge(String tailId, String headId, JSONObject data) {
@@ -52,97 +106,467 @@ public class Graph {
 
     // Accessors
     public Node getNode(String id) { return this.nodes.get(id); }
-    public Edge getEdge(String tailId, String headId) { return this.edges.get(Objects.hash(tailId, headId)); }
+    public Edge getEdge(int id) { return this.edges.get(id); }
+    public int edgeCount() { return this.edges.size(); }
     public HashMap<Node, HashMap<Node, Edge>> getAdjList() { return this.adjList; }
+    public Node getNode(int index) { return this.nodeList.get(index); }
+    public int nodeCount() { return this.nodeList.size(); }
+    public long version() { // Changes on any add or data write
+        return this.modCount + nodeAttributes.dataVersion() + edgeAttributes.dataVersion();
+    }
+    public AttributeStore nodeAttributes() { return this.nodeAttributes; }
+    public AttributeStore edgeAttributes() { return this.edgeAttributes; }
+
+    /**
+     * Get the first edge from one node to another, without allocating.
+     * @param tailId Id of the tail node
+     * @param headId Id of the head node
+     * @return The edge, or null if there is none
+     */
+    public Edge getEdge(String tailId, String headId) {
+        Integer tail = this.nodeIndex.get(tailId), head = this.nodeIndex.get(headId);
+        if (tail == null || head == null) return null;
+        int id = this.edgeIndex.get(tail, head);
+        return (id < 0) ? null : this.edges.get(id);
+    }
+
+    /**
+     * Get every edge from one node to another, in the order they were added.
+     * @param tailId Id of the tail node
+     * @param headId Id of the head node
+     * @return The edges (empty if there are none)
+     */
+    public ArrayList<Edge> getEdges(String tailId, String headId) {
+        ArrayList<Edge> parallel = new ArrayList<>();
+        Integer tail = this.nodeIndex.get(tailId), head = this.nodeIndex.get(headId);
+        if (tail == null || head == null) return parallel;
+        for (int id = this.edgeIndex.get(tail, head); id >= 0; id = this.edgeIndex.next(id)) parallel.add(this.edges.get(id));
+        return parallel;
+    }
+
+    private int getEdgeId(Node tail, Node head) {
+        Integer t = this.nodeIndex.get(tail.id), h = this.nodeIndex.get(head.id);
+        return (t == null || h == null) ? -1 : this.edgeIndex.get(t, h);
+    }
+
+    /**
+     * Get the dense index of a node. Indices are assigned in insertion order and never change.
+     * @param n Node in this graph
+     * @return Dense node index, or -1 if the node is not in the graph
+     */
+    public int indexOf(Node n) {
+        Integer i = this.nodeIndex.get(n.id);
+        return (i == null) ? -1 : i;
+    }
+
+    /**
+     * Get an immutable CSR snapshot of the graph. The snapshot is cached and rebuilt only after the topology changes,
+     * so repeated queries on an unchanged graph share it.
+     * @return Compact snapshot of the current graph
+     */
+    public CompactGraph freeze() {
+        if (compact == null || compactModCount != modCount) {
+            compact = CompactGraph.of(this, compact); // Incremental, as graphs only grow
+            compactModCount = modCount;
+        }
+        return compact;
+    }
+
+    /**
+     * Get a view of the current snapshot, to narrow down to a subgraph with GraphView.filterNodes and filterEdges
+     * without copying it.
+     * @return View showing every node and edge
+     */
+    public GraphView view() {
+        return GraphView.of(this.freeze());
+    }
 
 
     // GRAPH ALGORITHMS ==============================================================================================
 
     /**
-     *
-     * @param src
-     * @param dst
-     * @return
+     * Get the path from src to dst with the fewest hops, using A* with a euclidian distance heuristic.
+     * @param src Source node
+     * @param dst Destination node
+     * @param xLabel Node data key of the x coordinate
+     * @param yLabel Node data key of the y coordinate
+     * @return Nodes on the shortest path from src to dst inclusive, or null if dst is unreachable
      */
     public ArrayList<Node> getShortestPath(Node src, Node dst, String xLabel, String yLabel) {
+        return getShortestPath(src, dst, xLabel, yLabel, (String) null);
+    }
 
-        // Set-up datastructures for tracking
-        HashMap<Node, Integer> gScores = new HashMap<>(); // Node distance from src (total hops or weighted hops)
-        HashMap<Node, Double> fScores = new HashMap<>();  // Node distance from src + heuristic (e.g. euc distance)
-        HashMap<Node, Node> previous = new HashMap<>();   // Node ancestor that first searched it
+    /**
+     * Get the spatial index over a pair of coordinate keys, building it on first use. The index is kept up to date
+     * as nodes are added, so it can be held on to.
+     * @param xLabel Node data key of the x coordinate
+     * @param yLabel Node data key of the y coordinate
+     * @return Spatial index of the nodes with both coordinates
+     */
+    public SpatialIndex spatialIndex(String xLabel, String yLabel) {
+        for (SpatialIndex index : spatialIndexes)
+            if (index.xLabel().equals(xLabel) && index.yLabel().equals(yLabel)) return index;
+        SpatialIndex index = SpatialIndex.build(this, xLabel, yLabel);
+        spatialIndexes.add(index);
+        return index;
+    }
 
-        // Create a priority queue based on fScores of unvisited nodes
-        class NodeFScoreComparator implements Comparator<Node> {
-            @Override
-            public int compare(Node n1, Node n2) {
-                return Double.compare(fScores.get(n1), fScores.get(n2));
-            }
-        }
-        NodeFScoreComparator comparator = new NodeFScoreComparator();
-        PriorityQueue<Node> fScorePQ = new PriorityQueue<>(comparator);
-
-        // Initialise structures with src node
-        gScores.put(src, 0);
-        fScores.put(src, gScores.get(src) + euclidianDistance(src, dst, xLabel, yLabel));
-        previous.put(src, null);
-        fScorePQ.add(src);
-
-        // Start loop to search nodes based on f-score heuristic, until nodes exhausted or target found
-        Node current = null;
-        while (!fScorePQ.isEmpty()) {
-            current = fScorePQ.remove();
-            if (current.equals(dst)) break;
-
-            // For each node that is unvisited, calculated scores and add to PQ
-            for (Node adjNode : this.adjList.get(current).keySet()) {
-                if (gScores.containsKey(adjNode)) continue; // If node seen, skip
-                previous.put(adjNode, current);
-                gScores.put(adjNode, gScores.get(current) + 1); // ! if want weighted, then multiply by edge weight
-                fScores.put(adjNode, gScores.get(adjNode) + euclidianDistance(adjNode, dst, xLabel, yLabel));
-                fScorePQ.add(adjNode);
-            }
+    /**
+     * Get the node closest to a position, e.g. to route from a user's location rather than a station id.
+     * @param x Position x coordinate
+     * @param y Position y coordinate
+     * @param xLabel Node data key of the x coordinate
+     * @param yLabel Node data key of the y coordinate
+     * @return Nearest node with both coordinates, or null if there is none
+     */
+    public Node getNearestNode(double x, double y, String xLabel, String yLabel) {
+        int v = spatialIndex(xLabel, yLabel).nearest(x, y);
+        return (v < 0) ? null : nodeList.get(v);
+    }
+
+    /**
+     * Get the k nodes closest to a position.
+     * @param k Number of nodes
+     * @return Up to k nodes with both coordinates, nearest first
+     */
+    public ArrayList<Node> getNearestNodes(double x, double y, int k, String xLabel, String yLabel) {
+        return nodesOf(spatialIndex(xLabel, yLabel).nearest(x, y, k));
+    }
+
+    /**
+     * Get the nodes within a euclidian distance of a position.
+     * @param radius Maximum distance, inclusive
+     * @return Nodes found, in order of their dense index
+     */
+    public ArrayList<Node> getNodesWithin(double x, double y, double radius, String xLabel, String yLabel) {
+        return nodesOf(spatialIndex(xLabel, yLabel).withinRadius(x, y, radius));
+    }
+
+    /**
+     * Get the nodes inside a bounding box, bounds inclusive.
+     * @return Nodes found, in order of their dense index
+     */
+    public ArrayList<Node> getNodesInBox(double minX, double minY, double maxX, double maxY,
+                                         String xLabel, String yLabel) {
+        return nodesOf(spatialIndex(xLabel, yLabel).withinBox(minX, minY, maxX, maxY));
+    }
+
+    private ArrayList<Node> nodesOf(int[] indices) {
+        ArrayList<Node> result = new ArrayList<>(indices.length);
+        for (int v : indices) result.add(nodeList.get(v));
+        return result;
+    }
+
+    /**
+     * Get the shortest weighted path from src to dst, using A* with a euclidian distance heuristic.
+     * @param src Source node
+     * @param dst Destination node
+     * @param xLabel Node data key of the x coordinate
+     * @param yLabel Node data key of the y coordinate
+     * @param weightLabel Edge data key of the non-negative edge weight, or null to count hops
+     * @return Nodes on the shortest path from src to dst inclusive, or null if dst is unreachable
+     */
+    public ArrayList<Node> getShortestPath(Node src, Node dst, String xLabel, String yLabel, String weightLabel) {
+        return getShortestPath(src, dst, this.freeze().metric(xLabel, yLabel, weightLabel));
+    }
+
+    /**
+     * Get the shortest weighted path from src to dst for a pre-resolved metric. Resolving the metric once with
+     * freeze().metric(...) and reusing it keeps repeated queries free of allocation beyond the returned path.
+     * @param src Source node
+     * @param dst Destination node
+     * @param metric Edge weights and heuristic; re-resolved if the graph has changed since
+     * @return Nodes on the shortest path from src to dst inclusive, or null if dst is unreachable
+     */
+    public ArrayList<Node> getShortestPath(Node src, Node dst, PathMetric metric) {
+        CompactGraph cg = this.freeze();
+        if (metric.graph != cg || metric.dataVersion != cg.dataVersion())
+            metric = cg.metric(metric.xLabel, metric.yLabel, metric.weightLabel);
+        int s = this.indexOf(src), t = this.indexOf(dst);
+        if (s < 0 || t < 0) return null;
+        GraphMetrics.Probe probe = GraphMetrics.begin("shortestPath");
+        ArrayList<Node> path = AStar.shortestPath(cg, s, t, metric, null);
+        if (probe != null) endSearch(probe);
+        return path;
+    }
+
+    /**
+     * Get the shortest weighted path from src to dst, with weights computed by a function of each edge.
+     * As the function's scale relative to euclidian distance is unknown no heuristic is used (Dijkstra's algorithm).
+     * @param src Source node
+     * @param dst Destination node
+     * @param weight Non-negative weight of an edge
+     * @return Nodes on the shortest path from src to dst inclusive, or null if dst is unreachable
+     */
+    public ArrayList<Node> getShortestPath(Node src, Node dst, ToDoubleFunction<Edge> weight) {
+        CompactGraph cg = this.freeze();
+        int s = this.indexOf(src), t = this.indexOf(dst);
+        if (s < 0 || t < 0) return null;
+        GraphMetrics.Probe probe = GraphMetrics.begin("shortestPath");
+        ArrayList<Node> path = AStar.shortestPath(cg, s, t, cg.metric(null, null, null),
+                e -> weight.applyAsDouble(cg.edge(e)));
+        if (probe != null) endSearch(probe);
+        return path;
+    }
+
+    private static void endSearch(GraphMetrics.Probe probe) {
+        probe.count(AStar.scratch()); // The search ran on this thread's scratch
+        probe.end();
+    }
+
+    /**
+     * Get the shortest path distance from every source to every target, with one single-source search per source
+     * spread across the common fork-join pool.
+     * @param sources Source nodes (matrix rows)
+     * @param targets Target nodes (matrix columns)
+     * @param weightLabel Edge data key of the non-negative edge weight, or null to count hops
+     * @param paths Keep enough state to reconstruct every path with DistanceMatrix.getPath
+     * @return Distance matrix, with positive infinity for unreachable pairs
+     */
+    public DistanceMatrix getDistanceMatrix(List<Node> sources, List<Node> targets, String weightLabel, boolean paths) {
+        CompactGraph cg = this.freeze();
+        return DistanceMatrix.compute(cg, indicesOf(sources), indicesOf(targets), cg.metric(null, null, weightLabel),
+                paths, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Get the shortest path distance from a source to every node. Large graphs are searched with parallel
+     * delta-stepping on the common fork-join pool, small ones with Dijkstra's algorithm on the calling thread.
+     * @param src Source node
+     * @param weightLabel Edge data key of the non-negative edge weight, or null to count hops
+     * @return Distances and predecessors by dense node index (see getNode(int)), or null if src is not in the graph
+     */
+    public ShortestPathTree getShortestPathTree(Node src, String weightLabel) {
+        CompactGraph cg = this.freeze();
+        int s = this.indexOf(src);
+        if (s < 0) return null;
+        GraphMetrics.Probe probe = GraphMetrics.begin("shortestPathTree");
+        ShortestPathTree tree = ShortestPathTree.compute(cg, s, cg.metric(null, null, weightLabel),
+                ForkJoinPool.commonPool());
+        if (probe != null) {
+            probe.count(tree.expanded, tree.pushes, tree.pops, tree.relaxed);
+            probe.end();
         }
+        return tree;
+    }
 
-        // If destination node reached, backtrace and return nodes in shortest path
-        ArrayList<Node> path = null;
-        if (current != null && current.equals(dst)) {
-            path = new ArrayList<>();
-            do {
-                path.add(current);
-            } while ((current = previous.get(current)) != null);
-            Collections.reverse(path); // Reverse the constructed path to get src->dst instead of dst->src
+    private int[] indicesOf(List<Node> nodes) {
+        int[] indices = new int[nodes.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = this.indexOf(nodes.get(i));
+            if (indices[i] < 0) throw new IllegalArgumentException("Node " + nodes.get(i).id + " is not in the graph");
         }
-        return path;
+        return indices;
     }
-    private double euclidianDistance(Node n1, Node n2, String xLabel, String yLabel) {
-        return Math.sqrt(
-                Math.pow(n1.data.getDouble(xLabel) - n2.data.getDouble(xLabel), 2)
-                + Math.pow(n1.data.getDouble(yLabel) - n2.data.getDouble(yLabel), 2)
-        );
+
+    /**
+     * Preprocess the graph into a contraction hierarchy for fast repeated shortest path queries. The hierarchy is a
+     * snapshot: it does not see nodes or edges added afterwards.
+     * @param weightLabel Edge data key of the non-negative edge weight, or null to count hops
+     * @return Contraction hierarchy of the graph's current snapshot
+     */
+    public ContractionHierarchy buildContractionHierarchy(String weightLabel) {
+        CompactGraph cg = this.freeze();
+        return ContractionHierarchy.build(cg, cg.metric(null, null, weightLabel));
     }
 
     /**
-     *
-     * @param src
-     * @return
+     * Get every node reachable from src (including src), using direction-optimising bitset BFS.
+     * @param src Source node
+     * @return Reachable nodes, in order of their dense index
      */
     public ArrayList<Node> getReachableNodes(Node src) {
-        return new ArrayList<Node>();
+        return getReachableNodes(src, Integer.MAX_VALUE);
     }
 
     /**
-     * Get the connected components of the graph, using BFS over the set of nodes.
-     * @return
+     * Get every node reachable from src within a number of hops (including src).
+     * @param src Source node
+     * @param maxHops Maximum number of edges on the path to a node
+     * @return Reachable nodes, in order of their dense index
      */
-    public ArrayList<Graph> getConnectedComponents() {
-        ArrayList<Graph> components = new ArrayList<>();
-        HashSet<Node> seenNodes = new HashSet<>();
-        for (Node n : this.nodes.values()) {
-            if (!seenNodes.contains(n)) components.add(getConnectedComponent(n, seenNodes));
+    public ArrayList<Node> getReachableNodes(Node src, int maxHops) {
+        CompactGraph cg = this.freeze();
+        ArrayList<Node> reachable = new ArrayList<>();
+        int s = this.indexOf(src);
+        if (s < 0) return reachable;
+        long[] visited = Reachability.reachable(cg, cg.reverse(), s, -1, maxHops);
+        for (int w = 0; w < visited.length; w++) {
+            for (long bits = visited[w]; bits != 0; bits &= bits - 1)
+                reachable.add(cg.node((w << 6) + Long.numberOfTrailingZeros(bits)));
         }
+        return reachable;
+    }
+
+    /**
+     * Check whether dst can be reached from src, stopping the search as soon as it is.
+     * @param src Source node
+     * @param dst Destination node
+     * @return True if there is a path from src to dst
+     */
+    public boolean isReachable(Node src, Node dst) {
+        CompactGraph cg = this.freeze();
+        int s = this.indexOf(src), t = this.indexOf(dst);
+        if (s < 0 || t < 0) return false;
+        return Reachability.get(Reachability.reachable(cg, cg.reverse(), s, t, Integer.MAX_VALUE), t);
+    }
+
+    /**
+     * Get a lazy breadth first traversal from src. Nodes are visited as the stream is consumed, so short-circuiting
+     * operations such as findFirst or limit stop the search early.
+     * @param src Start node
+     * @return Nodes reachable from src in breadth first order, src first (empty if src is not in the graph)
+     */
+    public Stream<Node> breadthFirst(Node src) {
+        return breadthFirst(src, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Get a lazy breadth first traversal from src over the current snapshot.
+     * @param src Start node
+     * @param maxDepth Hop limit, Integer.MAX_VALUE for none
+     * @param filter Nodes to visit, or null for all; other nodes are neither visited nor traversed through
+     * @return Nodes in breadth first order
+     */
+    public Stream<Node> breadthFirst(Node src, int maxDepth, Predicate<Node> filter) {
+        CompactGraph cg = this.freeze();
+        int s = this.indexOf(src);
+        if (s < 0) return Stream.empty();
+        return StreamSupport.intStream(Traversal.breadthFirst(cg, s, maxDepth, nodeFilter(cg, filter)), false)
+                .mapToObj(cg::node);
+    }
+
+    /**
+     * Get a lazy depth first (preorder) traversal from src.
+     * @param src Start node
+     * @return Nodes reachable from src in depth first order, src first (empty if src is not in the graph)
+     */
+    public Stream<Node> depthFirst(Node src) {
+        return depthFirst(src, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Get a lazy depth first (preorder) traversal from src over the current snapshot.
+     * @param src Start node
+     * @param maxDepth Hop limit (shortest distance from src), Integer.MAX_VALUE for none
+     * @param filter Nodes to visit, or null for all; other nodes are neither visited nor traversed through
+     * @return Nodes in depth first order
+     */
+    public Stream<Node> depthFirst(Node src, int maxDepth, Predicate<Node> filter) {
+        CompactGraph cg = this.freeze();
+        int s = this.indexOf(src);
+        if (s < 0) return Stream.empty();
+        return StreamSupport.intStream(Traversal.depthFirst(cg, s, maxDepth, nodeFilter(cg, filter)), false)
+                .mapToObj(cg::node);
+    }
+
+    private static IntPredicate nodeFilter(CompactGraph cg, Predicate<Node> filter) {
+        return (filter == null) ? null : v -> filter.test(cg.node(v));
+    }
+
+    /**
+     * Stream the nodes of the current snapshot in dense index order. The stream splits evenly, so parallel()
+     * spreads the nodes across the common pool.
+     * @return Every node
+     */
+    public Stream<Node> nodeStream() {
+        CompactGraph cg = this.freeze();
+        return IntStream.range(0, cg.nodeCount()).mapToObj(cg::node);
+    }
+
+    /**
+     * Stream the edges of the current snapshot, grouped by tail node. Splits evenly like nodeStream.
+     * @return Every edge
+     */
+    public Stream<Edge> edgeStream() {
+        CompactGraph cg = this.freeze();
+        return IntStream.range(0, cg.edgeCount()).mapToObj(cg::edge);
+    }
+
+    /**
+     * Get the connected components of the graph as graphs (shallow copies). Components are found with a parallel
+     * union-find, so for a directed graph these are its weakly connected components. view().getConnectedComponents()
+     * finds the same components as views, without copying.
+     * @return Component graphs, ordered by the earliest added node in each
+     */
+    public ArrayList<Graph> getConnectedComponents() {
+        GraphMetrics.Probe probe = GraphMetrics.begin("connectedComponents");
+        CompactGraph cg = this.freeze();
+        ArrayList<Graph> components = Components.connected(cg).toGraphs(cg);
+        if (probe != null) endComponents(probe, cg);
         return components;
     }
 
+    /**
+     * Get the connected components of the graph as a compact labelling, without copying any graph. Labels index
+     * the graph's dense node indices (see indexOf), and components can be materialised later with toGraph(s).
+     * @return Component labelling, ordered by the earliest added node in each
+     */
+    public Components getComponentLabels() {
+        GraphMetrics.Probe probe = GraphMetrics.begin("componentLabels");
+        CompactGraph cg = this.freeze();
+        Components components = Components.connected(cg);
+        if (probe != null) endComponents(probe, cg);
+        return components;
+    }
+
+    private static void endComponents(GraphMetrics.Probe probe, CompactGraph cg) {
+        probe.count(cg.nodeCount(), 0, 0, cg.edgeCount()); // Union-find visits every node and unions every edge
+        probe.end();
+    }
+
+    /**
+     * Check whether two nodes are in the same (weakly) connected component. The first connectivity query labels
+     * the graph, after which addNode and addEdge keep the labelling up to date, so queries cost near constant time.
+     * @param a Node
+     * @param b Node
+     * @return True if both nodes are in the graph and connected, ignoring edge direction
+     */
+    public boolean sameComponent(Node a, Node b) {
+        int va = this.indexOf(a), vb = this.indexOf(b);
+        return va >= 0 && vb >= 0 && connectivity().sameComponent(va, vb);
+    }
+
+    /**
+     * Get an id for a node's (weakly) connected component. Ids are dense node indices of a member, equal for
+     * every node of the component, and change when the component merges with another.
+     * @param n Node
+     * @return Component id, or -1 if the node is not in the graph
+     */
+    public int componentId(Node n) {
+        int v = this.indexOf(n);
+        return (v < 0) ? -1 : connectivity().find(v);
+    }
+
+    /**
+     * @param n Node
+     * @return Number of nodes in the node's (weakly) connected component, 0 if the node is not in the graph
+     */
+    public int componentSize(Node n) {
+        int v = this.indexOf(n);
+        return (v < 0) ? 0 : connectivity().componentSize(v);
+    }
+
+    /**
+     * @return Number of (weakly) connected components
+     */
+    public int componentCount() {
+        return connectivity().componentCount();
+    }
+
+    /**
+     * Relabel connectivity from scratch, for changes that can split components (such as edge removal), which the
+     * incremental union-find cannot follow.
+     */
+    public void rebuildConnectivity() {
+        connectivity = IncrementalConnectivity.of(this.freeze());
+    }
+
+    private IncrementalConnectivity connectivity() {
+        if (connectivity == null) rebuildConnectivity();
+        return connectivity;
+    }
+
     /**
      * For a given source node, return a new graph (shallow copy) describing the nodes connected component.
      * This method requires the graph is undirected (by having edges in both directions).
@@ -151,32 +575,72 @@ public class Graph {
      * @return
      */
     public Graph getConnectedComponent(Node src, HashSet<Node> seenNodes) {
-        Graph newG = new Graph();            // Create a new graph for the connected component
-        Queue<Node> q = new LinkedList<>();  // Create a queue for FIFO processing of nodes
-        q.add(src);                          // Add starting node
-
-        // If caller doesn't need to sync seen (visited) nodes then create here for local tracking
-        if (seenNodes == null) seenNodes = new HashSet<>();
-
-        while (!q.isEmpty()) {         // Until q empty, pop node and search neighbours, adding them to q if unseen
-            Node n = q.remove();
-            newG.addNode(n); // Add to graph
-            seenNodes.add(n);
-            for (Node adjNode : this.adjList.get(n).keySet()) {
-                if (seenNodes.contains(adjNode)) continue; // Don't add to queue if node is seen
-                q.add(adjNode);
-                newG.addEdge(n, adjNode, null);
+        CompactGraph cg = this.freeze();
+        boolean[] seen = new boolean[cg.nodeCount()];
+
+        // If caller is syncing seen (visited) nodes then don't revisit them here
+        if (seenNodes != null) for (Node n : seenNodes) {
+            int v = this.indexOf(n);
+            if (v >= 0) seen[v] = true;
+        }
+        return bfsComponent(cg, this.indexOf(src), seen, new int[cg.nodeCount()], seenNodes);
+    }
+
+    /**
+     * BFS from src over the CSR snapshot, copying every reached node and its out-edges into a new graph.
+     * @param cg Snapshot to search
+     * @param src Dense index of the source node
+     * @param seen Visited flags by dense index, updated in place
+     * @param queue Scratch FIFO array of at least nodeCount() entries
+     * @param seenNodes Optional caller set to also record visited nodes in
+     * @return Graph of the nodes reached from src
+     */
+    private static Graph bfsComponent(CompactGraph cg, int src, boolean[] seen, int[] queue, HashSet<Node> seenNodes) {
+        Graph newG = new Graph();  // Create a new graph for the connected component
+        int head = 0, tail = 0;
+        queue[tail++] = src;
+        seen[src] = true;
+
+        while (head < tail) {      // Until q empty, pop node and search neighbours, adding them to q if unseen
+            int v = queue[head++];
+            newG.addNode(cg.node(v));
+            if (seenNodes != null) seenNodes.add(cg.node(v));
+            for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) {
+                int adj = cg.edgeTarget(e);
+                if (seen[adj]) continue; // Don't add to queue if node is seen
+                seen[adj] = true;
+                queue[tail++] = adj;
+            }
+        }
+
+        // Edges are added once all nodes are present so every edge within the component is kept
+        for (int i = 0; i < tail; i++) {
+            int v = queue[i];
+            for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) {
+                Node adjNode = cg.node(cg.edgeTarget(e));
+                if (newG.getNode(adjNode.id) != null) newG.addEdge(cg.node(v), adjNode, cg.edge(e).data);
             }
         }
         return newG;
     }
 
     /**
-     * Implementation of Tarjan's algorithm for getting strongly connected components of a graph.
-     * @return
+     * Get the strongly connected components of the graph as graphs (shallow copies), using an iterative Tarjan's
+     * algorithm, or parallel forward-backward decomposition for large graphs.
+     * @return Component graphs, ordered by the earliest added node in each
      */
     public ArrayList<Graph> getStronglyConnectedComponents() {
-        return new ArrayList<Graph>();
+        CompactGraph cg = this.freeze();
+        return StronglyConnectedComponents.of(cg).toGraphs(cg);
+    }
+
+    /**
+     * Get the strongly connected components of the graph as a compact labelling over dense node indices. Use
+     * StronglyConnectedComponents.condensation to get the DAG between components.
+     * @return Component labelling, ordered by the earliest added node in each
+     */
+    public Components getStronglyConnectedComponentLabels() {
+        return StronglyConnectedComponents.of(this.freeze());
     }
 
 }
@@ -0,0 +1,206 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk loader for graphs split across many node and path files (shards).
+ * Shards are parsed in parallel, and each worker reduces its paths to a buffer of distinct segments holding the label
+ * that segment ends up with. The buffers are then merged into the graph on the calling thread, in the order the
+ * shards were added, with the same rules as GraphLoader: node records fill in existing nodes, an existing edge is
+ * relabelled rather than duplicated, and undirected paths label each direction with its own suffix. The result is
+ * therefore identical to loading the shards one after the other with GraphLoader, whatever the thread timing.
+ * Node shards are merged before path shards.
+ */
+public class GraphBuilder {
+    private final ArrayList<Callable<Shard>> nodeShards = new ArrayList<>();
+    private final ArrayList<Callable<Shard>> pathShards = new ArrayList<>();
+
+    /**
+     * Add node shards.
+     * @param nodesKey Key of the array of node data (each with an "id" property), or null if each file is the array
+     * @param files Shard files
+     * @return This builder
+     */
+    public GraphBuilder nodes(String nodesKey, File... files) {
+        for (File file : files) nodeShards.add(() -> new Shard(GraphLoader.readArray(file, nodesKey), null));
+        return this;
+    }
+
+    /**
+     * Add directed path shards, as loaded by GraphLoader.addPathsData.
+     * @param pathsKey Key of the array of paths
+     * @param pathsLabelKey Key of each path's label (also the key labels are stored under on edges), or null
+     * @param pathsNodesKey Key of each path's array of node ids
+     * @param files Shard files
+     * @return This builder
+     */
+    public GraphBuilder paths(String pathsKey, String pathsLabelKey, String pathsNodesKey, File... files) {
+        for (File file : files) {
+            pathShards.add(() -> {
+                JSONArray paths = GraphLoader.readArray(file, pathsKey);
+                Segments segments = new Segments(pathsLabelKey);
+                for (int i = 0; i < paths.length(); i++) {
+                    JSONObject pathData = paths.getJSONObject(i);
+                    JSONArray path = pathData.getJSONArray(pathsNodesKey);
+                    String label = (pathsLabelKey == null) ? null : pathData.getString(pathsLabelKey);
+                    for (int j = 1; j < path.length(); j++)
+                        segments.add(path.getString(j - 1), path.getString(j), label);
+                }
+                return new Shard(null, segments.values());
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Add undirected path shards, as loaded by GraphLoader.addPathsDataUndirected.
+     * @param pathsKey Key of the array of paths
+     * @param pathsLabelKey Key of each path's label (also the key labels are stored under on edges)
+     * @param pathsNodesKey Key of each path's array of node ids
+     * @param pathLabelExtensionForward Suffix for the label of edges in path order
+     * @param pathLabelExtensionBackward Suffix for the label of edges against path order
+     * @param files Shard files
+     * @return This builder
+     */
+    public GraphBuilder undirectedPaths(String pathsKey, String pathsLabelKey, String pathsNodesKey,
+                                        String pathLabelExtensionForward, String pathLabelExtensionBackward,
+                                        File... files) {
+        for (File file : files) {
+            pathShards.add(() -> {
+                JSONArray paths = GraphLoader.readArray(file, pathsKey);
+                Segments segments = new Segments(pathsLabelKey);
+                for (int i = 0; i < paths.length(); i++) {
+                    JSONObject pathData = paths.getJSONObject(i);
+                    JSONArray path = pathData.getJSONArray(pathsNodesKey);
+                    String label = pathData.getString(pathsLabelKey);
+                    for (int j = 1; j < path.length(); j++) {
+                        segments.add(path.getString(j - 1), path.getString(j), label + pathLabelExtensionForward);
+                        segments.add(path.getString(j), path.getString(j - 1), label + pathLabelExtensionBackward);
+                    }
+                }
+                return new Shard(null, segments.values());
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Parse every shard on the common fork-join pool and merge them into a graph.
+     * @param g Graph to add to
+     * @throws IOException If a shard cannot be read
+     */
+    public void build(Graph g) throws IOException {
+        build(g, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parse every shard on a pool and merge them into a graph.
+     * @param g Graph to add to
+     * @param pool Pool to parse shards on
+     * @throws IOException If a shard cannot be read
+     */
+    public void build(Graph g, ForkJoinPool pool) throws IOException {
+        GraphMetrics.Probe probe = GraphMetrics.begin("buildGraph");
+        ArrayList<Callable<Shard>> tasks = new ArrayList<>(nodeShards);
+        tasks.addAll(pathShards);
+        List<Future<Shard>> parsed = pool.invokeAll(tasks);
+        ArrayList<Shard> shards = new ArrayList<>(parsed.size());
+        for (Future<Shard> f : parsed) shards.add(get(f));
+        long nodeRecords = 0, segmentCount = 0;
+        for (Shard shard : shards) {
+            if (shard.nodes != null) nodeRecords += shard.nodes.length();
+            else segmentCount += shard.segments.size();
+        }
+        if (probe != null) probe.phase("parse", nodeRecords + segmentCount, probe.lap());
+
+        // Merge on this thread in shard order, so ids and labels do not depend on which worker finished first
+        for (Shard shard : shards) {
+            if (shard.nodes == null) continue;
+            for (int i = 0; i < shard.nodes.length(); i++) GraphLoader.addNodeRecord(g, shard.nodes.getJSONObject(i));
+        }
+        if (probe != null) probe.phase("nodes", nodeRecords, probe.lap());
+        for (Shard shard : shards) {
+            if (shard.segments == null) continue;
+            for (Segment s : shard.segments) {
+                Edge e = g.getEdge(s.tail, s.head);
+                if (e == null)
+                    g.addEdge(GraphLoader.nodeOrBare(g, s.tail), GraphLoader.nodeOrBare(g, s.head), s.data);
+                else if (s.data != null) e.addData(s.data);
+            }
+        }
+        if (probe != null) {
+            probe.phase("edges", segmentCount, probe.lap());
+            probe.end();
+        }
+    }
+
+    private static Shard get(Future<Shard> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof UncheckedIOException) throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Parsed shard: node records, or the distinct segments of its paths.
+     */
+    private static final class Shard {
+        final JSONArray nodes;
+        final Collection<Segment> segments;
+
+        Shard(JSONArray nodes, Collection<Segment> segments) {
+            this.nodes = nodes;
+            this.segments = segments;
+        }
+    }
+
+    /**
+     * Directed segment with the edge data it leaves behind: the last label given to it in the shard, since a later
+     * label overwrites an earlier one on a shared edge.
+     */
+    private static final class Segment {
+        final String tail, head;
+        JSONObject data;  // Null if unlabelled
+
+        Segment(String tail, String head) {
+            this.tail = tail;
+            this.head = head;
+        }
+    }
+
+    /**
+     * Per-worker buffer of distinct segments, in order of first appearance so edges are created in file order.
+     */
+    private static final class Segments {
+        private final String labelKey;
+        private final LinkedHashMap<String, Segment> byPair = new LinkedHashMap<>();
+
+        Segments(String labelKey) { this.labelKey = labelKey; }
+
+        void add(String tail, String head, String label) {
+            Segment s = byPair.computeIfAbsent(tail + '\u0000' + head, k -> new Segment(tail, head));
+            if (labelKey != null) s.data = new JSONObject().put(labelKey, label);
+        }
+
+        Collection<Segment> values() { return byPair.values(); }
+    }
+}
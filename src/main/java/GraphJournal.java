@@ -0,0 +1,451 @@
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable Graph: an append-only journal of mutations on top of a binary base snapshot, kept in one directory.
+ * Generation N of the graph is the base file base-N.bin (in the GraphLoader.saveBinary format, absent for generation
+ * 0) plus the mutations in journal-N.log, and in the journals of any later generation whose base was not completed.
+ * Opening the directory loads the newest base and replays its journals in order. Compaction starts the next
+ * generation's journal and then writes the graph as it stood at that point as the next generation's base, while
+ * mutations carry on into the new journal, so recovery only replays the mutations since the last compaction.
+ *
+ * Mutations are applied to the graph and buffered at once, and commit makes everything buffered so far durable.
+ * Commits from concurrent threads are grouped: while one thread writes and syncs, the others wait behind it and then
+ * find their records already written, so a burst of commits costs one write and one fsync. Every record carries a
+ * CRC, and replay stops at the first torn or corrupt record, dropping the uncommitted tail a crash can leave behind.
+ * Node and edge data are journaled as they are when the element is added; later changes to the data are not.
+ */
+public class GraphJournal implements Closeable {
+    static final int MAGIC = 0x4A474A4C;  // "JGJL"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final long SYNC_INTERVAL_NANOS = 1_000_000_000L;
+    private static final byte ADD_NODE = 1, ADD_EDGE = 2, ADD_PARALLEL_EDGE = 3;
+
+    /**
+     * When commit forces the journal to disk.
+     */
+    public enum SyncPolicy {
+        COMMIT,    // On every commit, so committed mutations survive power loss
+        INTERVAL,  // At most once a second, so power loss can lose the last second of commits
+        NONE       // Only on compaction and close; commits survive a process crash but not power loss
+    }
+
+    private final Path dir;
+    private final SyncPolicy sync;
+    private final long compactBytes;
+    private final Graph graph;
+    private final ReentrantLock compactLock = new ReentrantLock(); // Held while compacting; taken before commitLock
+    private final Object commitLock = new Object(); // Held by the thread writing the log; taken before this
+    private int generation;     // Generation of the newest complete base, guarded by this
+    private int logGeneration;  // Generation of the journal being written, guarded by commitLock
+    private FileChannel log;    // Guarded by commitLock
+
+    // Guarded by this
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(); // Records not yet written to the log
+    private long appended;       // Records appended since open
+    private int journaledNodes;  // Nodes of the graph already in the base or journal
+
+    // Guarded by commitLock
+    private volatile long written;  // Records written to the log
+    private volatile long synced;   // Records forced to disk
+    private long lastSync = System.nanoTime();
+
+    private GraphJournal(Path dir, SyncPolicy sync, long compactBytes, Graph graph, int generation, int logGeneration,
+                         FileChannel log) {
+        this.dir = dir;
+        this.sync = sync;
+        this.compactBytes = compactBytes;
+        this.graph = graph;
+        this.generation = generation;
+        this.logGeneration = logGeneration;
+        this.log = log;
+        this.journaledNodes = graph.nodeCount();
+    }
+
+    /**
+     * Open a journal directory, recovering the graph it holds (an empty graph for a new directory).
+     * @param dir Directory of the journal, created if missing
+     * @param sync When commits are forced to disk
+     * @param compactBytes Journal size past which a commit compacts, 0 to only compact on request
+     * @return Journal, whose graph holds every mutation committed before the journal was closed or the process died
+     * @throws IOException If the directory cannot be read or holds files of another format
+     */
+    public static GraphJournal open(File dir, SyncPolicy sync, long compactBytes) throws IOException {
+        Path path = dir.toPath();
+        Files.createDirectories(path);
+        int generation = 0;
+        try (Stream<Path> files = Files.list(path)) {
+            for (Path f : (Iterable<Path>) files::iterator) generation = Math.max(generation, generationOf(f, "base-"));
+        }
+        Graph graph = (generation == 0) ? new Graph() : MappedGraph.open(file(path, "base-", generation)).toGraph();
+
+        // Replay the base's journal, then those a compaction that did not finish went on to; append to the last
+        int logGeneration = generation;
+        while (file(path, "journal-", logGeneration + 1).exists()) logGeneration++;
+        FileChannel log = null;
+        for (int g = generation; g <= logGeneration; g++) {
+            FileChannel ch = FileChannel.open(file(path, "journal-", g).toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                replay(graph, ch);
+            } catch (IOException | RuntimeException e) {
+                ch.close();
+                throw e;
+            }
+            if (g < logGeneration) ch.close();
+            else log = ch;
+        }
+        GraphJournal journal = new GraphJournal(path, sync, compactBytes, graph, generation, logGeneration, log);
+        journal.deleteOldGenerations();
+        return journal;
+    }
+
+    // Accessors
+    public Graph graph() { return graph; }  // Mutate it only through the journal
+    public synchronized int generation() { return generation; }
+
+    /**
+     * @return Bytes of journal since the last compaction, including records not yet committed
+     */
+    public long journalBytes() throws IOException {
+        synchronized (commitLock) {
+            synchronized (this) {
+                return log.size() + buffer.size();
+            }
+        }
+    }
+
+    // MUTATIONS =====================================================================================================
+
+    /**
+     * Add a node to the graph and journal it.
+     * @see Graph#addNode(Node)
+     */
+    public synchronized boolean addNode(Node n) {
+        if (!graph.addNode(n)) return false;
+        appendNewNodes();
+        return true;
+    }
+
+    /**
+     * Add an edge to the graph and journal it, along with any node it adds.
+     * @see Graph#addEdge(Node, Node, JSONObject)
+     */
+    public synchronized boolean addEdge(Node tail, Node head, JSONObject data) {
+        if (!graph.addEdge(tail, head, data)) return false;
+        appendNewNodes();
+        append(ADD_EDGE, graph.getEdge(graph.edgeCount() - 1));
+        return true;
+    }
+
+    /**
+     * Add an edge between existing nodes to the graph and journal it.
+     * @see Graph#addEdge(String, String, JSONObject)
+     */
+    public synchronized boolean addEdge(String tailId, String headId, JSONObject data) {
+        return addEdge(graph.getNode(tailId), graph.getNode(headId), data);
+    }
+
+    /**
+     * Add a parallel edge to the graph and journal it, along with any node it adds.
+     * @see Graph#addParallelEdge(Node, Node, JSONObject)
+     */
+    public synchronized Edge addParallelEdge(Node tail, Node head, JSONObject data) {
+        Edge e = graph.addParallelEdge(tail, head, data);
+        appendNewNodes();
+        append(ADD_PARALLEL_EDGE, e);
+        return e;
+    }
+
+    private void appendNewNodes() {
+        for (; journaledNodes < graph.nodeCount(); journaledNodes++) {
+            Node n = graph.getNode(journaledNodes);
+            append(ADD_NODE, n.id, null, n.data);
+        }
+    }
+
+    private void append(byte type, Edge e) {
+        append(type, e.tail.id, e.head.id, e.data);
+    }
+
+    /**
+     * Buffer one record: payload length, payload (type, ids and data as JSON text) and the payload's CRC-32.
+     */
+    private void append(byte type, String a, String b, JSONObject data) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(type);
+            writeString(out, a);
+            if (type != ADD_NODE) writeString(out, b);
+            writeString(out, (data == null) ? "{}" : data.toString());
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            DataOutputStream frame = new DataOutputStream(buffer);
+            frame.writeInt(bytes.length);
+            frame.write(bytes);
+            frame.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // In-memory streams do not fail
+        }
+        appended++;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // DURABILITY ====================================================================================================
+
+    /**
+     * Make every mutation made so far (by any thread) durable, as far as the sync policy goes, then compact if the
+     * journal has outgrown its limit.
+     * @throws IOException If the journal cannot be written
+     */
+    public void commit() throws IOException {
+        long target;
+        boolean full;
+        synchronized (this) { target = appended; }
+        synchronized (commitLock) {
+            if (sync == SyncPolicy.COMMIT ? synced < target : written < target) flush(sync == SyncPolicy.COMMIT);
+            full = compactBytes > 0 && log.size() > compactBytes;
+        }
+        if (full && compactLock.tryLock()) { // Unless another thread is compacting already
+            try {
+                compact();
+            } finally {
+                compactLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Write out the buffered records, and force them to disk if asked to or the sync interval is up.
+     */
+    private void flush(boolean force) throws IOException {
+        byte[] bytes;
+        long upTo;
+        synchronized (this) {
+            bytes = buffer.toByteArray();
+            buffer = new ByteArrayOutputStream();
+            upTo = appended;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) log.write(buf);
+        written = upTo;
+        long now = System.nanoTime();
+        if (force || (sync == SyncPolicy.INTERVAL && now - lastSync >= SYNC_INTERVAL_NANOS)) {
+            log.force(false);
+            lastSync = now;
+            synced = upTo;
+        }
+    }
+
+    /**
+     * Write the current graph as the base of a new generation and start its empty journal. Mutations and commits
+     * only wait while the new journal is switched in; the base is written from a snapshot while they go on into it.
+     * @throws IOException If the new base or journal cannot be written, in which case the current base stays and its
+     *                     journals keep every mutation
+     */
+    public void compact() throws IOException {
+        compactLock.lock();
+        try {
+            CompactGraph snapshot;
+            int next;
+            synchronized (commitLock) {
+                next = logGeneration + 1;
+                FileChannel nextLog = FileChannel.open(file(dir, "journal-", next).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                try {
+                    writeHeader(nextLog);
+                    nextLog.force(true);
+                    nextLog.position(HEADER_BYTES);
+                    forceDirectory(dir); // Records committed to the new journal must not lose its directory entry
+                } catch (IOException e) {
+                    nextLog.close();
+                    throw e;
+                }
+
+                // Switch journals at a point where the graph holds exactly the records of the old ones
+                byte[] rest;
+                long upTo;
+                FileChannel old = log;
+                synchronized (this) {
+                    rest = buffer.toByteArray();
+                    buffer = new ByteArrayOutputStream();
+                    upTo = appended;
+                    snapshot = graph.freeze();
+                    log = nextLog;
+                    logGeneration = next;
+                }
+
+                // Nothing is committed to the new journal before the old one is complete on disk
+                ByteBuffer buf = ByteBuffer.wrap(rest);
+                while (buf.hasRemaining()) old.write(buf);
+                old.force(false);
+                old.close();
+                written = synced = upTo;
+                lastSync = System.nanoTime();
+            }
+
+            File tmp = new File(dir.toFile(), "base-" + next + ".bin.tmp");
+            MappedGraph.write(snapshot, tmp);
+            try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+
+            // Renaming the base in is the commit point: recovery uses the newest base and its journals. Make the
+            // rename durable before deleting what it replaces, and the deletes durable before the next compaction
+            Files.move(tmp.toPath(), file(dir, "base-", next).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory(dir);
+            synchronized (this) { generation = next; }
+            deleteOldGenerations();
+            forceDirectory(dir);
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    /**
+     * Commit, force the journal to disk and close it.
+     */
+    @Override
+    public void close() throws IOException {
+        compactLock.lock();
+        try {
+            synchronized (commitLock) {
+                flush(true);
+                log.close();
+            }
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    // FILES =========================================================================================================
+
+    private static File file(Path dir, String prefix, int generation) {
+        return new File(dir.toFile(), prefix + generation + (prefix.equals("base-") ? ".bin" : ".log"));
+    }
+
+    /**
+     * @return Generation of a base or journal file with the given prefix, or 0 if the file is not one
+     */
+    private static int generationOf(Path f, String prefix) {
+        String name = f.getFileName().toString();
+        String suffix = prefix.equals("base-") ? ".bin" : ".log";
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) return 0;
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Force a directory's entries (created, renamed and deleted files) to disk.
+     */
+    private static void forceDirectory(Path dir) throws IOException {
+        FileChannel ch;
+        try {
+            ch = FileChannel.open(dir, StandardOpenOption.READ);
+        } catch (IOException e) {
+            return; // Platforms that cannot open directories (Windows) make their entries durable with the files
+        }
+        try (ch) {
+            ch.force(true);
+        }
+    }
+
+    /**
+     * Delete the files of generations before the newest base and any half written base.
+     */
+    private void deleteOldGenerations() throws IOException {
+        int generation = generation();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                int g = Math.max(generationOf(f, "base-"), generationOf(f, "journal-"));
+                boolean stale = (g > 0 || f.getFileName().toString().equals("journal-0.log")) && g < generation;
+                if (stale || f.getFileName().toString().endsWith(".bin.tmp")) Files.deleteIfExists(f);
+            }
+        }
+    }
+
+    private static void writeHeader(FileChannel ch) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) ch.write(header, header.position());
+    }
+
+    /**
+     * Apply every intact record of a journal to a graph, truncate any torn tail and leave the channel positioned
+     * for appending.
+     */
+    private static void replay(Graph graph, FileChannel ch) throws IOException {
+        if (ch.size() < HEADER_BYTES) { // New journal, or one that crashed while being created
+            ch.truncate(0);
+            writeHeader(ch);
+            ch.position(HEADER_BYTES);
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(ch.size(), Integer.MAX_VALUE));
+        while (buf.hasRemaining() && ch.read(buf, buf.position()) > 0) { }
+        buf.flip();
+        if (buf.getInt() != MAGIC) throw new IOException("Not a graph journal");
+        int version = buf.getInt();
+        if (version != VERSION) throw new IOException("Unsupported graph journal version " + version);
+
+        long good = buf.position();
+        CRC32 crc = new CRC32();
+        while (buf.remaining() >= 4) {
+            int length = buf.getInt();
+            if (length < 1 || buf.remaining() < length + 4) break;
+            byte[] payload = new byte[length];
+            buf.get(payload);
+            crc.reset();
+            crc.update(payload);
+            if (buf.getInt() != (int) crc.getValue()) break;
+            apply(graph, ByteBuffer.wrap(payload));
+            good = buf.position();
+        }
+        ch.truncate(good);
+        ch.position(good);
+    }
+
+    private static void apply(Graph graph, ByteBuffer record) {
+        byte type = record.get();
+        String a = readString(record);
+        if (type == ADD_NODE) {
+            graph.addNode(new Node(a, new JSONObject(readString(record))));
+            return;
+        }
+        String b = readString(record);
+        JSONObject data = new JSONObject(readString(record));
+        if (type == ADD_EDGE) graph.addEdge(graph.getNode(a), graph.getNode(b), data);
+        else graph.addParallelEdge(graph.getNode(a), graph.getNode(b), data);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
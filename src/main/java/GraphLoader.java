@@ -3,10 +3,19 @@ import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
-import java.util.HashMap;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
 
 
 public class GraphLoader {
@@ -18,17 +27,23 @@ public class GraphLoader {
      */
     public static void loadNodes(Graph g, File file, String nodesKey) throws FileNotFoundException {
 
-        // Create a reader for the json file
-        BufferedReader input = new BufferedReader(new FileReader(file));
-        JSONTokener tokener = new JSONTokener(input);
-
         // Get the array of node data. .json file could be array itself, or a key may contain array
-        JSONArray nodesJSONArr = (nodesKey == null)
-                ? new JSONArray(tokener)
-                : (new JSONObject(tokener)).getJSONArray(nodesKey);
+        GraphMetrics.Probe probe = GraphMetrics.begin("loadNodes");
+        JSONArray nodesJSONArr;
+        try (BufferedReader input = new BufferedReader(new FileReader(file))) {
+            JSONTokener tokener = new JSONTokener(input);
+            nodesJSONArr = (nodesKey == null)
+                    ? new JSONArray(tokener)
+                    : (new JSONObject(tokener)).getJSONArray(nodesKey);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
 
         // Get the json nodes array and put each node into native datastructure
         // (assumes: no duplicate nodes, "id" property on nodes with unique id)
+        if (probe != null) probe.phase("parse", nodesJSONArr.length(), probe.lap());
         if (nodesJSONArr.getJSONObject(0).keySet().size() > 1) // If more than just "id" property
             for (int i = 0; i < nodesJSONArr.length(); i++) {
                 JSONObject nodeJsonObj = nodesJSONArr.getJSONObject(i);  // Get the next node as JSON object
@@ -43,6 +58,7 @@ public class GraphLoader {
                 g.addNode(new Node(id));                                 // Create new node
             }
         }
+        if (probe != null) endPhases(probe, "nodes", nodesJSONArr.length());
     }
 
 
@@ -56,27 +72,16 @@ public class GraphLoader {
      */
     public static void addPathsData(Graph g, File file, String pathsKey, String pathsNodesKey) throws FileNotFoundException {
 
-        // Create a reader for the json file
-        BufferedReader input = new BufferedReader(new FileReader(file));
-        JSONTokener tokener = new JSONTokener(input);
-
-        // Get the array of node data. .json file could be array itself, or a key may contain array
-        JSONArray paths = (new JSONObject(tokener)).getJSONArray(pathsKey);
+        // Get the array of path data
+        GraphMetrics.Probe probe = GraphMetrics.begin("addPathsData");
+        JSONArray paths = readArray(file, pathsKey);
+        if (probe != null) probe.phase("parse", paths.length(), probe.lap());
 
         // For each path, add edges or edit edges to add path label
         for (int i = 0; i < paths.length(); i++) {
-            JSONObject pathData = paths.getJSONObject(i);
-            JSONArray path = pathData.getJSONArray(pathsNodesKey);
-
-            // Assuming node array implies directed path from i=0 to i=n, add edges and edge data
-            for (int j = 1; j < path.length(); j++) {
-                // Get edge if exists. If not (create) else (add label data)
-                Edge e = g.getEdge(path.getString(j-1), path.getString(j));
-                if (e == null) {
-                    g.addEdge(path.getString(j - 1), path.getString(j), null);
-                }
-            }
+            addPath(g, paths.getJSONObject(i).getJSONArray(pathsNodesKey), null, null);
         }
+        if (probe != null) endPhases(probe, "edges", paths.length());
     }
 
     /**
@@ -90,31 +95,17 @@ public class GraphLoader {
      */
     public static void addPathsData(Graph g, File file, String pathsKey, String pathsLabelKey, String pathsNodesKey) throws FileNotFoundException {
 
-        // Create a reader for the json file
-        BufferedReader input = new BufferedReader(new FileReader(file));
-        JSONTokener tokener = new JSONTokener(input);
-
-        // Get the array of node data. .json file could be array itself, or a key may contain array
-        JSONArray paths = (new JSONObject(tokener)).getJSONArray(pathsKey);
+        // Get the array of path data
+        GraphMetrics.Probe probe = GraphMetrics.begin("addPathsData");
+        JSONArray paths = readArray(file, pathsKey);
+        if (probe != null) probe.phase("parse", paths.length(), probe.lap());
 
         // For each path, add edges or edit edges to add path label
         for (int i = 0; i < paths.length(); i++) {
             JSONObject pathData = paths.getJSONObject(i);
-            String labelVal = pathData.getString(pathsLabelKey);
-            JSONArray path = pathData.getJSONArray(pathsNodesKey);
-
-            // Assuming node array implies directed path from i=0 to i=n, add edges and edge data
-            for (int j = 1; j < path.length(); j++) {
-                // Get edge if exists. If not (create) else (add label data)
-                Edge e = g.getEdge(path.getString(j-1), path.getString(j));
-                if (e == null) {
-                    JSONObject edgeLabel = new JSONObject();
-                    edgeLabel.put(pathsLabelKey, labelVal);
-                    g.addEdge(path.getString(j - 1), path.getString(j), edgeLabel);
-                }
-                else { e.addData(pathsLabelKey, labelVal); }
-            }
+            addPath(g, pathData.getJSONArray(pathsNodesKey), pathsLabelKey, pathData.getString(pathsLabelKey));
         }
+        if (probe != null) endPhases(probe, "edges", paths.length());
     }
 
     /**
@@ -130,40 +121,303 @@ public class GraphLoader {
                                               String pathsNodesKey, String pathLabelExtensionForward,
                                               String pathLabelExtensionBackward) throws FileNotFoundException {
 
-        // Create a reader for the json file
-        BufferedReader input = new BufferedReader(new FileReader(file));
-        JSONTokener tokener = new JSONTokener(input);
-
-        // Get the array of node data. .json file could be array itself, or a key may contain array
-        JSONArray paths = (new JSONObject(tokener)).getJSONArray(pathsKey);
+        // Get the array of path data
+        GraphMetrics.Probe probe = GraphMetrics.begin("addPathsDataUndirected");
+        JSONArray paths = readArray(file, pathsKey);
+        if (probe != null) probe.phase("parse", paths.length(), probe.lap());
 
         // For each path, add edges or edit edges to add path label
+        for (int i = 0; i < paths.length(); i++) {
+            JSONObject pathData = paths.getJSONObject(i);
+            addPathUndirected(g, pathData.getJSONArray(pathsNodesKey), pathsLabelKey,
+                    pathData.getString(pathsLabelKey), pathLabelExtensionForward, pathLabelExtensionBackward);
+        }
+        if (probe != null) endPhases(probe, "edges", paths.length());
+    }
+
+    /**
+     * Add a set of labelled paths to a Graph as a multigraph: each distinct label on a pair of nodes gets its own
+     * parallel edge (e.g. one edge per train line serving two stations) instead of relabelling a shared edge.
+     * @param g
+     * @param file
+     * @param pathsKey
+     * @param pathsLabelKey
+     * @param pathsNodesKey
+     * @throws FileNotFoundException
+     */
+    public static void addPathsDataParallel(Graph g, File file, String pathsKey, String pathsLabelKey, String pathsNodesKey) throws FileNotFoundException {
+
+        // Get the array of path data
+        GraphMetrics.Probe probe = GraphMetrics.begin("addPathsDataParallel");
+        JSONArray paths = readArray(file, pathsKey);
+        if (probe != null) probe.phase("parse", paths.length(), probe.lap());
+
+        // For each path, add an edge per segment unless that segment already carries the label
         for (int i = 0; i < paths.length(); i++) {
             JSONObject pathData = paths.getJSONObject(i);
             String labelVal = pathData.getString(pathsLabelKey);
             JSONArray path = pathData.getJSONArray(pathsNodesKey);
-
-            // Assuming node array implies undirected path from i=0 to i=n, add edges and edge data in both directions
             for (int j = 1; j < path.length(); j++) {
-                // Get edge if exists. If not (create) else (add label data)
-                Edge e = g.getEdge(path.getString(j-1), path.getString(j));
-                if (e == null) {
-                    JSONObject edgeLabel = new JSONObject();
-                    edgeLabel.put(pathsLabelKey, labelVal+pathLabelExtensionForward);
-                    g.addEdge(path.getString(j - 1), path.getString(j), edgeLabel);
+                boolean labelled = false;
+                for (Edge e : g.getEdges(path.getString(j-1), path.getString(j)))
+                    labelled |= labelVal.equals(e.data.optString(pathsLabelKey, null));
+                if (labelled) continue;
+                JSONObject edgeLabel = new JSONObject();
+                edgeLabel.put(pathsLabelKey, labelVal);
+                g.addParallelEdge(nodeOrBare(g, path.getString(j - 1)), nodeOrBare(g, path.getString(j)), edgeLabel);
+            }
+        }
+        if (probe != null) endPhases(probe, "edges", paths.length());
+    }
+
+    /**
+     * Add the edges of one path, labelling each edge with labelVal (or leaving it unlabelled if labelKey is null).
+     * Existing edges are relabelled rather than duplicated.
+     */
+    private static void addPath(Graph g, JSONArray path, String labelKey, String labelVal) {
+        // Assuming node array implies directed path from i=0 to i=n, add edges and edge data
+        for (int j = 1; j < path.length(); j++) {
+            // Get edge if exists. If not (create) else (add label data)
+            Edge e = g.getEdge(path.getString(j-1), path.getString(j));
+            if (e == null) {
+                JSONObject edgeLabel = null;
+                if (labelKey != null) {
+                    edgeLabel = new JSONObject();
+                    edgeLabel.put(labelKey, labelVal);
+                }
+                g.addEdge(nodeOrBare(g, path.getString(j - 1)), nodeOrBare(g, path.getString(j)), edgeLabel);
+            }
+            else if (labelKey != null) { e.addData(labelKey, labelVal); }
+        }
+    }
+
+    /**
+     * Add the edges of one path in both directions, suffixing the label with the direction's extension.
+     */
+    private static void addPathUndirected(Graph g, JSONArray path, String pathsLabelKey, String labelVal,
+                                          String pathLabelExtensionForward, String pathLabelExtensionBackward) {
+        // Assuming node array implies undirected path from i=0 to i=n, add edges and edge data in both directions
+        for (int j = 1; j < path.length(); j++) {
+            // Get edge if exists. If not (create) else (add label data)
+            Edge e = g.getEdge(path.getString(j-1), path.getString(j));
+            if (e == null) {
+                JSONObject edgeLabel = new JSONObject();
+                edgeLabel.put(pathsLabelKey, labelVal+pathLabelExtensionForward);
+                g.addEdge(nodeOrBare(g, path.getString(j - 1)), nodeOrBare(g, path.getString(j)), edgeLabel);
+            }
+            else { e.addData(pathsLabelKey, labelVal+pathLabelExtensionForward); }
+            e = g.getEdge(path.getString(j), path.getString(j-1));
+            if (e == null) {
+                JSONObject edgeLabel = new JSONObject();
+                edgeLabel.put(pathsLabelKey, labelVal+pathLabelExtensionBackward);
+                g.addEdge(nodeOrBare(g, path.getString(j)), nodeOrBare(g, path.getString(j-1)), edgeLabel);
+            }
+            else { e.addData(pathsLabelKey, labelVal+pathLabelExtensionBackward); }
+        }
+    }
+
+    /**
+     * Get a node by id, creating it without data if the graph does not have it yet.
+     */
+    static Node nodeOrBare(Graph g, String id) {
+        Node n = g.getNode(id);
+        return (n == null) ? new Node(id) : n; // addEdge adds new nodes to the graph
+    }
+
+    /**
+     * Read the whole array stored under a top level key.
+     * @param key Top level key, or null if the file is the array itself
+     */
+    static JSONArray readArray(File file, String key) throws FileNotFoundException {
+        try (BufferedReader input = new BufferedReader(new FileReader(file))) {
+            JSONTokener tokener = new JSONTokener(input);
+            return (key == null) ? new JSONArray(tokener) : (new JSONObject(tokener)).getJSONArray(key);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Record the phase since the last lap and finish the loader call's probe.
+     */
+    private static void endPhases(GraphMetrics.Probe probe, String phase, long records) {
+        probe.phase(phase, records, probe.lap());
+        probe.end();
+    }
+
+    // BINARY FORMAT =================================================================================================
+
+    /**
+     * Save a graph in the binary graph format, so it can later be opened without parsing JSON.
+     * @param g Graph to save
+     * @param file Destination file, overwritten if present
+     * @throws IOException If the file cannot be written
+     */
+    public static void saveBinary(Graph g, File file) throws IOException {
+        MappedGraph.write(g, file);
+    }
+
+    /**
+     * Memory-map a graph saved with saveBinary. Algorithms on the returned graph read the mapped file directly; use
+     * MappedGraph.toGraph() to get a mutable copy.
+     * @param file Binary graph file
+     * @return Mapped graph
+     * @throws IOException If the file cannot be read or is not a supported graph file
+     */
+    public static MappedGraph openBinary(File file) throws IOException {
+        return MappedGraph.open(file);
+    }
+
+    // STREAMING LOADER ==============================================================================================
+
+    /**
+     * Receives progress updates from the streaming loader.
+     */
+    public interface ProgressListener {
+        /**
+         * @param bytesRead Bytes of the file consumed so far
+         * @param totalBytes Size of the file
+         * @param nodesLoaded Node records read so far
+         * @param pathsLoaded Path records read so far
+         */
+        void onProgress(long bytesRead, long totalBytes, int nodesLoaded, int pathsLoaded);
+    }
+
+    private static final long PROGRESS_INTERVAL_BYTES = 1 << 20; // Report roughly once per MiB read
+
+    /**
+     * Load nodes and directed paths from a JSON file in a single streaming pass. Each node and path record is built
+     * and added to the graph as it is read, so the whole document is never held in memory. Paths may appear before
+     * the nodes they reference: such nodes are created bare and receive their data when their record is read.
+     * @param g Graph to add to
+     * @param file JSON file with a top level object holding the nodes and paths arrays
+     * @param nodesKey Key of the array of node data (each with an "id" property)
+     * @param pathsKey Key of the array of paths
+     * @param pathsLabelKey Key of each path's label (also the key labels are stored under on edges), or null
+     * @param pathsNodesKey Key of each path's array of node ids
+     * @param progress Optional progress listener
+     * @throws IOException If the file cannot be read
+     */
+    public static void load(Graph g, File file, String nodesKey, String pathsKey, String pathsLabelKey,
+                            String pathsNodesKey, ProgressListener progress) throws IOException {
+        stream("load", g, file, nodesKey, pathsKey, progress, pathData -> addPath(g, pathData.getJSONArray(pathsNodesKey),
+                pathsLabelKey, (pathsLabelKey == null) ? null : pathData.getString(pathsLabelKey)));
+    }
+
+    /**
+     * Load nodes and undirected labelled paths from a JSON file in a single streaming pass, with the same edge
+     * labelling as addPathsDataUndirected.
+     * @param g Graph to add to
+     * @param file JSON file with a top level object holding the nodes and paths arrays
+     * @param nodesKey Key of the array of node data (each with an "id" property)
+     * @param pathsKey Key of the array of paths
+     * @param pathsLabelKey Key of each path's label (also the key labels are stored under on edges)
+     * @param pathsNodesKey Key of each path's array of node ids
+     * @param pathLabelExtensionForward Suffix for the label of edges in path order
+     * @param pathLabelExtensionBackward Suffix for the label of edges against path order
+     * @param progress Optional progress listener
+     * @throws IOException If the file cannot be read
+     */
+    public static void loadUndirected(Graph g, File file, String nodesKey, String pathsKey, String pathsLabelKey,
+                                      String pathsNodesKey, String pathLabelExtensionForward,
+                                      String pathLabelExtensionBackward, ProgressListener progress) throws IOException {
+        stream("loadUndirected", g, file, nodesKey, pathsKey, progress, pathData -> addPathUndirected(g,
+                pathData.getJSONArray(pathsNodesKey), pathsLabelKey, pathData.getString(pathsLabelKey),
+                pathLabelExtensionForward, pathLabelExtensionBackward));
+    }
+
+    /**
+     * Walk the top level object once, handing node records to the graph and path records to pathHandler.
+     * Parsing and insertion interleave, so when metrics are on each phase's time is summed record by record.
+     */
+    private static void stream(String operation, Graph g, File file, String nodesKey, String pathsKey,
+                               ProgressListener progress, Consumer<JSONObject> pathHandler) throws IOException {
+        GraphMetrics.Probe probe = GraphMetrics.begin(operation);
+        long parseNanos = 0, nodeNanos = 0, edgeNanos = 0;
+        long totalBytes = file.length();
+        try (CountingInputStream in = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            JsonStreamReader json = new JsonStreamReader(reader);
+            int nodesLoaded = 0, pathsLoaded = 0;
+            long nextReport = PROGRESS_INTERVAL_BYTES;
+
+            json.beginObject();
+            String key;
+            while ((key = json.nextKey()) != null) {
+                boolean isNodes = key.equals(nodesKey), isPaths = key.equals(pathsKey);
+                if (!isNodes && !isPaths) {
+                    json.skipValue();
+                    continue;
                 }
-                else { e.addData(pathsLabelKey, labelVal+pathLabelExtensionForward); }
-                e = g.getEdge(path.getString(j), path.getString(j-1));
-                if (e == null) {
-                    JSONObject edgeLabel = new JSONObject();
-                    edgeLabel.put(pathsLabelKey, labelVal+pathLabelExtensionBackward);
-                    g.addEdge(path.getString(j), path.getString(j-1), edgeLabel);
+                json.beginArray();
+                while (json.hasNextElement()) {
+                    JSONObject record = (JSONObject) json.nextValue();
+                    if (probe != null) parseNanos += probe.lap();
+                    if (isNodes) {
+                        addNodeRecord(g, record);
+                        nodesLoaded++;
+                        if (probe != null) nodeNanos += probe.lap();
+                    } else {
+                        pathHandler.accept(record);
+                        pathsLoaded++;
+                        if (probe != null) edgeNanos += probe.lap();
+                    }
+                    if (progress != null && in.count >= nextReport) {
+                        progress.onProgress(in.count, totalBytes, nodesLoaded, pathsLoaded);
+                        nextReport = in.count + PROGRESS_INTERVAL_BYTES;
+                    }
                 }
-                else { e.addData(pathsLabelKey, labelVal+pathLabelExtensionBackward); }
+            }
+            if (progress != null) progress.onProgress(in.count, totalBytes, nodesLoaded, pathsLoaded);
+            if (probe != null) {
+                probe.phase("parse", nodesLoaded + pathsLoaded, parseNanos + probe.lap());
+                probe.phase("nodes", nodesLoaded, nodeNanos);
+                probe.phase("edges", pathsLoaded, edgeNanos);
+                probe.end();
             }
         }
     }
 
+    /**
+     * Add a node from its JSON record, or fill in the data of a node an earlier path created bare.
+     */
+    static void addNodeRecord(Graph g, JSONObject nodeJsonObj) {
+        String id = nodeJsonObj.getString("id");  // Get id of node
+        nodeJsonObj.remove("id");                 // Remove redundant id property
+        Node existing = g.getNode(id);
+        if (existing == null) g.addNode(new Node(id, nodeJsonObj));
+        else for (String key : nodeJsonObj.keySet()) existing.data.put(key, nodeJsonObj.opt(key));
+    }
+
+    /**
+     * Input stream that counts the bytes read through it, for progress reporting.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
 
+        CountingInputStream(InputStream in) { super(in); }
 
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
 }
@@ -0,0 +1,286 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in instrumentation of graph algorithm calls and loader phases.
+ * Each instrumented call records its wall time, bytes allocated by the calling thread and search counters (nodes
+ * expanded, heap pushes and pops, edges relaxed). Samples go to an in-process registry of histograms and to any
+ * registered listeners while the registry is enabled, and out as JDK Flight Recorder events ("graph.Query" and
+ * "graph.LoadPhase") while a recording has them enabled. With both off an instrumented call costs one volatile read
+ * and one JFR enabled check, and searches only keep their counters in locals.
+ *
+ * Registry histograms are named operation.counter, e.g. "shortestPath.nanos" or "loadNodes.parse.nanos".
+ */
+public final class GraphMetrics {
+    private static volatile boolean enabled;
+    private static final ConcurrentHashMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+    private static final CopyOnWriteArrayList<Listener> LISTENERS = new CopyOnWriteArrayList<>();
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private GraphMetrics() {}
+
+    /**
+     * Receives every sample recorded while the registry is enabled, on the thread that made the call.
+     */
+    public interface Listener {
+        void onSample(Sample sample);
+    }
+
+    /**
+     * Measurements of one algorithm call or loader phase. Counters an operation does not have are zero.
+     */
+    public static final class Sample {
+        public final String operation;     // e.g. "shortestPath", or "loadNodes.parse" for a loader phase
+        public final long nanos;
+        public final long allocatedBytes;  // Allocated by the calling thread, 0 for loader phases
+        public final long nodesExpanded;
+        public final long heapPushes;
+        public final long heapPops;
+        public final long edgesRelaxed;
+        public final long records;         // JSON records handled by a loader phase
+
+        Sample(String operation, long nanos, long allocatedBytes, long nodesExpanded, long heapPushes, long heapPops,
+               long edgesRelaxed, long records) {
+            this.operation = operation;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+            this.nodesExpanded = nodesExpanded;
+            this.heapPushes = heapPushes;
+            this.heapPops = heapPops;
+            this.edgesRelaxed = edgesRelaxed;
+            this.records = records;
+        }
+    }
+
+    /**
+     * Concurrent histogram of non-negative values in power of two buckets, so percentiles are accurate to within a
+     * factor of two.
+     */
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[64]; // Bucket b counts values with b significant bits
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int b = 0; b < buckets.length; b++) buckets[b] = new LongAdder();
+        }
+
+        void record(long value) {
+            value = Math.max(0, value);
+            buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        // Accessors
+        public long count() { return count.sum(); }
+        public long sum() { return sum.sum(); }
+        public long max() { return max.get(); }
+        public double mean() { long n = count(); return (n == 0) ? 0 : (double) sum() / n; }
+
+        /**
+         * Estimate a percentile.
+         * @param q Quantile between 0 and 1
+         * @return Upper bound of the bucket holding the quantile (capped at the maximum), 0 if empty
+         */
+        public long percentile(double q) {
+            long n = count(), rank = (long) Math.ceil(q * n), seen = 0;
+            if (n == 0) return 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b].sum();
+                if (seen >= rank) return Math.min(max(), (1L << b) - 1);
+            }
+            return max();
+        }
+    }
+
+    // REGISTRY ======================================================================================================
+
+    public static boolean isEnabled() { return enabled; }
+    public static void setEnabled(boolean on) { enabled = on; }
+    public static void addListener(Listener listener) { LISTENERS.add(listener); }
+    public static void removeListener(Listener listener) { LISTENERS.remove(listener); }
+
+    /**
+     * @return Histogram of the given name, or null if nothing has been recorded under it
+     */
+    public static Histogram histogram(String name) { return HISTOGRAMS.get(name); }
+
+    /**
+     * @return Names of every histogram recorded so far, sorted
+     */
+    public static Set<String> names() { return Collections.unmodifiableSet(new TreeSet<>(HISTOGRAMS.keySet())); }
+
+    /**
+     * Drop every histogram.
+     */
+    public static void reset() { HISTOGRAMS.clear(); }
+
+    private static void record(String name, long value) {
+        HISTOGRAMS.computeIfAbsent(name, k -> new Histogram()).record(value);
+    }
+
+    // PROBES ========================================================================================================
+
+    /**
+     * Start measuring a call.
+     * @param operation Name of the call, e.g. "shortestPath"
+     * @return Probe to add counters to and end, or null if neither the registry nor the JFR events are enabled
+     */
+    static Probe begin(String operation) {
+        QueryEvent event = new QueryEvent();
+        boolean jfr = event.isEnabled();
+        if (!jfr && !enabled && !new LoadPhaseEvent().isEnabled()) return null;
+        if (jfr) event.begin();
+        return new Probe(operation, jfr ? event : null);
+    }
+
+    /**
+     * Measurement of one call in progress. Not thread safe: a probe belongs to the thread that began it.
+     */
+    static final class Probe {
+        private final String operation;
+        private final QueryEvent event;
+        private final long start, startBytes;
+        private long lap;
+        long nodesExpanded, heapPushes, heapPops, edgesRelaxed;
+
+        private Probe(String operation, QueryEvent event) {
+            this.operation = operation;
+            this.event = event;
+            this.startBytes = allocatedBytes();
+            this.start = this.lap = System.nanoTime();
+        }
+
+        /**
+         * Add the counters of the last search run on a scratch.
+         */
+        void count(AStar.Scratch s) {
+            count(s.expanded, s.pushes, s.pops, s.relaxed);
+        }
+
+        void count(long expanded, long pushes, long pops, long relaxed) {
+            nodesExpanded += expanded;
+            heapPushes += pushes;
+            heapPops += pops;
+            edgesRelaxed += relaxed;
+        }
+
+        /**
+         * @return Nanoseconds since the probe began or lap was last called
+         */
+        long lap() {
+            long now = System.nanoTime(), elapsed = now - lap;
+            lap = now;
+            return elapsed;
+        }
+
+        /**
+         * Record one phase of the call (e.g. parsing) that took the given time.
+         * @param phase Name of the phase
+         * @param records Number of records the phase handled
+         * @param nanos Time spent in the phase
+         */
+        void phase(String phase, long records, long nanos) {
+            LoadPhaseEvent e = new LoadPhaseEvent();
+            if (e.shouldCommit()) {
+                e.operation = operation;
+                e.phase = phase;
+                e.records = records;
+                e.time = nanos;
+                e.commit();
+            }
+            if (!enabled) return;
+            String name = operation + "." + phase;
+            record(name + ".nanos", nanos);
+            record(name + ".records", records);
+            notify(new Sample(name, nanos, 0, 0, 0, 0, 0, records));
+        }
+
+        /**
+         * Finish the call and publish its sample.
+         */
+        void end() {
+            long nanos = System.nanoTime() - start, bytes = allocatedBytes() - startBytes;
+            if (event != null && event.shouldCommit()) {
+                event.operation = operation;
+                event.nodesExpanded = nodesExpanded;
+                event.heapPushes = heapPushes;
+                event.heapPops = heapPops;
+                event.edgesRelaxed = edgesRelaxed;
+                event.allocatedBytes = bytes;
+                event.commit();
+            }
+            if (!enabled) return;
+            record(operation + ".nanos", nanos);
+            record(operation + ".allocatedBytes", bytes);
+            record(operation + ".nodesExpanded", nodesExpanded);
+            record(operation + ".heapPushes", heapPushes);
+            record(operation + ".heapPops", heapPops);
+            record(operation + ".edgesRelaxed", edgesRelaxed);
+            notify(new Sample(operation, nanos, bytes, nodesExpanded, heapPushes, heapPops, edgesRelaxed, 0));
+        }
+
+        private static void notify(Sample sample) {
+            for (Listener listener : LISTENERS) listener.onSample(sample);
+        }
+    }
+
+    private static long allocatedBytes() {
+        return (THREADS == null) ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()
+                    ? threads : null;
+        } catch (LinkageError | UnsupportedOperationException e) {
+            return null; // No java.management module or HotSpot extension, so allocation is not measured
+        }
+    }
+
+    // JFR EVENTS ====================================================================================================
+
+    @Name("graph.Query")
+    @Label("Graph Query")
+    @Category("Graph")
+    @Description("Graph algorithm call with its search counters")
+    static final class QueryEvent extends Event {
+        @Label("Operation") String operation;
+        @Label("Nodes Expanded") long nodesExpanded;
+        @Label("Heap Pushes") long heapPushes;
+        @Label("Heap Pops") long heapPops;
+        @Label("Edges Relaxed") long edgesRelaxed;
+        @Label("Allocated") @DataAmount long allocatedBytes;
+    }
+
+    @Name("graph.LoadPhase")
+    @Label("Graph Load Phase")
+    @Category("Graph")
+    @Description("Time spent in one phase of a GraphLoader call")
+    static final class LoadPhaseEvent extends Event {
+        @Label("Operation") String operation;
+        @Label("Phase") String phase;
+        @Label("Records") long records;
+        @Label("Time") @Timespan long time;
+    }
+}
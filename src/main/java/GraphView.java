@@ -0,0 +1,272 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Subgraph of a CSR snapshot that hides nodes and edges instead of copying the rest, e.g. one train line, a region
+ * or the network without its closed stations. A view costs a bitset (one bit per node, plus one per edge if edges
+ * are filtered), and component views share a single labelling, costing nothing each. Views keep the snapshot's dense
+ * node and edge indices, so metrics resolved on the snapshot apply as they are, and they implement Topology, so
+ * A*, Dijkstra, delta-stepping, traversals and component labelling run on them unchanged. An edge is visible if it
+ * passes the edge filter and both its ends are visible. Reachability and StronglyConnectedComponents honour views
+ * too, given the view's own transpose (reverse(), built once per view) as the reverse graph.
+ */
+public class GraphView implements Topology {
+    private final CompactGraph graph;
+    private final long[] nodeMask;     // Visible nodes by dense index, or null if selected by component
+    private final int[] componentOf;   // Component labelling shared by component views, or null
+    private final int component;       // Component shown, if componentOf is set
+    private final long[] edgeMask;     // Edges passing the edge filter by edge index, or null for all
+    private final int size;            // Visible nodes
+    private volatile IntTopology reverse;  // In-edges of the visible edges, built on first use
+
+    private GraphView(CompactGraph graph, long[] nodeMask, int[] componentOf, int component, long[] edgeMask,
+                      int size) {
+        this.graph = graph;
+        this.nodeMask = nodeMask;
+        this.componentOf = componentOf;
+        this.component = component;
+        this.edgeMask = edgeMask;
+        this.size = size;
+    }
+
+    /**
+     * View a whole snapshot, to narrow down with filterNodes and filterEdges.
+     * @param cg Snapshot to view
+     * @return View showing every node and edge
+     */
+    public static GraphView of(CompactGraph cg) {
+        long[] all = new long[(cg.nodeCount() + 63) >>> 6];
+        Arrays.fill(all, -1L);
+        if ((cg.nodeCount() & 63) != 0 && all.length > 0) all[all.length - 1] = (1L << cg.nodeCount()) - 1;
+        return new GraphView(cg, all, null, 0, null, cg.nodeCount());
+    }
+
+    // Accessors
+    public CompactGraph graph() { return graph; }
+    public int size() { return size; }  // Visible nodes; nodeCount() is the size of the dense index space
+
+    public boolean contains(Node n) {
+        int v = graph.indexOf(n.id);
+        return v >= 0 && nodeVisible(v);
+    }
+
+    /**
+     * Get the reverse topology of the view (in-edges along visible edges), building and caching it on first use.
+     * @return Transpose of this view
+     */
+    public IntTopology reverse() {
+        IntTopology r = reverse;
+        if (r == null) reverse = r = IntTopology.transpose(this); // Racing builds produce equal results
+        return r;
+    }
+
+    @Override public int nodeCount() { return graph.nodeCount(); }
+    @Override public int edgeCount() { return graph.edgeCount(); }
+    @Override public int edgeStart(int v) { return graph.edgeStart(v); }
+    @Override public int edgeEnd(int v) { return nodeVisible(v) ? graph.edgeEnd(v) : graph.edgeStart(v); }
+    @Override public int edgeTarget(int e) { return graph.edgeTarget(e); }
+
+    @Override
+    public boolean nodeVisible(int v) {
+        if (componentOf != null) return componentOf[v] == component;
+        return (nodeMask[v >>> 6] & (1L << v)) != 0;
+    }
+
+    @Override
+    public boolean edgeVisible(int e) {
+        return (edgeMask == null || (edgeMask[e >>> 6] & (1L << e)) != 0) && nodeVisible(graph.edgeTarget(e));
+    }
+
+    @Override
+    public int degree(int v) {
+        int degree = 0;
+        for (int e = edgeStart(v), end = edgeEnd(v); e < end; e++) if (edgeVisible(e)) degree++;
+        return degree;
+    }
+
+    // FILTERS =======================================================================================================
+
+    /**
+     * Narrow the view to the visible nodes that pass a filter, e.g. to exclude closed stations.
+     * @param filter Nodes to keep
+     * @return New view; this one is unchanged
+     */
+    public GraphView filterNodes(Predicate<Node> filter) {
+        long[] mask = new long[(graph.nodeCount() + 63) >>> 6];
+        int kept = 0;
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            if (!nodeVisible(v) || !filter.test(graph.node(v))) continue;
+            mask[v >>> 6] |= 1L << v;
+            kept++;
+        }
+        return new GraphView(graph, mask, null, 0, edgeMask, kept);
+    }
+
+    /**
+     * Narrow the view to the edges that pass a filter, e.g. the edges of one line. Nodes stay visible, so those
+     * left without edges become isolated.
+     * @param filter Edges to keep
+     * @return New view; this one is unchanged
+     */
+    public GraphView filterEdges(Predicate<Edge> filter) {
+        long[] mask = new long[(graph.edgeCount() + 63) >>> 6];
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            boolean kept = (edgeMask == null || (edgeMask[e >>> 6] & (1L << e)) != 0) && filter.test(graph.edge(e));
+            if (kept) mask[e >>> 6] |= 1L << e;
+        }
+        return new GraphView(graph, nodeMask, componentOf, component, mask, size);
+    }
+
+    // ALGORITHMS ====================================================================================================
+
+    /**
+     * Get the shortest weighted path between two visible nodes, using A* with a euclidian distance heuristic.
+     * @param src Source node
+     * @param dst Destination node
+     * @param xLabel Node data key of the x coordinate, or null for no heuristic
+     * @param yLabel Node data key of the y coordinate, or null for no heuristic
+     * @param weightLabel Edge data key of the non-negative edge weight, or null to count hops
+     * @return Nodes on the shortest path within the view, or null if there is none or either node is hidden
+     */
+    public ArrayList<Node> getShortestPath(Node src, Node dst, String xLabel, String yLabel, String weightLabel) {
+        int s = graph.indexOf(src.id), t = graph.indexOf(dst.id);
+        if (s < 0 || t < 0 || !nodeVisible(s) || !nodeVisible(t)) return null;
+        AStar.Scratch scratch = AStar.scratch();
+        if (!AStar.search(this, s, t, graph.metric(xLabel, yLabel, weightLabel), null, scratch)) return null;
+        return AStar.path(graph, scratch, t);
+    }
+
+    /**
+     * Get the shortest path distance from a visible node to every node of the view.
+     * @param src Source node
+     * @param weightLabel Edge data key of the non-negative edge weight, or null to count hops
+     * @return Shortest path tree over the snapshot's dense indices (hidden nodes unreached), or null if src is hidden
+     */
+    public ShortestPathTree getShortestPathTree(Node src, String weightLabel) {
+        int s = graph.indexOf(src.id);
+        if (s < 0 || !nodeVisible(s)) return null;
+        return ShortestPathTree.compute(this, s, graph.metric(null, null, weightLabel), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Get a lazy breadth first traversal of the view from src.
+     * @param src Start node
+     * @param maxDepth Hop limit, Integer.MAX_VALUE for none
+     * @return Nodes in breadth first order, empty if src is hidden
+     */
+    public Stream<Node> breadthFirst(Node src, int maxDepth) {
+        int s = graph.indexOf(src.id);
+        if (s < 0) return Stream.empty();
+        return StreamSupport.intStream(Traversal.breadthFirst(this, s, maxDepth, null), false).mapToObj(graph::node);
+    }
+
+    /**
+     * Get a lazy depth first (preorder) traversal of the view from src.
+     * @param src Start node
+     * @param maxDepth Hop limit (shortest distance from src), Integer.MAX_VALUE for none
+     * @return Nodes in depth first order, empty if src is hidden
+     */
+    public Stream<Node> depthFirst(Node src, int maxDepth) {
+        int s = graph.indexOf(src.id);
+        if (s < 0) return Stream.empty();
+        return StreamSupport.intStream(Traversal.depthFirst(this, s, maxDepth, null), false).mapToObj(graph::node);
+    }
+
+    /**
+     * Stream the visible nodes in dense index order.
+     * @return Visible nodes
+     */
+    public Stream<Node> nodes() {
+        return IntStream.range(0, graph.nodeCount()).filter(this::nodeVisible).mapToObj(graph::node);
+    }
+
+    /**
+     * Stream the visible edges, grouped by tail node.
+     * @return Visible edges
+     */
+    public Stream<Edge> edges() {
+        return IntStream.range(0, graph.nodeCount()).filter(this::nodeVisible)
+                .flatMap(v -> IntStream.range(edgeStart(v), edgeEnd(v)).filter(this::edgeVisible))
+                .mapToObj(graph::edge);
+    }
+
+    /**
+     * Get the nodes reachable from src within the view, as a view (as Graph.getConnectedComponent, following
+     * out-edges).
+     * @param src Start node
+     * @return View of the nodes reached, sharing this view's edge filter; empty if src is hidden
+     */
+    public GraphView getConnectedComponent(Node src) {
+        long[] mask = new long[(graph.nodeCount() + 63) >>> 6];
+        int[] count = new int[1];
+        breadthFirst(src, Integer.MAX_VALUE).forEach(n -> {
+            int v = graph.indexOf(n.id);
+            mask[v >>> 6] |= 1L << v;
+            count[0]++;
+        });
+        return new GraphView(graph, mask, null, 0, edgeMask, count[0]);
+    }
+
+    /**
+     * Get the (weakly) connected components of the view as views, all sharing one labelling.
+     * @return Component views, ordered by the earliest added node in each
+     */
+    public ArrayList<GraphView> getConnectedComponents() {
+        return views(Components.connected(this));
+    }
+
+    /**
+     * @return A view of each component of a labelling of this view that has visible nodes
+     */
+    private ArrayList<GraphView> views(Components labels) {
+        int[] componentOf = labels.labels();
+        ArrayList<GraphView> views = new ArrayList<>();
+        boolean[] done = new boolean[labels.count()];
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            int c = componentOf[v];
+            if (done[c]) continue;
+            done[c] = true;
+            if (nodeVisible(v)) views.add(new GraphView(graph, null, componentOf, c, edgeMask, labels.size(c)));
+        }
+        return views;
+    }
+
+    /**
+     * Get the strongly connected components of the view as views, all sharing one labelling.
+     * @return Component views, ordered by the earliest added node in each
+     */
+    public ArrayList<GraphView> getStronglyConnectedComponents() {
+        return views(StronglyConnectedComponents.of(this));
+    }
+
+    /**
+     * Check whether dst can be reached from src within the view.
+     * @param src Source node
+     * @param dst Destination node
+     * @return True if both nodes are visible and there is a path from src to dst
+     */
+    public boolean isReachable(Node src, Node dst) {
+        int s = graph.indexOf(src.id), t = graph.indexOf(dst.id);
+        if (s < 0 || t < 0 || !nodeVisible(s) || !nodeVisible(t)) return false;
+        return Reachability.get(Reachability.reachable(this, reverse(), s, t, Integer.MAX_VALUE), t);
+    }
+
+    /**
+     * Copy the view into a new graph (sharing nodes and edge data), for when a standalone Graph is needed.
+     * @return Graph of the visible nodes and edges
+     */
+    public Graph toGraph() {
+        Graph g = new Graph();
+        for (int v = 0; v < graph.nodeCount(); v++) if (nodeVisible(v)) g.addNode(graph.node(v));
+        for (int v = 0; v < graph.nodeCount(); v++) {
+            for (int e = edgeStart(v), end = edgeEnd(v); e < end; e++)
+                if (edgeVisible(e)) g.addParallelEdge(graph.node(v), graph.node(edgeTarget(e)), graph.edge(e).data);
+        }
+        return g;
+    }
+}
@@ -0,0 +1,87 @@
+import java.util.Arrays;
+
+/**
+ * Connected components of a growing graph, maintained as nodes and edges are added so that connectivity queries
+ * cost near constant (inverse Ackermann) time. Union by size with path halving over growable int arrays.
+ * Union-find cannot split a set, so removing edges needs a rebuild (see of), which labels the graph in parallel.
+ * Edges are treated as undirected, giving weakly connected components for directed graphs.
+ */
+public class IncrementalConnectivity {
+    private int[] parent = new int[16];
+    private int[] size = new int[16];  // Node count of each root's set
+    private int nodes;
+    private int count;                 // Number of components
+
+    // Accessors
+    public int nodeCount() { return nodes; }
+    public int componentCount() { return count; }
+
+    /**
+     * Add a node as its own component.
+     * @return Dense index of the node
+     */
+    public int addNode() {
+        if (nodes == parent.length) {
+            parent = Arrays.copyOf(parent, nodes * 2);
+            size = Arrays.copyOf(size, nodes * 2);
+        }
+        parent[nodes] = nodes;
+        size[nodes] = 1;
+        count++;
+        return nodes++;
+    }
+
+    /**
+     * Record an edge between two nodes, merging their components.
+     * @return True if the edge joined two components
+     */
+    public boolean union(int a, int b) {
+        int ra = find(a), rb = find(b);
+        if (ra == rb) return false;
+        if (size[ra] < size[rb]) { int t = ra; ra = rb; rb = t; }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+        count--;
+        return true;
+    }
+
+    /**
+     * @return Root of the node's component, which identifies the component until it merges with another
+     */
+    public int find(int v) {
+        while (parent[v] != v) {
+            parent[v] = parent[parent[v]]; // Path halving
+            v = parent[v];
+        }
+        return v;
+    }
+
+    public boolean sameComponent(int a, int b) { return find(a) == find(b); }
+    public int componentSize(int v) { return size[find(v)]; }
+
+    /**
+     * Build from the current state of a topology, e.g. after edges were removed.
+     * @param t Topology to label
+     * @return Connectivity of t, ready to be extended with addNode and union
+     */
+    public static IncrementalConnectivity of(Topology t) {
+        Components components = Components.connected(t);
+        IncrementalConnectivity c = new IncrementalConnectivity();
+        int n = t.nodeCount();
+        c.parent = new int[Math.max(16, n)];
+        c.size = new int[c.parent.length];
+        c.nodes = n;
+        c.count = components.count();
+        int[] root = new int[components.count()];
+        Arrays.fill(root, -1);
+        for (int v = 0; v < n; v++) {
+            int id = components.componentOf(v);
+            if (root[id] < 0) {
+                root[id] = v;
+                c.size[v] = components.size(id);
+            }
+            c.parent[v] = root[id];
+        }
+        return c;
+    }
+}
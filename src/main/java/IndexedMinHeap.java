@@ -0,0 +1,116 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of dense int ids keyed by a double priority, with decrease-key.
+ * Each id's heap position is tracked so an id is never queued twice, and the heap can be cleared and reused
+ * between searches without reallocating.
+ */
+public class IndexedMinHeap {
+    private int[] heap;     // Ids in heap order
+    private int[] pos;      // Heap position of each id, -1 if absent
+    private double[] keys;  // Priority of each id (only meaningful while queued)
+    private int size;
+
+    public IndexedMinHeap(int capacity) {
+        this.heap = new int[capacity];
+        this.pos = new int[capacity];
+        this.keys = new double[capacity];
+        Arrays.fill(pos, -1);
+    }
+
+    /**
+     * Grow the heap so ids up to capacity-1 can be queued.
+     * @param capacity Number of distinct ids
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= pos.length) return;
+        int old = pos.length;
+        heap = Arrays.copyOf(heap, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        pos = Arrays.copyOf(pos, capacity);
+        Arrays.fill(pos, old, capacity, -1);
+    }
+
+    public boolean isEmpty() { return size == 0; }
+    public int size() { return size; }
+    public boolean contains(int id) { return pos[id] >= 0; }
+    public double key(int id) { return keys[id]; }
+    public int peek() { return heap[0]; }
+    public double peekKey() { return keys[heap[0]]; }
+
+    /**
+     * Queue an id, or lower its priority if it is already queued with a higher one.
+     * @param id Id to queue
+     * @param key Priority
+     * @return True if the id was queued or its priority lowered
+     */
+    public boolean insertOrDecrease(int id, double key) {
+        int i = pos[id];
+        if (i < 0) {
+            i = size++;
+            heap[i] = id;
+            pos[id] = i;
+        } else if (key >= keys[id]) {
+            return false;
+        }
+        keys[id] = key;
+        siftUp(i);
+        return true;
+    }
+
+    /**
+     * Remove and return the id with the lowest priority.
+     * @return Id with the lowest priority
+     */
+    public int poll() {
+        int top = heap[0];
+        pos[top] = -1;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            pos[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Remove every queued id, in time proportional to the number queued.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) pos[heap[i]] = -1;
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        int id = heap[i];
+        double key = keys[id];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (keys[p] <= key) break;
+            heap[i] = p;
+            pos[p] = i;
+            i = parent;
+        }
+        heap[i] = id;
+        pos[id] = i;
+    }
+
+    private void siftDown(int i) {
+        int id = heap[i];
+        double key = keys[id];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int c = heap[child];
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[c]) c = heap[child = right];
+            if (key <= keys[c]) break;
+            heap[i] = c;
+            pos[c] = i;
+            i = child;
+        }
+        heap[i] = id;
+        pos[id] = i;
+    }
+}
@@ -0,0 +1,44 @@
+import java.util.Arrays;
+
+/**
+ * Plain CSR topology over int arrays, without node or edge payloads. Used for derived structures such as reversed
+ * graphs and condensation DAGs.
+ */
+public class IntTopology implements Topology {
+    private final int[] offsets;  // Out-edges of v are [offsets[v], offsets[v+1])
+    private final int[] targets;  // Head node index of each edge
+
+    public IntTopology(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    @Override public int nodeCount() { return offsets.length - 1; }
+    @Override public int edgeCount() { return targets.length; }
+    @Override public int edgeStart(int v) { return offsets[v]; }
+    @Override public int edgeEnd(int v) { return offsets[v + 1]; }
+    @Override public int edgeTarget(int e) { return targets[e]; }
+
+    /**
+     * Build the reverse of a topology, where the out-edges of v are the in-edges of v in t. Only visible edges are
+     * reversed, so the reverse of a view has no hidden edges and needs no filtering.
+     * @param t Topology to reverse
+     * @return Reversed topology, with in-edges of each node in order of their tail
+     */
+    public static IntTopology transpose(Topology t) {
+        int n = t.nodeCount();
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            for (int e = t.edgeStart(v); e < t.edgeEnd(v); e++) if (t.edgeVisible(e)) offsets[t.edgeTarget(e) + 1]++;
+        }
+        for (int v = 0; v < n; v++) offsets[v + 1] += offsets[v];
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] sources = new int[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            for (int e = t.edgeStart(v); e < t.edgeEnd(v); e++) {
+                if (t.edgeVisible(e)) sources[fill[t.edgeTarget(e)]++] = v;
+            }
+        }
+        return new IntTopology(offsets, sources);
+    }
+}
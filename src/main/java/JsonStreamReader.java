@@ -0,0 +1,96 @@
+import org.json.JSONTokener;
+
+import java.io.Reader;
+
+/**
+ * Pull reader for walking a JSON document one key or array element at a time.
+ * Only the values the caller asks for are built (through org.json), everything else is skipped character by
+ * character, so memory use is bounded by the largest single value read rather than the document.
+ * Leniency matches org.json: unquoted keys and trailing commas are accepted.
+ */
+public class JsonStreamReader {
+    private final JSONTokener tokener;
+
+    public JsonStreamReader(Reader reader) {
+        this.tokener = new JSONTokener(reader);
+    }
+
+    /**
+     * Consume the opening brace of an object.
+     */
+    public void beginObject() {
+        expect('{');
+    }
+
+    /**
+     * Consume the opening bracket of an array.
+     */
+    public void beginArray() {
+        expect('[');
+    }
+
+    /**
+     * Read the next key of the current object, consuming the following colon.
+     * @return The key, or null once the closing brace has been consumed
+     */
+    public String nextKey() {
+        char c = tokener.nextClean();
+        if (c == ',') c = tokener.nextClean();
+        if (c == '}') return null;
+        String key;
+        if (c == '"' || c == '\'') key = tokener.nextString(c);
+        else {
+            tokener.back();
+            key = tokener.nextValue().toString();
+        }
+        expect(':');
+        return key;
+    }
+
+    /**
+     * Check for another element in the current array.
+     * @return True if an element follows, false once the closing bracket has been consumed
+     */
+    public boolean hasNextElement() {
+        char c = tokener.nextClean();
+        if (c == ',') c = tokener.nextClean();
+        if (c == ']') return false;
+        tokener.back();
+        return true;
+    }
+
+    /**
+     * Read the next value in full.
+     * @return JSONObject, JSONArray, String, Number, Boolean or JSONObject.NULL
+     */
+    public Object nextValue() {
+        return tokener.nextValue();
+    }
+
+    /**
+     * Skip the next value without building it.
+     */
+    public void skipValue() {
+        char c = tokener.nextClean();
+        if (c == '"' || c == '\'') {
+            tokener.nextString(c);
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = tokener.next();
+                if (c == 0) throw tokener.syntaxError("Unterminated value");
+                else if (c == '"' || c == '\'') tokener.nextString(c);
+                else if (c == '{' || c == '[') depth++;
+                else if (c == '}' || c == ']') depth--;
+            }
+        } else {
+            tokener.back();
+            tokener.nextValue(); // Primitives are small, so let the tokener parse them
+        }
+    }
+
+    private void expect(char expected) {
+        char c = tokener.nextClean();
+        if (c != expected) throw tokener.syntaxError("Expected '" + expected + "' but found '" + c + "'");
+    }
+}
@@ -0,0 +1,522 @@
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Read-only graph memory-mapped from the binary graph format, so opening a graph costs a handful of mmap calls
+ * rather than a parse. Topology, ids and attribute columns are all read straight from the mapped file.
+ *
+ * Layout (little endian, every section starts on an 8 byte boundary):
+ *   header   int magic, int version, int nodeCount, int edgeCount, int nodeColumnCount, int edgeColumnCount
+ *   offsets  int[nodeCount + 1], out-edges of v are [offsets[v], offsets[v+1])
+ *   targets  int[edgeCount]
+ *   ids      int[nodeCount + 1] byte offsets, then the UTF-8 bytes of every node id
+ *   idOrder  int[nodeCount] node indices sorted by id bytes, for binary search by id
+ *   columns  node columns then edge columns, each:
+ *              int nameLength, byte[] name, int type, long[] presence bitset, then by type
+ *              DOUBLE double[count] | LONG long[count] |
+ *              STRING int dictSize, int[dictSize + 1] byte offsets, byte[] dictionary, int[count] codes
+ */
+public class MappedGraph implements Topology {
+    static final int MAGIC = 0x4A475246; // "JGRF"
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+
+    public enum ColumnType { DOUBLE, LONG, STRING }
+
+    private final int nodeCount;
+    private final int edgeCount;
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    private final IntBuffer idOffsets;
+    private final ByteBuffer idBytes;
+    private final IntBuffer idOrder;
+    private final LinkedHashMap<String, Column> nodeColumns = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Column> edgeColumns = new LinkedHashMap<>();
+
+    /**
+     * Typed attribute column for every node or every edge, read directly from the mapping.
+     */
+    public static class Column {
+        private final String name;
+        private final ColumnType type;
+        private final int count;
+        private final LongBuffer presence;
+        private DoubleBuffer doubles;
+        private LongBuffer longs;
+        private IntBuffer dictOffsets;
+        private ByteBuffer dictBytes;
+        private IntBuffer codes;
+
+        private Column(String name, ColumnType type, int count, LongBuffer presence) {
+            this.name = name;
+            this.type = type;
+            this.count = count;
+            this.presence = presence;
+        }
+
+        public String name() { return name; }
+        public ColumnType type() { return type; }
+        public boolean has(int i) { return (presence.get(i >>> 6) & (1L << i)) != 0; }
+
+        /** @return The value as a double, NaN if absent */
+        public double getDouble(int i) {
+            if (!has(i)) return Double.NaN;
+            switch (type) {
+                case DOUBLE: return doubles.get(i);
+                case LONG: return longs.get(i);
+                default: return Double.parseDouble(getString(i));
+            }
+        }
+
+        /** @return The value as a long (a fraction is truncated), or fallback if absent */
+        public long getLong(int i, long fallback) {
+            if (!has(i)) return fallback;
+            switch (type) {
+                case LONG: return longs.get(i);
+                case DOUBLE: return (long) doubles.get(i);
+                default: return Long.parseLong(getString(i));
+            }
+        }
+
+        /** @return The value as a string, or null if absent */
+        public String getString(int i) {
+            if (!has(i)) return null;
+            switch (type) {
+                case DOUBLE: return String.valueOf(doubles.get(i));
+                case LONG: return String.valueOf(longs.get(i));
+                default: {
+                    int code = codes.get(i);
+                    return decode(dictBytes, dictOffsets.get(code), dictOffsets.get(code + 1));
+                }
+            }
+        }
+
+        /**
+         * @return The value boxed as org.json would hold it, or null if absent
+         */
+        public Object get(int i) {
+            if (!has(i)) return null;
+            switch (type) {
+                case DOUBLE: return doubles.get(i);
+                case LONG: return box(longs.get(i));
+                default: return getString(i);
+            }
+        }
+
+        /**
+         * Copy the column to a primitive array, with NaN where a value is absent.
+         */
+        public double[] toDoubleArray() {
+            double[] values = new double[count];
+            for (int i = 0; i < count; i++) values[i] = getDouble(i);
+            return values;
+        }
+    }
+
+    private MappedGraph(int nodeCount, int edgeCount, IntBuffer offsets, IntBuffer targets, IntBuffer idOffsets,
+                        ByteBuffer idBytes, IntBuffer idOrder) {
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.idOffsets = idOffsets;
+        this.idBytes = idBytes;
+        this.idOrder = idOrder;
+    }
+
+    // Accessors
+    @Override public int nodeCount() { return nodeCount; }
+    @Override public int edgeCount() { return edgeCount; }
+    @Override public int edgeStart(int v) { return offsets.get(v); }
+    @Override public int edgeEnd(int v) { return offsets.get(v + 1); }
+    @Override public int edgeTarget(int e) { return targets.get(e); }
+    public String id(int v) { return decode(idBytes, idOffsets.get(v), idOffsets.get(v + 1)); }
+    public Column nodeColumn(String name) { return nodeColumns.get(name); }
+    public Column edgeColumn(String name) { return edgeColumns.get(name); }
+
+    /**
+     * Get the dense index of the node with the given id, by binary search over the mapped id order.
+     * @param id Node id
+     * @return Dense node index, or -1 if no node has the id
+     */
+    public int indexOf(String id) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        int lo = 0, hi = nodeCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = idOrder.get(mid);
+            int cmp = compare(idBytes, idOffsets.get(v), idOffsets.get(v + 1), key);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return v;
+        }
+        return -1;
+    }
+
+    /**
+     * Resolve a shortest path metric from the mapped columns (the coordinate and weight columns are copied into
+     * primitive arrays, the topology stays mapped).
+     * @param xLabel Node column of the x coordinate, or null for no heuristic
+     * @param yLabel Node column of the y coordinate, or null for no heuristic
+     * @param weightLabel Edge column of the edge weight, or null to count hops
+     * @return Metric for this graph
+     */
+    public PathMetric metric(String xLabel, String yLabel, String weightLabel) {
+        double[] weights = (weightLabel == null) ? null : requireColumn(edgeColumns, weightLabel).toDoubleArray();
+        double[] xs = (xLabel == null) ? null : requireColumn(nodeColumns, xLabel).toDoubleArray();
+        double[] ys = (yLabel == null) ? null : requireColumn(nodeColumns, yLabel).toDoubleArray();
+        return PathMetric.of(this, xLabel, yLabel, weightLabel, xs, ys, weights);
+    }
+
+    /**
+     * Find the shortest path between two nodes, searching the mapped topology directly.
+     * @param srcId Source node id
+     * @param dstId Destination node id
+     * @param metric Metric resolved with metric(...)
+     * @return Ids of the nodes on the path from src to dst inclusive, or null if dst is unreachable
+     */
+    public ArrayList<String> getShortestPath(String srcId, String dstId, PathMetric metric) {
+        int s = indexOf(srcId), t = indexOf(dstId);
+        if (s < 0 || t < 0) return null;
+        int[] path = AStar.shortestPath(this, s, t, metric);
+        if (path == null) return null;
+        ArrayList<String> ids = new ArrayList<>(path.length);
+        for (int v : path) ids.add(id(v));
+        return ids;
+    }
+
+    /**
+     * Copy the mapped graph into a mutable Graph, with each node and edge's columns as its JSON data.
+     * @return New graph
+     */
+    public Graph toGraph() {
+        Graph g = new Graph();
+        Node[] nodes = new Node[nodeCount];
+        for (int v = 0; v < nodeCount; v++) {
+            nodes[v] = new Node(id(v), data(nodeColumns, v));
+            g.addNode(nodes[v]);
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            for (int e = edgeStart(v); e < edgeEnd(v); e++) // Parallel, so duplicate edges survive the round trip
+                g.addParallelEdge(nodes[v], nodes[edgeTarget(e)], data(edgeColumns, e));
+        }
+        return g;
+    }
+
+    private static JSONObject data(Map<String, Column> columns, int i) {
+        JSONObject data = new JSONObject();
+        for (Column c : columns.values()) {
+            Object value = c.get(i);
+            if (value != null) data.put(c.name, value);
+        }
+        return data;
+    }
+
+    private static Column requireColumn(Map<String, Column> columns, String name) {
+        Column c = columns.get(name);
+        if (c == null) throw new IllegalArgumentException("No column '" + name + "'");
+        return c;
+    }
+
+    // READING =======================================================================================================
+
+    /**
+     * Memory-map a graph written by write(...).
+     * @param file Binary graph file
+     * @return Mapped graph; the mapping stays valid after the file is closed
+     * @throws IOException If the file cannot be read or is not a supported graph file
+     */
+    public static MappedGraph open(File file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (ch.size() < HEADER_BYTES) throw new IOException("Not a graph file: " + file);
+            ByteBuffer header = map(ch, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC) throw new IOException("Not a graph file: " + file);
+            if (header.getInt(4) != VERSION)
+                throw new IOException("Unsupported graph file version " + header.getInt(4) + ": " + file);
+            int n = header.getInt(8), m = header.getInt(12), nodeColumnCount = header.getInt(16),
+                    edgeColumnCount = header.getInt(20);
+
+            long pos = HEADER_BYTES;
+            IntBuffer offsets = map(ch, pos, 4L * (n + 1)).asIntBuffer();
+            pos = align(pos + 4L * (n + 1));
+            IntBuffer targets = map(ch, pos, 4L * m).asIntBuffer();
+            pos = align(pos + 4L * m);
+            IntBuffer idOffsets = map(ch, pos, 4L * (n + 1)).asIntBuffer();
+            pos = align(pos + 4L * (n + 1));
+            ByteBuffer idBytes = map(ch, pos, idOffsets.get(n));
+            pos = align(pos + idOffsets.get(n));
+            IntBuffer idOrder = map(ch, pos, 4L * n).asIntBuffer();
+            pos = align(pos + 4L * n);
+
+            MappedGraph g = new MappedGraph(n, m, offsets, targets, idOffsets, idBytes, idOrder);
+            for (int i = 0; i < nodeColumnCount; i++) pos = readColumn(ch, pos, n, g.nodeColumns);
+            for (int i = 0; i < edgeColumnCount; i++) pos = readColumn(ch, pos, m, g.edgeColumns);
+            return g;
+        }
+    }
+
+    private static long readColumn(FileChannel ch, long pos, int count, Map<String, Column> columns) throws IOException {
+        int nameLength = map(ch, pos, 4).getInt(0);
+        String name = decode(map(ch, pos + 4, nameLength), 0, nameLength);
+        pos = align(pos + 4 + nameLength);
+        ColumnType type = ColumnType.values()[map(ch, pos, 4).getInt(0)];
+        pos = align(pos + 4);
+        int words = (count + 63) >>> 6;
+        Column c = new Column(name, type, count, map(ch, pos, 8L * words).asLongBuffer());
+        pos += 8L * words;
+
+        switch (type) {
+            case DOUBLE:
+                c.doubles = map(ch, pos, 8L * count).asDoubleBuffer();
+                pos += 8L * count;
+                break;
+            case LONG:
+                c.longs = map(ch, pos, 8L * count).asLongBuffer();
+                pos += 8L * count;
+                break;
+            case STRING:
+                int dictSize = map(ch, pos, 4).getInt(0);
+                pos = align(pos + 4);
+                c.dictOffsets = map(ch, pos, 4L * (dictSize + 1)).asIntBuffer();
+                pos = align(pos + 4L * (dictSize + 1));
+                c.dictBytes = map(ch, pos, c.dictOffsets.get(dictSize));
+                pos = align(pos + c.dictOffsets.get(dictSize));
+                c.codes = map(ch, pos, 4L * count).asIntBuffer();
+                pos = align(pos + 4L * count);
+                break;
+        }
+        columns.put(name, c);
+        return pos;
+    }
+
+    private static ByteBuffer map(FileChannel ch, long pos, long size) throws IOException {
+        return ch.map(FileChannel.MapMode.READ_ONLY, pos, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static long align(long pos) {
+        return (pos + 7) & ~7L;
+    }
+
+    private static String decode(ByteBuffer bytes, int from, int to) {
+        byte[] b = new byte[to - from];
+        bytes.get(from, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static int compare(ByteBuffer bytes, int from, int to, byte[] key) {
+        int len = Math.min(to - from, key.length);
+        for (int i = 0; i < len; i++) {
+            int cmp = Integer.compare(bytes.get(from + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(to - from, key.length);
+    }
+
+    // WRITING =======================================================================================================
+
+    /**
+     * Write a graph in the binary graph format. Node and edge JSON data are stored as typed columns: integral
+     * numbers as LONG, other numbers as DOUBLE and anything else as dictionary encoded STRING (nested objects and
+     * arrays as their JSON text).
+     * @param g Graph to write
+     * @param file Destination file, overwritten if present
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(Graph g, File file) throws IOException {
+        write(g.freeze(), file);
+    }
+
+    /**
+     * Write a snapshot of a graph in the binary graph format, e.g. while the graph itself goes on changing.
+     * @see #write(Graph, File)
+     * @param cg Snapshot to write
+     * @param file Destination file, overwritten if present
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(CompactGraph cg, File file) throws IOException {
+        int n = cg.nodeCount(), m = cg.edgeCount();
+        JSONObject[] nodeData = new JSONObject[n];
+        JSONObject[] edgeData = new JSONObject[m];
+        for (int v = 0; v < n; v++) nodeData[v] = cg.node(v).data;
+        for (int e = 0; e < m; e++) edgeData[e] = cg.edge(e).data;
+        TreeMap<String, ColumnType> nodeSchema = schema(nodeData), edgeSchema = schema(edgeData);
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Output out = new Output(ch);
+            out.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putInt(nodeSchema.size()).putInt(edgeSchema.size());
+
+            // Topology
+            for (int v = 0; v <= n; v++) out.putInt((v < n) ? cg.edgeStart(v) : m);
+            out.align();
+            for (int e = 0; e < m; e++) out.putInt(cg.edgeTarget(e));
+            out.align();
+
+            // Id dictionary and id order
+            byte[][] ids = new byte[n][];
+            int bytes = 0;
+            out.putInt(0);
+            for (int v = 0; v < n; v++) {
+                ids[v] = cg.node(v).id.getBytes(StandardCharsets.UTF_8);
+                out.putInt(bytes += ids[v].length);
+            }
+            out.align();
+            for (byte[] id : ids) out.putBytes(id);
+            out.align();
+            Integer[] order = new Integer[n];
+            for (int v = 0; v < n; v++) order[v] = v;
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(ids[a], ids[b]));
+            for (int v : order) out.putInt(v);
+            out.align();
+
+            // Attribute columns
+            for (Map.Entry<String, ColumnType> c : nodeSchema.entrySet()) writeColumn(out, c.getKey(), c.getValue(), nodeData);
+            for (Map.Entry<String, ColumnType> c : edgeSchema.entrySet()) writeColumn(out, c.getKey(), c.getValue(), edgeData);
+            out.flush();
+        }
+    }
+
+    /**
+     * Infer a column type for every key, widening LONG to DOUBLE and anything mixed with text to STRING.
+     */
+    private static TreeMap<String, ColumnType> schema(JSONObject[] data) {
+        TreeMap<String, ColumnType> schema = new TreeMap<>();
+        for (JSONObject d : data) {
+            for (String key : d.keySet()) {
+                Object value = d.opt(key);
+                if (value == null || value == JSONObject.NULL) continue;
+                ColumnType type = typeOf(value);
+                ColumnType prev = schema.get(key);
+                if (prev == null || prev == type) schema.put(key, type);
+                else if (prev != ColumnType.STRING && type != ColumnType.STRING) schema.put(key, ColumnType.DOUBLE);
+                else schema.put(key, ColumnType.STRING);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Box an integral value as org.json parses one: an Integer if it fits, otherwise a Long.
+     */
+    static Object box(long value) {
+        if (value == (int) value) return (int) value;
+        return value;
+    }
+
+    static ColumnType typeOf(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+            return ColumnType.LONG;
+        if (value instanceof BigInteger) return (((BigInteger) value).bitLength() < 64) ? ColumnType.LONG : ColumnType.DOUBLE;
+        if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) return ColumnType.DOUBLE;
+        return ColumnType.STRING;
+    }
+
+    private static void writeColumn(Output out, String name, ColumnType type, JSONObject[] data) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        out.putInt(nameBytes.length).putBytes(nameBytes);
+        out.align();
+        out.putInt(type.ordinal());
+        out.align();
+
+        // Presence bitset
+        long word = 0;
+        for (int i = 0; i < data.length; i++) {
+            Object value = data[i].opt(name);
+            if (value != null && value != JSONObject.NULL) word |= 1L << i;
+            if ((i & 63) == 63) { out.putLong(word); word = 0; }
+        }
+        if ((data.length & 63) != 0) out.putLong(word);
+
+        switch (type) {
+            case DOUBLE:
+                for (JSONObject d : data) out.putDouble(d.optDouble(name));
+                break;
+            case LONG:
+                for (JSONObject d : data) out.putLong(d.optLong(name));
+                break;
+            case STRING:
+                // Dictionary encode, as string attributes (e.g. line names) repeat heavily
+                HashMap<String, Integer> codes = new LinkedHashMap<>();
+                int[] column = new int[data.length];
+                for (int i = 0; i < data.length; i++) {
+                    Object value = data[i].opt(name);
+                    column[i] = (value == null || value == JSONObject.NULL) ? -1
+                            : codes.computeIfAbsent(value.toString(), k -> codes.size());
+                }
+                out.putInt(codes.size());
+                out.align();
+                ArrayList<byte[]> dict = new ArrayList<>(codes.size());
+                int bytes = 0;
+                out.putInt(0);
+                for (String s : codes.keySet()) {
+                    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+                    dict.add(b);
+                    out.putInt(bytes += b.length);
+                }
+                out.align();
+                for (byte[] b : dict) out.putBytes(b);
+                out.align();
+                for (int code : column) out.putInt(code);
+                out.align();
+                break;
+        }
+    }
+
+    /**
+     * Little endian buffered writer over a file channel that tracks its position for alignment.
+     */
+    private static class Output {
+        private final FileChannel ch;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Output(FileChannel ch) { this.ch = ch; }
+
+        Output putInt(int v) throws IOException { ensure(4); buf.putInt(v); position += 4; return this; }
+        Output putLong(long v) throws IOException { ensure(8); buf.putLong(v); position += 8; return this; }
+        Output putDouble(double v) throws IOException { ensure(8); buf.putDouble(v); position += 8; return this; }
+
+        Output putBytes(byte[] b) throws IOException {
+            for (int off = 0; off < b.length; ) {
+                ensure(1);
+                int len = Math.min(buf.remaining(), b.length - off);
+                buf.put(b, off, len);
+                off += len;
+            }
+            position += b.length;
+            return this;
+        }
+
+        void align() throws IOException {
+            while ((position & 7) != 0) { ensure(1); buf.put((byte) 0); position++; }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+    }
+}
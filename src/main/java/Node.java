@@ -1,5 +1,4 @@
 import org.json.JSONObject;
-import java.util.Objects;
 
 public class Node {
     String id;
@@ -25,6 +24,6 @@ public class Node {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return 31 + id.hashCode(); // Objects.hash(id) without varargs
     }
 }
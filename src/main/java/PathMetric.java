@@ -0,0 +1,140 @@
+import java.util.Objects;
+
+/**
+ * Edge weights and A* heuristic for shortest path queries on a Topology, resolved once per snapshot.
+ * Node coordinates are cached in double[] columns and edge weights in a double[] indexed by edge, so a search never
+ * touches JSON. The heuristic is the euclidian distance between node coordinates, scaled down so that it never
+ * exceeds the weight of any edge it spans, which keeps A* exact for any non-negative weights.
+ */
+public class PathMetric {
+    final Topology graph;
+    final String xLabel;
+    final String yLabel;
+    final String weightLabel;
+    final double[] xs;       // Node x coordinates by dense index (null when no heuristic)
+    final double[] ys;       // Node y coordinates by dense index (null when no heuristic)
+    final double[] weights;  // Edge weights by edge index (null when every edge weighs 1, i.e. hop counts)
+    final double scale;      // Heuristic multiplier, 0 disables the heuristic
+    long dataVersion;        // CompactGraph.dataVersion() the weights and coordinates were read at
+
+    private PathMetric(Topology graph, String xLabel, String yLabel, String weightLabel,
+                       double[] xs, double[] ys, double[] weights, double scale) {
+        this.graph = graph;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+        this.weightLabel = weightLabel;
+        this.xs = xs;
+        this.ys = ys;
+        this.weights = weights;
+        this.scale = scale;
+    }
+
+    /**
+     * Resolve a metric against a snapshot.
+     * @param cg Snapshot the metric indexes into
+     * @param xLabel Node data key of the x coordinate, or null for no heuristic
+     * @param yLabel Node data key of the y coordinate, or null for no heuristic
+     * @param weightLabel Edge data key of the (non-negative) edge weight, or null to count hops
+     * @return Metric for cg
+     */
+    static PathMetric of(CompactGraph cg, String xLabel, String yLabel, String weightLabel) {
+        long dataVersion = cg.dataVersion(); // Read first, so a concurrent edit makes the metric stale
+        PathMetric metric = resolve(cg, xLabel, yLabel, weightLabel);
+        metric.dataVersion = dataVersion;
+        return metric;
+    }
+
+    private static PathMetric resolve(CompactGraph cg, String xLabel, String yLabel, String weightLabel) {
+        // Cache edge weights, from the attribute column where an edge has a numeric value and its JSON otherwise
+        double[] weights = null;
+        if (weightLabel != null) {
+            AttributeStore.Column w = numeric(cg.edgeAttributes(), weightLabel);
+            weights = new double[cg.edgeCount()];
+            for (int e = 0; e < weights.length; e++) {
+                int id = cg.edgeId(e);
+                weights[e] = (w != null && w.has(id)) ? w.getDouble(id) : cg.edge(e).data.getDouble(weightLabel);
+            }
+        }
+        if (xLabel == null || yLabel == null) return of(cg, xLabel, yLabel, weightLabel, null, null, weights);
+
+        // Cache coordinates
+        AttributeStore.Column x = numeric(cg.nodeAttributes(), xLabel), y = numeric(cg.nodeAttributes(), yLabel);
+        double[] xs = new double[cg.nodeCount()];
+        double[] ys = new double[cg.nodeCount()];
+        for (int v = 0; v < xs.length; v++) {
+            xs[v] = (x != null && x.has(v)) ? x.getDouble(v) : cg.node(v).data.optDouble(xLabel);
+            ys[v] = (y != null && y.has(v)) ? y.getDouble(v) : cg.node(v).data.optDouble(yLabel);
+        }
+        return of(cg, xLabel, yLabel, weightLabel, xs, ys, weights);
+    }
+
+    private static AttributeStore.Column numeric(AttributeStore store, String key) {
+        AttributeStore.Column c = store.column(key);
+        return (c == null || c.type() == MappedGraph.ColumnType.STRING) ? null : c;
+    }
+
+    /**
+     * Build a metric from already extracted columns.
+     * @param t Topology the columns index into
+     * @param xs Node x coordinates (NaN where missing), or null for no heuristic
+     * @param ys Node y coordinates (NaN where missing), or null for no heuristic
+     * @param weights Non-negative edge weights, or null to count hops
+     * @return Metric for t
+     */
+    static PathMetric of(Topology t, String xLabel, String yLabel, String weightLabel,
+                         double[] xs, double[] ys, double[] weights) {
+        // Reject negative weights, which no shortest path search can handle
+        if (weights != null) for (double w : weights) {
+            if (!(w >= 0)) throw new IllegalArgumentException("Edge weight '" + weightLabel + "' must be non-negative, got " + w);
+        }
+        if (xs == null || ys == null) return new PathMetric(t, xLabel, yLabel, weightLabel, null, null, weights, 0);
+
+        // A node without coordinates disables the heuristic rather than making it inadmissible
+        for (int v = 0; v < xs.length; v++) {
+            if (Double.isNaN(xs[v]) || Double.isNaN(ys[v]))
+                return new PathMetric(t, xLabel, yLabel, weightLabel, null, null, weights, 0);
+        }
+
+        // Largest scale for which the heuristic stays consistent: min over edges of weight / euclidian length
+        double scale = Double.POSITIVE_INFINITY;
+        for (int v = 0; v < xs.length; v++) {
+            for (int e = t.edgeStart(v); e < t.edgeEnd(v); e++) {
+                int u = t.edgeTarget(e);
+                double len = Math.hypot(xs[v] - xs[u], ys[v] - ys[u]);
+                if (len > 0) scale = Math.min(scale, ((weights == null) ? 1.0 : weights[e]) / len);
+            }
+        }
+        if (scale == Double.POSITIVE_INFINITY) scale = 0; // No edge with length to bound the heuristic by
+        return new PathMetric(t, xLabel, yLabel, weightLabel, xs, ys, weights, scale);
+    }
+
+    /**
+     * @return True if the metric was resolved for the given labels
+     */
+    boolean matches(String xLabel, String yLabel, String weightLabel) {
+        return Objects.equals(this.xLabel, xLabel) && Objects.equals(this.yLabel, yLabel)
+                && Objects.equals(this.weightLabel, weightLabel);
+    }
+
+    /**
+     * Lower bound on the path weight from v to t.
+     * @param v Dense node index
+     * @param t Dense index of the target node
+     * @return Scaled euclidian distance between v and t
+     */
+    double heuristic(int v, int t) {
+        if (scale == 0) return 0;
+        double dx = xs[v] - xs[t];
+        double dy = ys[v] - ys[t];
+        return scale * Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Weight of an edge under this metric.
+     * @param e Edge index
+     * @return Edge weight
+     */
+    double weight(int e) {
+        return (weights == null) ? 1.0 : weights[e];
+    }
+}
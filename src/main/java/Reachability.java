@@ -0,0 +1,191 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Direction-optimising breadth first reachability over a Topology.
+ * Visited and frontier sets are long[] bitsets and frontiers are int arrays. Each level is expanded either top-down
+ * (scan the frontier's out-edges) or bottom-up (scan the unvisited nodes' in-edges for a frontier parent), switching
+ * with Beamer's heuristic: bottom-up once the frontier's edges outweigh the unexplored edges, back to top-down once
+ * the frontier shrinks. Levels can optionally be expanded in parallel on a fork-join pool. Hidden edges of a view
+ * are not followed; pass the view's transpose as the reverse, which has none.
+ */
+public class Reachability {
+    static final int PARALLEL_THRESHOLD = 1 << 16; // Graphs with fewer nodes are searched on the calling thread
+    private static final int ALPHA = 14;  // Go bottom-up when frontier edges > unexplored edges / ALPHA
+    private static final int BETA = 24;   // Go back top-down when frontier nodes < nodes / BETA
+    private static final int CHUNK = 1 << 12; // Frontier nodes (or bitset words * 64) per fork-join leaf
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Find every node reachable from src in at most maxHops hops, in parallel for large topologies.
+     * @param t Topology to search
+     * @param reverse Reverse of t, or null to only search top-down
+     * @param src Dense index of the source node
+     * @param dst Dense index of a node to stop as soon as it is reached, or -1 to search exhaustively
+     * @param maxHops Hop limit, Integer.MAX_VALUE for none
+     * @return Bitset of reached nodes (bit v of word v / 64), including src
+     */
+    public static long[] reachable(Topology t, Topology reverse, int src, int dst, int maxHops) {
+        ForkJoinPool pool = (t.nodeCount() < PARALLEL_THRESHOLD) ? null : ForkJoinPool.commonPool();
+        return reachable(t, reverse, src, dst, maxHops, pool);
+    }
+
+    /**
+     * Find every node reachable from src in at most maxHops hops.
+     * @param t Topology to search
+     * @param reverse Reverse of t (see IntTopology.transpose), or null to only search top-down
+     * @param src Dense index of the source node
+     * @param dst Dense index of a node to stop as soon as it is reached, or -1 to search exhaustively
+     * @param maxHops Hop limit, Integer.MAX_VALUE for none
+     * @param pool Pool to expand levels on, or null to search on the calling thread
+     * @return Bitset of reached nodes (bit v of word v / 64), including src
+     */
+    public static long[] reachable(Topology t, Topology reverse, int src, int dst, int maxHops, ForkJoinPool pool) {
+        int n = t.nodeCount();
+        long[] visited = new long[(n + 63) >>> 6];
+        long[] frontierBits = (reverse == null) ? null : new long[visited.length];
+        int[] frontier = {src};
+        set(visited, src);
+        long unexplored = t.edgeCount() - t.degree(src); // Out-edges of unvisited nodes
+        long frontierEdges = t.degree(src);
+        boolean bottomUp = false;
+
+        for (int hop = 0; frontier.length > 0 && hop < maxHops && !(dst >= 0 && get(visited, dst)); hop++) {
+            if (reverse != null) {
+                if (!bottomUp && frontierEdges > unexplored / ALPHA) bottomUp = true;
+                else if (bottomUp && frontier.length < n / BETA) bottomUp = false;
+            }
+
+            if (bottomUp) {
+                Arrays.fill(frontierBits, 0);
+                for (int v : frontier) set(frontierBits, v);
+                frontier = (pool == null)
+                        ? bottomUp(reverse, visited, frontierBits, 0, visited.length)
+                        : pool.invoke(new BottomUp(reverse, visited, frontierBits, 0, visited.length));
+            } else {
+                frontier = (pool == null)
+                        ? topDown(t, visited, frontier, 0, frontier.length, false)
+                        : pool.invoke(new TopDown(t, visited, frontier, 0, frontier.length));
+            }
+
+            frontierEdges = 0;
+            for (int v : frontier) frontierEdges += t.degree(v);
+            unexplored -= frontierEdges;
+        }
+        return visited;
+    }
+
+    /**
+     * Expand frontier[lo, hi) along out-edges, claiming unvisited heads.
+     * @param atomic Claim with atomic bit sets, for when other threads expand the same level
+     * @return Newly reached nodes
+     */
+    private static int[] topDown(Topology t, long[] visited, int[] frontier, int lo, int hi, boolean atomic) {
+        int[] next = new int[16];
+        int size = 0;
+        for (int i = lo; i < hi; i++) {
+            int v = frontier[i];
+            for (int e = t.edgeStart(v), end = t.edgeEnd(v); e < end; e++) {
+                int u = t.edgeTarget(e);
+                if (get(visited, u) || !t.edgeVisible(e)) continue;
+                if (atomic) {
+                    long bit = 1L << u;
+                    if (((long) WORDS.getAndBitwiseOr(visited, u >>> 6, bit) & bit) != 0) continue; // Lost the race
+                } else set(visited, u);
+                if (size == next.length) next = Arrays.copyOf(next, size * 2);
+                next[size++] = u;
+            }
+        }
+        return Arrays.copyOf(next, size);
+    }
+
+    /**
+     * Scan the unvisited nodes in bitset words [lo, hi) for an in-edge from the frontier. Each word is only written
+     * by the task owning it, so no atomics are needed.
+     * @return Newly reached nodes
+     */
+    private static int[] bottomUp(Topology reverse, long[] visited, long[] frontierBits, int lo, int hi) {
+        int n = reverse.nodeCount();
+        int[] next = new int[16];
+        int size = 0;
+        for (int w = lo; w < hi; w++) {
+            long unvisited = ~visited[w];
+            while (unvisited != 0) {
+                int v = (w << 6) + Long.numberOfTrailingZeros(unvisited);
+                unvisited &= unvisited - 1;
+                if (v >= n) break;
+                for (int e = reverse.edgeStart(v), end = reverse.edgeEnd(v); e < end; e++) {
+                    if (get(frontierBits, reverse.edgeTarget(e))) {
+                        visited[w] |= 1L << v;
+                        if (size == next.length) next = Arrays.copyOf(next, size * 2);
+                        next[size++] = v;
+                        break;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(next, size);
+    }
+
+    private static class TopDown extends RecursiveTask<int[]> {
+        private final Topology t;
+        private final long[] visited;
+        private final int[] frontier;
+        private final int lo, hi;
+
+        TopDown(Topology t, long[] visited, int[] frontier, int lo, int hi) {
+            this.t = t;
+            this.visited = visited;
+            this.frontier = frontier;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (hi - lo <= CHUNK) return topDown(t, visited, frontier, lo, hi, true);
+            int mid = (lo + hi) >>> 1;
+            TopDown right = new TopDown(t, visited, frontier, mid, hi);
+            right.fork();
+            return concat(new TopDown(t, visited, frontier, lo, mid).compute(), right.join());
+        }
+    }
+
+    private static class BottomUp extends RecursiveTask<int[]> {
+        private final Topology reverse;
+        private final long[] visited, frontierBits;
+        private final int lo, hi;
+
+        BottomUp(Topology reverse, long[] visited, long[] frontierBits, int lo, int hi) {
+            this.reverse = reverse;
+            this.visited = visited;
+            this.frontierBits = frontierBits;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected int[] compute() {
+            if ((hi - lo) * 64 <= CHUNK) return bottomUp(reverse, visited, frontierBits, lo, hi);
+            int mid = (lo + hi) >>> 1;
+            BottomUp right = new BottomUp(reverse, visited, frontierBits, mid, hi);
+            right.fork();
+            return concat(new BottomUp(reverse, visited, frontierBits, lo, mid).compute(), right.join());
+        }
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) return a;
+        if (a.length == 0) return b;
+        int[] c = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    // Bitset helpers
+    static boolean get(long[] bits, int i) { return (bits[i >>> 6] & (1L << i)) != 0; }
+    static void set(long[] bits, int i) { bits[i >>> 6] |= 1L << i; }
+}
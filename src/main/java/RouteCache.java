@@ -0,0 +1,199 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of shortest path results in front of a graph, safe for concurrent query threads.
+ * Routes are computed on the graph's latest CSR snapshot and stamped with that snapshot and the graph's element data
+ * version (see CompactGraph.dataVersion), so any addNode, addEdge or data edit (e.g. a weight change) invalidates every
+ * older entry. In front of a ConcurrentGraph the graph may be updated while queries run; in front of a plain Graph
+ * it must not be, as Graph itself is not thread safe. Eviction is least recently used within lock-striped segments,
+ * which keeps contention low while approximating a global LRU.
+ */
+public class RouteCache {
+    private static final int SEGMENTS = 16;
+    private static final Object NO_PATH = new Object(); // Cached marker for unreachable pairs
+
+    private final Supplier<CompactGraph> snapshots;  // Latest snapshot of the graph
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile CompactGraph snapshot; // Snapshot the live entries were computed on
+    private volatile long dataVersion;      // Element data version the live entries were computed at
+
+    /**
+     * @param graph Graph to answer queries on, which must not be modified while queries run
+     * @param capacity Maximum number of cached routes
+     */
+    public RouteCache(Graph graph, int capacity) {
+        this(graph::freeze, capacity);
+    }
+
+    /**
+     * @param graph Graph to answer queries on, which may be updated while queries run
+     * @param capacity Maximum number of cached routes
+     */
+    public RouteCache(ConcurrentGraph graph, int capacity) {
+        this(graph::snapshot, capacity);
+    }
+
+    private RouteCache(Supplier<CompactGraph> snapshots, int capacity) {
+        if (capacity < SEGMENTS) throw new IllegalArgumentException("Capacity must be at least " + SEGMENTS);
+        this.snapshots = snapshots;
+        this.snapshot = snapshots.get();
+        this.dataVersion = snapshot.dataVersion();
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(capacity / SEGMENTS);
+    }
+
+    // Accessors
+    public long hitCount() { return hits.sum(); }
+    public long missCount() { return misses.sum(); }
+    public long evictionCount() { return evictions.sum(); }
+
+    public int size() {
+        int size = 0;
+        for (Segment s : segments) {
+            s.lock.lock();
+            try { size += s.size(); } finally { s.lock.unlock(); }
+        }
+        return size;
+    }
+
+    /**
+     * Remove every cached route (counters are kept).
+     */
+    public void clear() {
+        for (Segment s : segments) {
+            s.lock.lock();
+            try { s.clear(); } finally { s.lock.unlock(); }
+        }
+    }
+
+    /**
+     * Get the path from src to dst with the fewest hops, from the cache if the graph has not changed since.
+     * @see Graph#getShortestPath(Node, Node, String, String)
+     * @return Unmodifiable list of nodes on the path, or null if dst is unreachable
+     */
+    public List<Node> getShortestPath(Node src, Node dst, String xLabel, String yLabel) {
+        return getShortestPath(src, dst, xLabel, yLabel, null);
+    }
+
+    /**
+     * Get the shortest weighted path from src to dst, from the cache if the graph has not changed since.
+     * @see Graph#getShortestPath(Node, Node, String, String, String)
+     * @return Unmodifiable list of nodes on the path, or null if dst is unreachable
+     */
+    public List<Node> getShortestPath(Node src, Node dst, String xLabel, String yLabel, String weightLabel) {
+        CompactGraph cg = snapshots.get();
+        long data = cg.dataVersion(); // Read before the metric, so an edit during the query leaves its entry stale
+        if (cg != snapshot || data != dataVersion) invalidate(cg, data);
+
+        Key key = new Key(src.id, dst.id, xLabel, yLabel, weightLabel);
+        Segment segment = segments[(key.hashCode() ^ (key.hashCode() >>> 16)) & (SEGMENTS - 1)];
+        segment.lock.lock();
+        try {
+            Entry e = segment.get(key);
+            if (e != null && e.snapshot == cg && e.dataVersion == data) {
+                hits.increment();
+                return unwrap(e.path);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        // Compute outside the lock so slow queries don't block other keys in the segment
+        misses.increment();
+        int s = cg.indexOf(src.id), t = cg.indexOf(dst.id);
+        ArrayList<Node> path = (s < 0 || t < 0) ? null
+                : AStar.shortestPath(cg, s, t, cg.metric(xLabel, yLabel, weightLabel), null);
+        Object value = (path == null) ? NO_PATH : Collections.unmodifiableList(path);
+        segment.lock.lock();
+        try {
+            segment.put(key, new Entry(cg, data, value));
+        } finally {
+            segment.lock.unlock();
+        }
+        return unwrap(value);
+    }
+
+    /**
+     * Drop every entry once the graph moves to a new snapshot or its data changes. Entries are also checked on read,
+     * so a racing reader can never see a stale route; this only frees their memory (and old snapshots) early.
+     */
+    private synchronized void invalidate(CompactGraph current, long data) {
+        if (current == snapshot && data == dataVersion) return;
+        snapshot = current;
+        dataVersion = data;
+        clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Node> unwrap(Object value) {
+        return (value == NO_PATH) ? null : (List<Node>) value;
+    }
+
+    private static final class Key {
+        private final String srcId, dstId, xLabel, yLabel, weightLabel;
+        private final int hash;
+
+        Key(String srcId, String dstId, String xLabel, String yLabel, String weightLabel) {
+            this.srcId = srcId;
+            this.dstId = dstId;
+            this.xLabel = xLabel;
+            this.yLabel = yLabel;
+            this.weightLabel = weightLabel;
+            this.hash = Objects.hash(srcId, dstId, xLabel, yLabel, weightLabel);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return srcId.equals(k.srcId) && dstId.equals(k.dstId) && Objects.equals(xLabel, k.xLabel)
+                    && Objects.equals(yLabel, k.yLabel) && Objects.equals(weightLabel, k.weightLabel);
+        }
+
+        @Override
+        public int hashCode() { return hash; }
+    }
+
+    private static final class Entry {
+        final CompactGraph snapshot;  // Snapshot the path was computed on
+        final long dataVersion;       // Element data version it was computed at
+        final Object path;            // Unmodifiable List<Node> or NO_PATH
+
+        Entry(CompactGraph snapshot, long dataVersion, Object path) {
+            this.snapshot = snapshot;
+            this.dataVersion = dataVersion;
+            this.path = path;
+        }
+    }
+
+    /**
+     * Access ordered map evicting its least recently used entry beyond capacity. Guarded by its lock.
+     */
+    private final class Segment extends LinkedHashMap<Key, Entry> {
+        final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            if (size() <= capacity) return false;
+            evictions.increment();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Embedded HTTP routing service over a ConcurrentGraph, on the JDK's built-in HTTP server.
+ * GET /route?from=ID&amp;to=ID answers with the shortest path as JSON ({"from", "to", "distance", "path"}), 404 if
+ * there is none and 400 if either node is unknown. Requests run on a virtual thread each where the JDK has them
+ * (21+), otherwise on a bounded platform pool. Admission control bounds the requests in flight, and requests beyond
+ * the bound are turned away with 503 at once rather than queued. Requests from the same source that arrive within
+ * the batching window share a single one-to-many search. Searches borrow their scratch state from a pool with one
+ * per permit, as request threads are not reused and a thread local scratch would be allocated for every request.
+ */
+public class RoutingServer {
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>(); // Set while answering a rejected request
+
+    private final ConcurrentGraph graph;
+    private final String xLabel, yLabel, weightLabel;
+    private final long batchWindowNanos;
+    private final Semaphore admission;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ArrayBlockingQueue<AStar.Scratch> scratches;  // Idle search state, at most one per permit
+    private final ConcurrentHashMap<Integer, Batch> batches = new ConcurrentHashMap<>(); // Open batches by source
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder searches = new LongAdder();
+
+    /**
+     * @param graph Graph to route on; updates to it are picked up by later requests
+     * @param address Address to listen on (port 0 picks a free port)
+     * @param xLabel Node data key of the x coordinate, or null for no A* heuristic
+     * @param yLabel Node data key of the y coordinate, or null for no A* heuristic
+     * @param weightLabel Edge data key of the non-negative edge weight, or null to count hops
+     * @param maxInFlight Most requests handled at once
+     * @param batchWindowMicros How long the first request from a source waits for others to share its search, 0 to
+     *                          search for every request on its own. Every batch's first request waits out the whole
+     *                          window, even if no other request comes, so only use one under load from repeated
+     *                          sources
+     * @throws IOException If the address cannot be bound
+     */
+    public RoutingServer(ConcurrentGraph graph, InetSocketAddress address, String xLabel, String yLabel,
+                         String weightLabel, int maxInFlight, long batchWindowMicros) throws IOException {
+        this.graph = graph;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+        this.weightLabel = weightLabel;
+        this.batchWindowNanos = TimeUnit.MICROSECONDS.toNanos(batchWindowMicros);
+        this.admission = new Semaphore(maxInFlight);
+        this.executor = newExecutor(maxInFlight);
+        this.scratches = new ArrayBlockingQueue<>(maxInFlight);
+        this.server = HttpServer.create(address, 0);
+        this.server.setExecutor(task -> {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                // The pool is saturated, so answer 503 on the server's thread, which handle does without searching
+                SHEDDING.set(Boolean.TRUE);
+                try { task.run(); } finally { SHEDDING.remove(); }
+            }
+        });
+        this.server.createContext("/route", this::handle);
+    }
+
+    // Accessors
+    public int port() { return server.getAddress().getPort(); }
+    public long requestCount() { return requests.sum(); }
+    public long rejectedCount() { return rejected.sum(); }
+    public long searchCount() { return searches.sum(); }
+
+    public void start() { server.start(); }
+
+    /**
+     * Stop accepting requests and shut down once the ones in flight are answered.
+     * @param delaySeconds Longest time to wait for requests in flight
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Serve a graph file. Usage: RoutingServer FILE PORT [X_LABEL Y_LABEL [WEIGHT_LABEL]], where the file holds
+     * "nodes" and directed "paths" arrays as read by GraphLoader.load. Batching is opt-in: set the system property
+     * routing.batchWindowMicros to batch requests from one source (e.g. 200).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: RoutingServer FILE PORT [X_LABEL Y_LABEL [WEIGHT_LABEL]]");
+            System.exit(2);
+        }
+        long batchWindowMicros = Long.getLong("routing.batchWindowMicros", 0);
+        Graph g = new Graph();
+        GraphLoader.load(g, new File(args[0]), "nodes", "paths", null, "nodes", null);
+        InetSocketAddress address = new InetSocketAddress(Integer.parseInt(args[1]));
+        String xLabel = (args.length > 3) ? args[2] : null, yLabel = (args.length > 3) ? args[3] : null;
+        String weightLabel = (args.length > 4) ? args[4] : null;
+        RoutingServer server = new RoutingServer(new ConcurrentGraph(g), address, xLabel, yLabel, weightLabel,
+                4 * Runtime.getRuntime().availableProcessors(), batchWindowMicros);
+        server.start();
+        System.out.println("Routing " + g.nodeCount() + " nodes on port " + server.port());
+    }
+
+    /**
+     * Create a virtual thread per task executor, or a bounded pool of platform threads before JDK 21. The pool has
+     * twice as many threads as admission permits and no queue, so requests over the limit reach the handler and are
+     * refused at once instead of waiting behind the ones in flight. Past that the pool rejects requests, and the
+     * server's own thread answers them with 503 rather than running them.
+     */
+    static ExecutorService newExecutor(int maxInFlight) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new ThreadPoolExecutor(maxInFlight, 2 * maxInFlight, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                    new ThreadPoolExecutor.AbortPolicy());
+        }
+    }
+
+    // ROUTING =======================================================================================================
+
+    /**
+     * Shortest path answer for one request.
+     */
+    static final class Route {
+        final ArrayList<Node> path;  // Null if there is no path
+        final double distance;
+
+        Route(ArrayList<Node> path, double distance) {
+            this.path = path;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * Requests from one source collected during a batching window. The request that opens a batch leads it: it
+     * waits out the window, closes the batch and runs the search for everyone.
+     */
+    private static final class Batch {
+        final int src;
+        final ArrayList<Pending> pending = new ArrayList<>();
+        boolean closed;
+
+        Batch(int src) { this.src = src; }
+
+        /** @return False if the batch is already closed */
+        synchronized boolean join(Pending p) {
+            if (closed) return false;
+            pending.add(p);
+            return true;
+        }
+
+        synchronized List<Pending> close() {
+            closed = true;
+            return pending;
+        }
+
+        synchronized boolean isLeader(Pending p) { return pending.get(0) == p; }
+    }
+
+    private static final class Pending {
+        final int dst;
+        final CompletableFuture<Route> route = new CompletableFuture<>();
+
+        Pending(int dst) { this.dst = dst; }
+    }
+
+    /**
+     * Find the shortest path between two nodes, sharing the search with other requests from the same source.
+     * @param src Dense index of the source node
+     * @param dst Dense index of the destination node
+     * @return Route, whose path is null if dst is unreachable
+     */
+    Route route(int src, int dst) throws InterruptedException, ExecutionException {
+        Pending p = new Pending(dst);
+        if (batchWindowNanos == 0) {
+            search(src, List.of(p));
+            return p.route.get();
+        }
+        Batch batch = batches.computeIfAbsent(src, Batch::new);
+        while (!batch.join(p)) { // Closed while we looked it up, so open a new one
+            batches.remove(src, batch);
+            batch = batches.computeIfAbsent(src, Batch::new);
+        }
+        if (batch.isLeader(p)) {
+            LockSupport.parkNanos(batchWindowNanos);
+            batches.remove(src, batch);
+            search(src, batch.close());
+        }
+        return p.route.get();
+    }
+
+    /**
+     * Answer every pending request from src with one search of the latest snapshot: A* for a single destination,
+     * otherwise Dijkstra until every destination is settled.
+     */
+    private void search(int src, List<Pending> pending) {
+        AStar.Scratch s = scratches.poll();
+        if (s == null) s = new AStar.Scratch();
+        try {
+            CompactGraph cg = graph.snapshot();
+            PathMetric metric = cg.metric(xLabel, yLabel, weightLabel);
+            if (pending.size() == 1) {
+                AStar.search(cg, src, pending.get(0).dst, metric, null, s);
+            } else {
+                boolean[] targets = new boolean[cg.nodeCount()];
+                int distinct = 0;
+                for (Pending p : pending) {
+                    if (!targets[p.dst]) distinct++;
+                    targets[p.dst] = true;
+                }
+                AStar.search(cg, src, metric, targets, distinct, s);
+            }
+            searches.increment();
+            for (Pending p : pending) {
+                double d = s.distance(p.dst);
+                p.route.complete(new Route((d == Double.POSITIVE_INFINITY) ? null : AStar.path(cg, s, p.dst), d));
+            }
+        } catch (Throwable e) {
+            // Answer every request even on an Error, or the batch's other requests would wait forever with a permit
+            for (Pending p : pending) p.route.completeExceptionally(e);
+            if (e instanceof Error) throw (Error) e;
+        } finally {
+            scratches.offer(s); // Searches run under a permit each, so the pool never holds more than it can take
+        }
+    }
+
+    // HTTP ==========================================================================================================
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        if (SHEDDING.get() != null || !admission.tryAcquire()) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, new JSONObject().put("error", "Too many requests in flight"));
+            return;
+        }
+        try {
+            HashMap<String, String> params = params(exchange.getRequestURI().getRawQuery());
+            String from = params.get("from"), to = params.get("to");
+            CompactGraph cg = graph.snapshot();
+            int src = (from == null) ? -1 : cg.indexOf(from), dst = (to == null) ? -1 : cg.indexOf(to);
+            if (src < 0 || dst < 0) {
+                respond(exchange, 400, new JSONObject().put("error", "Unknown or missing 'from' or 'to' node"));
+                return;
+            }
+            Route route = route(src, dst);
+            if (route.path == null) {
+                respond(exchange, 404, new JSONObject().put("error", "No path from " + from + " to " + to));
+                return;
+            }
+            JSONArray path = new JSONArray();
+            for (Node n : route.path) path.put(n.id);
+            respond(exchange, 200, new JSONObject().put("from", from).put("to", to)
+                    .put("distance", route.distance).put("path", path));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, new JSONObject().put("error", "Interrupted"));
+        } catch (ExecutionException | RuntimeException e) {
+            respond(exchange, 500, new JSONObject().put("error", String.valueOf(e.getMessage())));
+        } finally {
+            admission.release();
+        }
+    }
+
+    private static HashMap<String, String> params(String query) {
+        HashMap<String, String> params = new HashMap<>();
+        if (query == null) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void respond(HttpExchange exchange, int status, JSONObject body) throws IOException {
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        exchange.close();
+    }
+}
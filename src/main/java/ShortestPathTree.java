@@ -0,0 +1,328 @@
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Shortest path distances and predecessors from one source to every node of a Topology, as primitive arrays.
+ * Computed with Dijkstra's algorithm on the calling thread for small graphs, and otherwise with parallel
+ * delta-stepping: nodes are kept in buckets of width delta by tentative distance, and the lowest bucket is settled by
+ * relaxing the light edges (weight at most delta) of all its nodes at once, repeatedly until it stays empty, then the
+ * heavy edges of the nodes it held. Each round of relaxations runs in two phases on a fork-join pool: workers scan
+ * slices of the frontier and collect candidate distances, partitioned by target node, then each partition applies
+ * its candidates. No two workers ever write the same node, so no atomics are needed, and since candidates are
+ * applied in frontier order the result does not depend on thread timing.
+ */
+public class ShortestPathTree {
+    static final int PARALLEL_THRESHOLD = 1 << 14;  // Nodes below which Dijkstra beats delta-stepping's rounds
+    private static final int NODES_PER_TASK = 512;  // Frontier nodes scanned per fork-join task
+
+    private final int source;
+    private final double[] distances; // Distance from the source by dense index, infinite if unreachable
+    private final int[] prev;         // Predecessor on a shortest path by dense index, -1 if none
+    long expanded, pushes, pops, relaxed; // Work counters, for GraphMetrics
+
+    private ShortestPathTree(int source, double[] distances, int[] prev) {
+        this.source = source;
+        this.distances = distances;
+        this.prev = prev;
+    }
+
+    // Accessors
+    public int source() { return source; }
+    public double distance(int v) { return distances[v]; }
+    public int predecessor(int v) { return prev[v]; }
+    public boolean reached(int v) { return distances[v] != Double.POSITIVE_INFINITY; }
+    public double[] distances() { return distances; }  // The tree's own array, not a copy
+    public int[] predecessors() { return prev; }       // The tree's own array, not a copy
+
+    /**
+     * Backtrace the shortest path from the source to a node.
+     * @param v Dense index of the destination
+     * @return Dense indices of the nodes on the path inclusive, or null if v is unreachable
+     */
+    public int[] path(int v) {
+        if (!reached(v)) return null;
+        int hops = 0;
+        for (int u = v; prev[u] >= 0; u = prev[u]) hops++;
+        int[] path = new int[hops + 1];
+        for (int u = v, i = hops; i >= 0; u = prev[u], i--) path[i] = u;
+        return path;
+    }
+
+    /**
+     * Compute shortest paths from a source, in parallel if the graph is large enough to gain from it.
+     * @param t Topology to search
+     * @param src Dense index of the source node
+     * @param metric Edge weights, resolved against t
+     * @param pool Pool to run delta-stepping on, or null to always run Dijkstra on the calling thread
+     * @return Shortest path tree
+     */
+    public static ShortestPathTree compute(Topology t, int src, PathMetric metric, ForkJoinPool pool) {
+        if (pool == null || pool.getParallelism() < 2 || t.nodeCount() < PARALLEL_THRESHOLD)
+            return dijkstra(t, src, metric);
+        return deltaStepping(t, src, metric, 0, pool);
+    }
+
+    /**
+     * Compute shortest paths from a source with Dijkstra's algorithm on the calling thread.
+     * @param t Topology to search
+     * @param src Dense index of the source node
+     * @param metric Edge weights, resolved against t
+     * @return Shortest path tree
+     */
+    public static ShortestPathTree dijkstra(Topology t, int src, PathMetric metric) {
+        AStar.Scratch s = AStar.scratch();
+        AStar.search(t, src, -1, metric, null, s);
+        int n = t.nodeCount();
+        double[] distances = new double[n];
+        int[] prev = new int[n];
+        for (int v = 0; v < n; v++) {
+            boolean reached = s.reached(v);
+            distances[v] = reached ? s.g[v] : Double.POSITIVE_INFINITY;
+            prev[v] = reached ? s.prev[v] : -1;
+        }
+        ShortestPathTree tree = new ShortestPathTree(src, distances, prev);
+        tree.expanded = s.expanded;
+        tree.pushes = s.pushes;
+        tree.pops = s.pops;
+        tree.relaxed = s.relaxed;
+        return tree;
+    }
+
+    /**
+     * Compute shortest paths from a source with parallel delta-stepping.
+     * @param t Topology to search
+     * @param src Dense index of the source node
+     * @param metric Edge weights, resolved against t
+     * @param delta Bucket width, or 0 for the mean positive edge weight. Small widths mean little wasted work but many
+     *              rounds with little parallelism, large widths the opposite; delta-stepping with a width below the
+     *              lightest edge is Dijkstra, and with an infinite width Bellman-Ford.
+     * @param pool Pool to run on, or null to run the rounds on the calling thread
+     * @return Shortest path tree
+     */
+    public static ShortestPathTree deltaStepping(Topology t, int src, PathMetric metric, double delta,
+                                                 ForkJoinPool pool) {
+        if (!(delta >= 0)) throw new IllegalArgumentException("Bucket width must be non-negative, got " + delta);
+        int n = t.nodeCount();
+        double[] distances = new double[n];
+        int[] prev = new int[n];
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        Arrays.fill(prev, -1);
+        ShortestPathTree tree = new ShortestPathTree(src, distances, prev);
+        new DeltaStepping(t, metric.weights, (delta == 0) ? meanWeight(metric.weights) : delta, pool, tree).run(src);
+        return tree;
+    }
+
+    private static double meanWeight(double[] weights) {
+        if (weights == null) return 1.0; // Hop counts, so delta-stepping becomes a parallel breadth first search
+        double sum = 0;
+        int count = 0;
+        for (double w : weights) {
+            if (w > 0 && w != Double.POSITIVE_INFINITY) {
+                sum += w;
+                count++;
+            }
+        }
+        return (count == 0) ? 1.0 : sum / count;
+    }
+
+    /**
+     * State of one delta-stepping run.
+     */
+    private static final class DeltaStepping {
+        private final Topology t;
+        private final double[] weights;  // Null for hop counts
+        private final double delta;
+        private final ForkJoinPool pool;
+        private final int parts;         // Partitions of the node set candidates are applied in
+        private final ShortestPathTree tree;
+        private final double[] dist;
+        private final int[] prev;
+        private final TreeMap<Long, IntList> buckets = new TreeMap<>(); // Nodes by bucket, possibly stale or repeated
+
+        DeltaStepping(Topology t, double[] weights, double delta, ForkJoinPool pool, ShortestPathTree tree) {
+            this.t = t;
+            this.weights = weights;
+            this.delta = delta;
+            this.pool = pool;
+            this.parts = (pool == null) ? 1 : pool.getParallelism();
+            this.tree = tree;
+            this.dist = tree.distances;
+            this.prev = tree.prev;
+        }
+
+        void run(int src) {
+            int[] frontierStamp = new int[dist.length], settledStamp = new int[dist.length];
+            int round = 0, bucketRound = 0;
+            dist[src] = 0;
+            bucket(0).add(src);
+            tree.pushes++;
+            while (!buckets.isEmpty()) {
+                long i = buckets.firstKey();
+                bucketRound++;
+                IntList settled = new IntList();
+
+                // Relax light edges until the bucket stays empty; they can only refill this bucket or later ones
+                for (IntList bucket = buckets.remove(i); bucket != null; bucket = buckets.remove(i)) {
+                    round++;
+                    IntList frontier = new IntList();
+                    for (int k = 0; k < bucket.size; k++) {
+                        int v = bucket.values[k];
+                        tree.pops++;
+                        if (frontierStamp[v] == round || bucketOf(dist[v]) != i) continue; // Repeated or moved on
+                        frontierStamp[v] = round;
+                        frontier.add(v);
+                        if (settledStamp[v] != bucketRound) {
+                            settledStamp[v] = bucketRound;
+                            settled.add(v);
+                        }
+                    }
+                    tree.expanded += frontier.size;
+                    relax(frontier, true);
+                }
+
+                // Heavy edges only reach later buckets, so one pass over the settled nodes does
+                relax(settled, false);
+            }
+        }
+
+        private long bucketOf(double d) { return (long) (d / delta); }
+
+        private IntList bucket(long i) { return buckets.computeIfAbsent(i, k -> new IntList()); }
+
+        private double weight(int e) { return (weights == null) ? 1.0 : weights[e]; }
+
+        /**
+         * Relax the light or heavy out-edges of every frontier node and bucket the nodes whose distance drops.
+         */
+        private void relax(IntList frontier, boolean light) {
+            if (pool == null || frontier.size <= NODES_PER_TASK) {
+                for (int k = 0; k < frontier.size; k++) {
+                    int v = frontier.values[k];
+                    double dv = dist[v];
+                    for (int e = t.edgeStart(v), end = t.edgeEnd(v); e < end; e++) {
+                        double w = weight(e);
+                        if ((w <= delta) != light || !t.edgeVisible(e)) continue;
+                        tree.relaxed++;
+                        int u = t.edgeTarget(e);
+                        if (dv + w < dist[u]) {
+                            dist[u] = dv + w;
+                            prev[u] = v;
+                            bucket(bucketOf(dv + w)).add(u);
+                            tree.pushes++;
+                        }
+                    }
+                }
+                return;
+            }
+
+            // Collect candidates by frontier slice and target partition, reading distances only
+            int slices = (frontier.size + NODES_PER_TASK - 1) / NODES_PER_TASK;
+            Candidates[][] candidates = new Candidates[slices][parts];
+            long[] scanned = new long[slices];
+            pool.invoke(new Each(slices, slice -> {
+                Candidates[] out = candidates[slice];
+                for (int k = slice * NODES_PER_TASK, end = Math.min(k + NODES_PER_TASK, frontier.size); k < end; k++) {
+                    int v = frontier.values[k];
+                    double dv = dist[v];
+                    for (int e = t.edgeStart(v), last = t.edgeEnd(v); e < last; e++) {
+                        double w = weight(e);
+                        if ((w <= delta) != light || !t.edgeVisible(e)) continue;
+                        scanned[slice]++;
+                        int u = t.edgeTarget(e);
+                        if (dv + w >= dist[u]) continue;
+                        int p = u % parts;
+                        if (out[p] == null) out[p] = new Candidates();
+                        out[p].add(u, v, dv + w);
+                    }
+                }
+            }));
+
+            // Apply each partition's candidates in frontier order, so every node is written by one worker
+            IntList[] improved = new IntList[parts];
+            pool.invoke(new Each(parts, p -> {
+                IntList mine = new IntList();
+                for (int slice = 0; slice < slices; slice++) {
+                    Candidates c = candidates[slice][p];
+                    if (c == null) continue;
+                    for (int k = 0; k < c.size; k++) {
+                        int u = c.targets[k];
+                        if (c.dists[k] >= dist[u]) continue;
+                        dist[u] = c.dists[k];
+                        prev[u] = c.tails[k];
+                        mine.add(u);
+                    }
+                }
+                improved[p] = mine;
+            }));
+            for (long s : scanned) tree.relaxed += s;
+            for (IntList mine : improved) {
+                for (int k = 0; k < mine.size; k++) bucket(bucketOf(dist[mine.values[k]])).add(mine.values[k]);
+                tree.pushes += mine.size;
+            }
+        }
+    }
+
+    /**
+     * Run a body for every index in [0, count), splitting the range across the pool.
+     */
+    private static final class Each extends RecursiveAction {
+        private final IntConsumer body;
+        private final int lo, hi;
+
+        Each(int count, IntConsumer body) { this(body, 0, count); }
+
+        private Each(IntConsumer body, int lo, int hi) {
+            this.body = body;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new Each(body, lo, mid), new Each(body, mid, hi));
+                return;
+            }
+            if (lo < hi) body.accept(lo);
+        }
+    }
+
+    /**
+     * Candidate distances for one target partition: target node, tail it is reached from and distance.
+     */
+    private static final class Candidates {
+        int[] targets = new int[16];
+        int[] tails = new int[16];
+        double[] dists = new double[16];
+        int size;
+
+        void add(int target, int tail, double dist) {
+            if (size == targets.length) {
+                targets = Arrays.copyOf(targets, size * 2);
+                tails = Arrays.copyOf(tails, size * 2);
+                dists = Arrays.copyOf(dists, size * 2);
+            }
+            targets[size] = target;
+            tails[size] = tail;
+            dists[size] = dist;
+            size++;
+        }
+    }
+
+    /**
+     * Growable list of dense indices.
+     */
+    private static final class IntList {
+        int[] values = new int[16];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+}
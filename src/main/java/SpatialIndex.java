@@ -0,0 +1,330 @@
+import java.util.Arrays;
+
+/**
+ * K-d tree over the coordinates of a graph's nodes, for nearest node and range lookups by position.
+ * The tree is bulk loaded into flat arrays (each subtree is a contiguous range with its median in the middle), and
+ * nodes added to the graph afterwards are kept in a small pending list that queries scan linearly until it grows
+ * large enough to be worth folding into a rebuilt tree. Distances are euclidian in coordinate space, like the A*
+ * heuristic. Coordinates are read when a node is folded into the tree, and nodes without both coordinates are left
+ * out, so call rebuild after changing the coordinates of existing nodes. Not thread safe, like Graph.
+ */
+public class SpatialIndex {
+    private static final int MIN_PENDING = 256; // Pending nodes always tolerated before a rebuild
+
+    private final Graph graph;
+    private final String xLabel;
+    private final String yLabel;
+    private int[] order = new int[0];     // Dense node indices in tree layout
+    private double[] xs = new double[0];  // Coordinates by tree position
+    private double[] ys = new double[0];
+    private int[] pending = new int[16];  // Nodes added since the last build
+    private int pendingCount;
+
+    private SpatialIndex(Graph graph, String xLabel, String yLabel) {
+        this.graph = graph;
+        this.xLabel = xLabel;
+        this.yLabel = yLabel;
+    }
+
+    /**
+     * Bulk load an index over every node of a graph that has both coordinates.
+     * @param g Graph to index
+     * @param xLabel Node data key of the x coordinate
+     * @param yLabel Node data key of the y coordinate
+     * @return Spatial index, which only sees later nodes if they are passed to insert (Graph.spatialIndex does this)
+     */
+    public static SpatialIndex build(Graph g, String xLabel, String yLabel) {
+        SpatialIndex index = new SpatialIndex(g, xLabel, yLabel);
+        int[] all = new int[g.nodeCount()];
+        for (int v = 0; v < all.length; v++) all[v] = v;
+        index.load(all, all.length);
+        return index;
+    }
+
+    // Accessors
+    public String xLabel() { return xLabel; }
+    public String yLabel() { return yLabel; }
+    public int size() { return order.length + pendingCount; } // Pending nodes may yet turn out to lack coordinates
+
+    /**
+     * Queue a newly added node for indexing.
+     * @param v Dense index of the node
+     */
+    void insert(int v) {
+        if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+        pending[pendingCount++] = v;
+    }
+
+    /**
+     * Rebuild the tree from every node of the graph, picking up changed coordinates.
+     */
+    public void rebuild() {
+        pendingCount = 0;
+        int[] all = new int[graph.nodeCount()];
+        for (int v = 0; v < all.length; v++) all[v] = v;
+        load(all, all.length);
+    }
+
+    // QUERIES =======================================================================================================
+
+    /**
+     * Find the node closest to a point.
+     * @return Dense index of the nearest node, or -1 if no node has coordinates
+     */
+    public int nearest(double x, double y) {
+        int[] nearest = nearest(x, y, 1);
+        return (nearest.length == 0) ? -1 : nearest[0];
+    }
+
+    /**
+     * Find the k nodes closest to a point.
+     * @param k Number of nodes to find
+     * @return Dense indices of up to k nodes, nearest first
+     */
+    public int[] nearest(double x, double y, int k) {
+        if (k <= 0) return new int[0];
+        compact();
+        Neighbours best = new Neighbours(k);
+        nearest(x, y, 0, order.length, 0, best);
+        AttributeStore.Column cx = column(xLabel), cy = column(yLabel);
+        for (int i = 0; i < pendingCount; i++) {
+            int v = pending[i];
+            double px = coordinate(cx, v, xLabel), py = coordinate(cy, v, yLabel);
+            if (!Double.isNaN(px) && !Double.isNaN(py)) best.offer(v, distanceSq(x, y, px, py));
+        }
+        return best.sorted();
+    }
+
+    /**
+     * Find every node within a distance of a point.
+     * @param radius Maximum distance, inclusive
+     * @return Dense indices of the nodes found, in ascending order
+     */
+    public int[] withinRadius(double x, double y, double radius) {
+        compact();
+        IntList found = new IntList();
+        withinRadius(x, y, radius * radius, 0, order.length, 0, found);
+        AttributeStore.Column cx = column(xLabel), cy = column(yLabel);
+        for (int i = 0; i < pendingCount; i++) {
+            int v = pending[i];
+            double px = coordinate(cx, v, xLabel), py = coordinate(cy, v, yLabel);
+            if (distanceSq(x, y, px, py) <= radius * radius) found.add(v);
+        }
+        return found.sorted();
+    }
+
+    /**
+     * Find every node inside an axis aligned box, bounds inclusive.
+     * @return Dense indices of the nodes found, in ascending order
+     */
+    public int[] withinBox(double minX, double minY, double maxX, double maxY) {
+        compact();
+        IntList found = new IntList();
+        withinBox(minX, minY, maxX, maxY, 0, order.length, 0, found);
+        AttributeStore.Column cx = column(xLabel), cy = column(yLabel);
+        for (int i = 0; i < pendingCount; i++) {
+            int v = pending[i];
+            double px = coordinate(cx, v, xLabel), py = coordinate(cy, v, yLabel);
+            if (px >= minX && px <= maxX && py >= minY && py <= maxY) found.add(v);
+        }
+        return found.sorted();
+    }
+
+    private void nearest(double x, double y, int lo, int hi, int depth, Neighbours best) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        best.offer(order[mid], distanceSq(x, y, xs[mid], ys[mid]));
+        double delta = (depth % 2 == 0) ? x - xs[mid] : y - ys[mid];
+
+        // Search the side of the split holding the point first, then the other side only if it could be closer
+        if (delta < 0) nearest(x, y, lo, mid, depth + 1, best);
+        else nearest(x, y, mid + 1, hi, depth + 1, best);
+        if (delta * delta <= best.bound()) {
+            if (delta < 0) nearest(x, y, mid + 1, hi, depth + 1, best);
+            else nearest(x, y, lo, mid, depth + 1, best);
+        }
+    }
+
+    private void withinRadius(double x, double y, double radiusSq, int lo, int hi, int depth, IntList found) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        if (distanceSq(x, y, xs[mid], ys[mid]) <= radiusSq) found.add(order[mid]);
+        double delta = (depth % 2 == 0) ? x - xs[mid] : y - ys[mid];
+        if (delta <= 0 || delta * delta <= radiusSq) withinRadius(x, y, radiusSq, lo, mid, depth + 1, found);
+        if (delta >= 0 || delta * delta <= radiusSq) withinRadius(x, y, radiusSq, mid + 1, hi, depth + 1, found);
+    }
+
+    private void withinBox(double minX, double minY, double maxX, double maxY, int lo, int hi, int depth,
+                           IntList found) {
+        if (lo >= hi) return;
+        int mid = (lo + hi) >>> 1;
+        double px = xs[mid], py = ys[mid];
+        if (px >= minX && px <= maxX && py >= minY && py <= maxY) found.add(order[mid]);
+        double split = (depth % 2 == 0) ? px : py;
+        double min = (depth % 2 == 0) ? minX : minY, max = (depth % 2 == 0) ? maxX : maxY;
+        if (min <= split) withinBox(minX, minY, maxX, maxY, lo, mid, depth + 1, found);
+        if (max >= split) withinBox(minX, minY, maxX, maxY, mid + 1, hi, depth + 1, found);
+    }
+
+    private static double distanceSq(double x, double y, double px, double py) {
+        double dx = x - px, dy = y - py;
+        return dx * dx + dy * dy;
+    }
+
+    // BUILD =========================================================================================================
+
+    /**
+     * Fold the pending nodes into the tree once there are too many to scan on every query.
+     */
+    private void compact() {
+        if (pendingCount <= Math.max(MIN_PENDING, order.length >>> 6)) return;
+        int[] all = Arrays.copyOf(order, order.length + pendingCount);
+        System.arraycopy(pending, 0, all, order.length, pendingCount);
+        pendingCount = 0;
+        load(all, all.length);
+    }
+
+    /**
+     * Build the tree over the given nodes, dropping those without coordinates.
+     */
+    private void load(int[] nodes, int count) {
+        int[] ids = new int[count];
+        double[] px = new double[count], py = new double[count];
+        int n = 0;
+        AttributeStore.Column cx = column(xLabel), cy = column(yLabel);
+        for (int i = 0; i < count; i++) {
+            int v = nodes[i];
+            double x = coordinate(cx, v, xLabel), y = coordinate(cy, v, yLabel);
+            if (Double.isNaN(x) || Double.isNaN(y)) continue;
+            ids[n] = v;
+            px[n] = x;
+            py[n] = y;
+            n++;
+        }
+        order = Arrays.copyOf(ids, n);
+        xs = Arrays.copyOf(px, n);
+        ys = Arrays.copyOf(py, n);
+        split(0, n, 0);
+    }
+
+    /**
+     * Arrange [lo, hi) so the median on the depth's axis sits in the middle, smaller to its left, then recurse.
+     */
+    private void split(int lo, int hi, int depth) {
+        if (hi - lo <= 1) return;
+        int mid = (lo + hi) >>> 1;
+        double[] axis = (depth % 2 == 0) ? xs : ys;
+
+        // Quickselect the median
+        int left = lo, right = hi - 1;
+        while (left < right) {
+            double pivot = axis[(left + right) >>> 1];
+            int i = left, j = right;
+            while (i <= j) {
+                while (axis[i] < pivot) i++;
+                while (axis[j] > pivot) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            if (mid <= j) right = j;
+            else if (mid >= i) left = i;
+            else break;
+        }
+        split(lo, mid, depth + 1);
+        split(mid + 1, hi, depth + 1);
+    }
+
+    private void swap(int i, int j) {
+        int v = order[i]; order[i] = order[j]; order[j] = v;
+        double x = xs[i]; xs[i] = xs[j]; xs[j] = x;
+        double y = ys[i]; ys[i] = ys[j]; ys[j] = y;
+    }
+
+    /**
+     * Read a node coordinate from its attribute column, or its JSON if the value is not columnar.
+     * @return The coordinate, NaN if missing
+     */
+    private double coordinate(AttributeStore.Column c, int v, String label) {
+        if (c != null && c.has(v)) return c.getDouble(v);
+        return graph.getNode(v).data.optDouble(label);
+    }
+
+    /**
+     * @return Numeric column of a coordinate, or null if it has none
+     */
+    private AttributeStore.Column column(String label) {
+        AttributeStore.Column c = graph.nodeAttributes().column(label);
+        return (c == null || c.type() == MappedGraph.ColumnType.STRING) ? null : c;
+    }
+
+    /**
+     * The k best candidates so far, as a max-heap on squared distance.
+     */
+    private static class Neighbours {
+        private final int[] ids;
+        private final double[] dist;
+        private int size;
+
+        Neighbours(int k) {
+            ids = new int[k];
+            dist = new double[k];
+        }
+
+        /** @return Squared distance a candidate must not exceed to be kept */
+        double bound() { return (size < ids.length) ? Double.POSITIVE_INFINITY : dist[0]; }
+
+        void offer(int v, double d) {
+            if (size < ids.length) {
+                int i = size++;
+                while (i > 0 && dist[(i - 1) / 2] < d) { // Sift up
+                    ids[i] = ids[(i - 1) / 2];
+                    dist[i] = dist[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                ids[i] = v;
+                dist[i] = d;
+            } else if (d < dist[0]) {
+                int i = 0;
+                while (true) { // Sift the replaced root down
+                    int c = 2 * i + 1;
+                    if (c >= size) break;
+                    if (c + 1 < size && dist[c + 1] > dist[c]) c++;
+                    if (dist[c] <= d) break;
+                    ids[i] = ids[c];
+                    dist[i] = dist[c];
+                    i = c;
+                }
+                ids[i] = v;
+                dist[i] = d;
+            }
+        }
+
+        /** @return Candidates by ascending distance */
+        int[] sorted() {
+            Integer[] byDistance = new Integer[size];
+            for (int i = 0; i < size; i++) byDistance[i] = i;
+            Arrays.sort(byDistance, (a, b) -> Double.compare(dist[a], dist[b]));
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) result[i] = ids[byDistance[i]];
+            return result;
+        }
+    }
+
+    /**
+     * Growable list of dense indices.
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+
+        int[] sorted() {
+            int[] result = Arrays.copyOf(values, size);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
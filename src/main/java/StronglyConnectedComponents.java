@@ -0,0 +1,380 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Strongly connected components of directed topologies.
+ * The sequential engine is Tarjan's algorithm with an explicit call stack and primitive index/lowlink arrays, so
+ * depth is bounded by memory rather than the thread stack. The parallel engine trims trivial components (single
+ * nodes and pairs) and then splits the graph with forward-backward reachability from a pivot on a fork-join pool,
+ * trimming again within each subproblem and finishing small ones with Tarjan. Both engines follow only the visible
+ * edges of a view, so each hidden node forms a component of its own.
+ */
+public class StronglyConnectedComponents {
+    static final int PARALLEL_THRESHOLD = 1 << 14;    // Below this many nodes the sequential engine is used
+    private static final int TARJAN_CUTOFF = 1 << 10; // FW-BW subproblems at most this big finish with Tarjan
+
+    /**
+     * Label strongly connected components, in parallel for large topologies.
+     * @param t Topology to label
+     * @return Component labelling, ordered by the smallest node index in each component
+     */
+    public static Components of(Topology t) {
+        return (t.nodeCount() < PARALLEL_THRESHOLD) ? tarjan(t) : parallel(t, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Label strongly connected components with iterative Tarjan.
+     * @param t Topology to label
+     * @return Component labelling, ordered by the smallest node index in each component
+     */
+    public static Components tarjan(Topology t) {
+        int n = t.nodeCount();
+        int[] roots = new int[n];
+        tarjan(t, null, 0, allNodes(n), new Scratch(n), roots);
+        return Components.fromRoots(roots);
+    }
+
+    /**
+     * Label strongly connected components with parallel forward-backward decomposition.
+     * @param t Topology to label
+     * @param pool Pool to run on
+     * @return Component labelling, ordered by the smallest node index in each component
+     */
+    public static Components parallel(Topology t, ForkJoinPool pool) {
+        int n = t.nodeCount();
+        IntTopology reverse = IntTopology.transpose(t);
+        int[] roots = new int[n];
+        int[] color = new int[n];   // Subproblem each unlabelled node belongs to, -1 once labelled
+        AtomicInteger colors = new AtomicInteger(1);
+        pool.invoke(new ForwardBackward(t, reverse, color, roots, colors, new Scratch(n), allNodes(n), 0));
+        return Components.fromRoots(roots);
+    }
+
+    /**
+     * Build the condensation of a topology: one node per component, with an edge between two components if any edge
+     * joins their members. The result is a DAG. Hidden edges of a view are left out.
+     * @param t Topology that was labelled
+     * @param scc Strongly connected component labelling of t
+     * @return Condensation DAG over component ids, without duplicate edges
+     */
+    public static IntTopology condensation(Topology t, Components scc) {
+        int c = scc.count();
+        int[] offsets = new int[c + 1];
+        int[] lastSeen = new int[c];  // Last source component that added an edge to this target, to drop duplicates
+        Arrays.fill(lastSeen, -1);
+
+        // Group nodes by component so each component's out-edges can be deduplicated in one sweep
+        int[] members = new int[t.nodeCount()];
+        int[] start = new int[c + 1];
+        for (int v = 0; v < t.nodeCount(); v++) start[scc.componentOf(v) + 1]++;
+        for (int i = 0; i < c; i++) start[i + 1] += start[i];
+        int[] fill = Arrays.copyOf(start, c);
+        for (int v = 0; v < t.nodeCount(); v++) members[fill[scc.componentOf(v)]++] = v;
+
+        int[] targets = new int[t.edgeCount()];
+        int m = 0;
+        for (int a = 0; a < c; a++) {
+            offsets[a] = m;
+            for (int i = start[a]; i < start[a + 1]; i++) {
+                int v = members[i];
+                for (int e = t.edgeStart(v); e < t.edgeEnd(v); e++) {
+                    int b = scc.componentOf(t.edgeTarget(e));
+                    if (b == a || lastSeen[b] == a || !t.edgeVisible(e)) continue;
+                    lastSeen[b] = a;
+                    targets[m++] = b;
+                }
+            }
+        }
+        offsets[c] = m;
+        return new IntTopology(offsets, Arrays.copyOf(targets, m));
+    }
+
+    /**
+     * Iterative Tarjan over the given nodes, following only edges to nodes of the same color (all edges if color is
+     * null). Writes the root node of each node's component into roots.
+     */
+    private static void tarjan(Topology t, int[] color, int c, int[] nodes, Scratch scratch, int[] roots) {
+        int size = nodes.length;
+        int[] stack = new int[size];      // Tarjan's stack of nodes in unfinished components
+        int[] callStack = new int[size];  // Explicit DFS call stack
+        int[] nextEdge = new int[size];   // Next edge to follow for each call stack frame
+        int[] index = scratch.index, lowlink = scratch.lowlink;
+        boolean[] onStack = scratch.onStack;
+        for (int v : nodes) index[v] = -1;
+
+        int counter = 0, sp = 0;
+        for (int s : nodes) {
+            if (index[s] >= 0) continue;
+            int top = 0;
+            callStack[0] = s;
+            nextEdge[0] = t.edgeStart(s);
+            index[s] = lowlink[s] = counter++;
+            stack[sp++] = s;
+            onStack[s] = true;
+
+            while (top >= 0) {
+                int v = callStack[top];
+                if (nextEdge[top] < t.edgeEnd(v)) {
+                    int e = nextEdge[top]++;
+                    int u = t.edgeTarget(e);
+                    if ((color != null && color[u] != c) || !t.edgeVisible(e)) continue;
+                    if (index[u] < 0) { // Recurse into u
+                        index[u] = lowlink[u] = counter++;
+                        stack[sp++] = u;
+                        onStack[u] = true;
+                        callStack[++top] = u;
+                        nextEdge[top] = t.edgeStart(u);
+                    } else if (onStack[u]) {
+                        lowlink[v] = Math.min(lowlink[v], index[u]);
+                    }
+                    continue;
+                }
+
+                // All edges of v followed: pop its component if v is a root, then return to the caller
+                if (lowlink[v] == index[v]) {
+                    int u;
+                    do {
+                        u = stack[--sp];
+                        onStack[u] = false;
+                        roots[u] = v;
+                    } while (u != v);
+                }
+                if (--top >= 0) {
+                    int caller = callStack[top];
+                    lowlink[caller] = Math.min(lowlink[caller], lowlink[v]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-node state. Subproblems of the parallel engine own disjoint node sets, so they can share one.
+     */
+    private static class Scratch {
+        final int[] index;
+        final int[] lowlink;
+        final boolean[] onStack;
+        final int[] in;   // Trimming in-degree within the node's subproblem
+        final int[] out;  // Trimming out-degree within the node's subproblem
+
+        Scratch(int n) {
+            index = new int[n];
+            lowlink = new int[n];
+            onStack = new boolean[n];
+            in = new int[n];
+            out = new int[n];
+        }
+    }
+
+    /**
+     * Peel off the trivial components of a subproblem until none are left: single nodes with no in-edges or no
+     * out-edges within the subproblem (trim-1), and pairs of nodes whose only in-edges, or only out-edges, are the
+     * edges between them (trim-2). Removing a component can expose more, e.g. a chain of 2-cycles is peeled entirely.
+     * Leaves the subproblem degrees of the remaining nodes in scratch.in and scratch.out.
+     * @return The nodes of color c left after trimming
+     */
+    private static int[] trim(Topology t, Topology reverse, int[] color, int c, int[] nodes, Scratch scratch,
+                              int[] roots) {
+        int[] in = scratch.in, out = scratch.out;
+        for (int v : nodes) in[v] = out[v] = 0;
+        for (int v : nodes) {
+            for (int e = t.edgeStart(v); e < t.edgeEnd(v); e++) {
+                int u = t.edgeTarget(e);
+                if (color[u] == c && t.edgeVisible(e)) { out[v]++; in[u]++; }
+            }
+        }
+
+        int[] work = nodes.clone(); // Candidates; a node is queued again whenever a degree of it drops to 1 or 0
+        int size = work.length, removed = 0;
+        while (size > 0) {
+            int v = work[--size];
+            if (color[v] != c) continue;
+            // A node without in-edges or out-edges, or a pair that nothing else reaches or is reached from
+            int u = (in[v] == 0 || out[v] == 0) ? v : closedPair(reverse, in, color, c, v);
+            if (u < 0) u = closedPair(t, out, color, c, v);
+            if (u < 0) continue;
+
+            color[v] = color[u] = -1;
+            roots[v] = roots[u] = v;
+            removed += (u == v) ? 1 : 2;
+            for (int x = v; ; x = u) {
+                for (int e = t.edgeStart(x); e < t.edgeEnd(x); e++) {
+                    int y = t.edgeTarget(e);
+                    if (color[y] == c && t.edgeVisible(e) && --in[y] <= 1) work = push(work, size++, y);
+                }
+                for (int e = reverse.edgeStart(x); e < reverse.edgeEnd(x); e++) {
+                    int y = reverse.edgeTarget(e);
+                    if (color[y] == c && --out[y] <= 1) work = push(work, size++, y);
+                }
+                if (x == u) break;
+            }
+        }
+        int[] remaining = new int[nodes.length - removed];
+        int i = 0;
+        for (int v : nodes) if (color[v] == c) remaining[i++] = v;
+        return remaining;
+    }
+
+    /**
+     * Find the trim-2 partner of v along one direction: u such that the only edge into v within the subproblem comes
+     * from u and the only edge into u comes from v (along t, which is the reverse graph for in-edges).
+     * @param degree Subproblem degree of each node along t
+     * @return The partner, v itself if v's only edge is a self loop, or -1 if there is none
+     */
+    private static int closedPair(Topology t, int[] degree, int[] color, int c, int v) {
+        if (degree[v] != 1) return -1;
+        int u = onlyNeighbour(t, color, c, v);
+        if (u == v) return v;
+        return (degree[u] == 1 && onlyNeighbour(t, color, c, u) == v) ? u : -1;
+    }
+
+    /**
+     * @return The head of the first edge from v to a node of color c, -1 if there is none
+     */
+    private static int onlyNeighbour(Topology t, int[] color, int c, int v) {
+        for (int e = t.edgeStart(v); e < t.edgeEnd(v); e++) {
+            if (color[t.edgeTarget(e)] == c && t.edgeVisible(e)) return t.edgeTarget(e);
+        }
+        return -1;
+    }
+
+    private static int[] push(int[] work, int size, int v) {
+        if (size == work.length) work = Arrays.copyOf(work, Math.max(16, size * 2));
+        work[size] = v;
+        return work;
+    }
+
+    /**
+     * Forward-backward decomposition of the nodes of one color. Each step trims the subproblem, then takes the
+     * pivot's component as the intersection of its forward and backward reachable sets, which leaves three
+     * independent subproblems. The task forks the two smaller ones and loops on the largest, so a graph that splits
+     * unevenly (a long chain of small cycles, say) costs iterations rather than nested frames: forked subproblems
+     * are at most half the size of their parent, so tasks nest at most log n deep. Tasks own disjoint node sets, so
+     * their writes to the shared arrays never overlap, and colors are never reused, so a task never mistakes another
+     * task's node for its own.
+     */
+    private static class ForwardBackward extends RecursiveAction {
+        private static final int PIVOT_SAMPLE = 64; // Random candidates the pivot is chosen among
+
+        private final Topology t, reverse;
+        private final int[] color, roots;
+        private final AtomicInteger colors;
+        private final Scratch scratch;
+        private final int[] nodes;
+        private final int c;
+
+        ForwardBackward(Topology t, Topology reverse, int[] color, int[] roots, AtomicInteger colors, Scratch scratch,
+                        int[] nodes, int c) {
+            this.t = t;
+            this.reverse = reverse;
+            this.color = color;
+            this.roots = roots;
+            this.colors = colors;
+            this.scratch = scratch;
+            this.nodes = nodes;
+            this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            ArrayList<ForwardBackward> forked = new ArrayList<>();
+            int[] nodes = this.nodes;
+            int c = this.c;
+            while (true) {
+                nodes = trim(t, reverse, color, c, nodes, scratch, roots);
+                if (nodes.length <= TARJAN_CUTOFF) {
+                    tarjan(t, color, c, nodes, scratch, roots);
+                    for (int v : nodes) color[v] = -1;
+                    break;
+                }
+                int fw = colors.getAndIncrement(), bw = colors.getAndIncrement(), scc = colors.getAndIncrement();
+                int pivot = pivot(nodes);
+                int[] queue = new int[nodes.length];
+
+                // Forward: recolor everything reachable from the pivot within color c
+                int head = 0, tail = 0;
+                color[pivot] = fw;
+                queue[tail++] = pivot;
+                while (head < tail) {
+                    int v = queue[head++];
+                    for (int e = t.edgeStart(v); e < t.edgeEnd(v); e++) {
+                        int u = t.edgeTarget(e);
+                        if (color[u] == c && t.edgeVisible(e)) { color[u] = fw; queue[tail++] = u; }
+                    }
+                }
+                int fwCount = tail;
+
+                // Backward: forward-reached nodes become the pivot's component, the others are backward-only
+                int bwCount = 0;
+                head = 0;
+                tail = 0;
+                color[pivot] = scc;
+                queue[tail++] = pivot;
+                while (head < tail) {
+                    int v = queue[head++];
+                    for (int e = reverse.edgeStart(v); e < reverse.edgeEnd(v); e++) {
+                        int u = reverse.edgeTarget(e);
+                        if (color[u] == fw) { color[u] = scc; queue[tail++] = u; }
+                        else if (color[u] == c) { color[u] = bw; queue[tail++] = u; bwCount++; }
+                    }
+                }
+                fwCount -= tail - bwCount;
+
+                // Label the component and partition the rest into the three subproblems
+                int[] fwNodes = new int[fwCount], bwNodes = new int[bwCount];
+                int[] rest = new int[nodes.length - tail - fwCount];
+                int fi = 0, bi = 0, ri = 0;
+                for (int v : nodes) {
+                    int cv = color[v];
+                    if (cv == scc) { roots[v] = pivot; color[v] = -1; }
+                    else if (cv == fw) fwNodes[fi++] = v;
+                    else if (cv == bw) bwNodes[bi++] = v;
+                    else rest[ri++] = v;
+                }
+
+                // Keep working on the largest subproblem and fork the others
+                int[][] parts = {fwNodes, bwNodes, rest};
+                int[] partColors = {fw, bw, c};
+                int largest = 0;
+                for (int p = 1; p < 3; p++) if (parts[p].length > parts[largest].length) largest = p;
+                for (int p = 0; p < 3; p++) {
+                    if (p == largest || parts[p].length == 0) continue;
+                    ForwardBackward task = new ForwardBackward(t, reverse, color, roots, colors, scratch, parts[p],
+                            partColors[p]);
+                    task.fork();
+                    forked.add(task);
+                }
+                nodes = parts[largest];
+                c = partColors[largest];
+            }
+            for (ForwardBackward task : forked) task.join();
+        }
+
+        /**
+         * Pick the pivot with the highest product of trimmed in- and out-degree among a random sample, as it likely
+         * lies in a large component. Sampling at random also keeps adversarial node orders from peeling one small
+         * component per step.
+         */
+        private int pivot(int[] nodes) {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            int pivot = nodes[rnd.nextInt(nodes.length)];
+            long best = -1;
+            for (int i = 0; i < PIVOT_SAMPLE; i++) {
+                int v = nodes[rnd.nextInt(nodes.length)];
+                long score = (long) scratch.in[v] * scratch.out[v];
+                if (score > best) { best = score; pivot = v; }
+            }
+            return pivot;
+        }
+    }
+
+    private static int[] allNodes(int n) {
+        int[] nodes = new int[n];
+        for (int v = 0; v < n; v++) nodes[v] = v;
+        return nodes;
+    }
+}
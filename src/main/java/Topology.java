@@ -0,0 +1,18 @@
+/**
+ * Read-only CSR view of a directed graph's structure, over dense node indices 0..nodeCount()-1.
+ * The out-edges of node v are the edge indices edgeStart(v) (inclusive) to edgeEnd(v) (exclusive).
+ * Implemented by the on-heap CompactGraph and the memory-mapped MappedGraph, so algorithms written against it run
+ * on either without copying. A GraphView hides nodes and edges of a snapshot without renumbering: a hidden node has
+ * no out-edges and algorithms skip edges for which edgeVisible is false.
+ */
+public interface Topology {
+    int nodeCount();
+    int edgeCount();
+    int edgeStart(int v);
+    int edgeEnd(int v);
+    int edgeTarget(int e);
+
+    default int degree(int v) { return edgeEnd(v) - edgeStart(v); }
+    default boolean nodeVisible(int v) { return true; }
+    default boolean edgeVisible(int e) { return true; }
+}
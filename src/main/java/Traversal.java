@@ -0,0 +1,193 @@
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Lazy breadth first and depth first traversals over a Topology, as spliterators of dense node indices.
+ * Each call to tryAdvance visits one more node, so a stream over a traversal does only as much work as its terminal
+ * operation needs (e.g. findFirst stops the search at the first match). Besides a visited bitset (one bit per node)
+ * the state held is the frontier: the queue of discovered nodes for breadth first, the current path for depth first
+ * (plus, when depth limited, the depth each node was expanded at).
+ * Traversals are inherently sequential, so these spliterators do not split.
+ */
+public class Traversal {
+
+    /**
+     * Visit nodes in breadth first order: src, then the nodes one hop away, and so on.
+     * @param t Topology to traverse
+     * @param src Dense index of the start node
+     * @param maxDepth Hop limit, Integer.MAX_VALUE for none
+     * @param filter Nodes to visit, or null for all; other nodes are neither visited nor traversed through
+     * @return Spliterator of dense node indices in visit order, empty if src does not pass the filter
+     */
+    public static Spliterator.OfInt breadthFirst(Topology t, int src, int maxDepth, IntPredicate filter) {
+        return new BreadthFirst(t, src, maxDepth, filter);
+    }
+
+    /**
+     * Visit nodes in depth first preorder, following out-edges in edge order. With a hop limit, every node within
+     * maxDepth hops of src is visited: a node first reached along a longer path is expanded again (but not visited
+     * again) when a shorter path to it turns up, so each node is expanded at most maxDepth + 1 times.
+     * @param t Topology to traverse
+     * @param src Dense index of the start node
+     * @param maxDepth Hop limit (shortest distance from src), Integer.MAX_VALUE for none
+     * @param filter Nodes to visit, or null for all; other nodes are neither visited nor traversed through
+     * @return Spliterator of dense node indices in visit order, empty if src does not pass the filter
+     */
+    public static Spliterator.OfInt depthFirst(Topology t, int src, int maxDepth, IntPredicate filter) {
+        return new DepthFirst(t, src, maxDepth, filter);
+    }
+
+    private abstract static class Base extends Spliterators.AbstractIntSpliterator {
+        final Topology t;
+        final int maxDepth;
+        final IntPredicate filter;
+        final long[] visited;
+
+        Base(Topology t, int maxDepth, IntPredicate filter) {
+            super(Long.MAX_VALUE, Spliterator.DISTINCT | Spliterator.ORDERED | Spliterator.NONNULL);
+            this.t = t;
+            this.maxDepth = maxDepth;
+            this.filter = filter;
+            this.visited = new long[(t.nodeCount() + 63) >>> 6];
+        }
+
+        /**
+         * Mark v visited if it is new and passes the filter.
+         * @return True if v should be visited
+         */
+        boolean discover(int v) {
+            if ((visited[v >>> 6] & (1L << v)) != 0) return false;
+            visited[v >>> 6] |= 1L << v; // Also marks filtered out nodes, so the filter runs once per node
+            return t.nodeVisible(v) && (filter == null || filter.test(v));
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() { return null; }
+    }
+
+    private static final class BreadthFirst extends Base {
+        private int[] queue = new int[16];  // Ring buffer of discovered, not yet visited nodes
+        private int head, size;
+        private int depth;                  // Depth of the node at the head of the queue
+        private int levelRemaining;         // Nodes left at that depth, including the head
+        private int nextLevel;              // Nodes queued at depth + 1
+
+        BreadthFirst(Topology t, int src, int maxDepth, IntPredicate filter) {
+            super(t, maxDepth, filter);
+            if (discover(src)) {
+                queue[0] = src;
+                size = levelRemaining = 1;
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            if (size == 0) return false;
+            int v = queue[head];
+            head = (head + 1) & (queue.length - 1);
+            size--;
+
+            // Queue the next level's nodes as their parent is visited
+            if (depth < maxDepth) {
+                for (int e = t.edgeStart(v), end = t.edgeEnd(v); e < end; e++) {
+                    int u = t.edgeTarget(e);
+                    if (!t.edgeVisible(e) || !discover(u)) continue;
+                    if (size == queue.length) grow();
+                    queue[(head + size++) & (queue.length - 1)] = u;
+                    nextLevel++;
+                }
+            }
+            if (--levelRemaining == 0) {
+                depth++;
+                levelRemaining = nextLevel;
+                nextLevel = 0;
+            }
+            action.accept(v);
+            return true;
+        }
+
+        private void grow() {
+            int[] bigger = new int[queue.length * 2];
+            for (int i = 0; i < size; i++) bigger[i] = queue[(head + i) & (queue.length - 1)];
+            queue = bigger;
+            head = 0;
+        }
+    }
+
+    private static final class DepthFirst extends Base {
+        private int[] path = new int[16];    // Nodes on the path from src to the node visited last
+        private int[] cursor = new int[16];  // Next out-edge to follow from each node on the path
+        private int length;                  // Nodes on the path
+        private int next;                    // Node to visit on the next advance, or -1 to search for one
+        private boolean expandOnly;          // Whether next was visited already and is only expanded again
+        private final int[] expandedAt;      // 1 + shallowest depth each visited node was expanded at (depth limited)
+
+        DepthFirst(Topology t, int src, int maxDepth, IntPredicate filter) {
+            super(t, maxDepth, filter);
+            expandedAt = (maxDepth < t.nodeCount()) ? new int[t.nodeCount()] : null;
+            next = discover(src) ? src : -1;
+            if (next < 0) length = -1; // Exhausted from the start
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            while (length >= 0) {
+                if (next < 0) {
+                    next = findNext();
+                    if (next < 0) {
+                        length = -1;
+                        return false;
+                    }
+                }
+                int v = next;
+                boolean visited = expandOnly;
+                next = -1;
+                expandOnly = false;
+                push(v);
+                if (!visited) {
+                    action.accept(v);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void push(int v) {
+            if (length == path.length) {
+                path = Arrays.copyOf(path, length * 2);
+                cursor = Arrays.copyOf(cursor, length * 2);
+            }
+            path[length] = v;
+            cursor[length] = t.edgeStart(v);
+            if (expandedAt != null) expandedAt[v] = length + 1;
+            length++;
+        }
+
+        /**
+         * Backtrack along the path to the deepest node with an undiscovered out-neighbour, or (when depth limited)
+         * a visited one now reached along a shorter path, whose out-edges can then lead further.
+         * @return That neighbour, or -1 if the traversal is complete
+         */
+        private int findNext() {
+            while (length > 0) {
+                int top = length - 1, v = path[top];
+                if (top < maxDepth) {
+                    for (int end = t.edgeEnd(v); cursor[top] < end; ) {
+                        int e = cursor[top]++, u = t.edgeTarget(e);
+                        if (!t.edgeVisible(e)) continue;
+                        if (discover(u)) return u;
+                        if (expandedAt != null && top + 1 < maxDepth && expandedAt[u] > top + 2) {
+                            expandOnly = true;
+                            return u;
+                        }
+                    }
+                }
+                length--;
+            }
+            return -1;
+        }
+    }
+}
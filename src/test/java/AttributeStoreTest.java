@@ -0,0 +1,130 @@
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttributeStoreTest {
+
+    @Test
+    void loadsIntoTypedColumns() throws IOException {
+        Graph g = new Graph();
+        GraphLoader.loadUndirected(g, new File("src/test/resources/test-train-network.json"), "stations", "lines",
+                "name", "stations", "-north", "-south", null);
+
+        AttributeStore.DoubleColumn longitude = g.nodeAttributes().doubleColumn("longitude");
+        AttributeStore.StringColumn name = g.nodeAttributes().stringColumn("name");
+        int v = g.indexOf(g.getNode("940GZZLUSRP"));
+        assertEquals(-0.398915, longitude.getDouble(v));
+        assertEquals("South Ruislip", name.getString(v));
+        assertEquals(-0.398915, g.getNode("940GZZLUSRP").data.getDouble("longitude"));
+        assertThrows(IllegalArgumentException.class, () -> g.nodeAttributes().longColumn("name"));
+
+        // Line labels repeat across many edges, so they share dictionary entries
+        AttributeStore.StringColumn line = g.edgeAttributes().stringColumn("name");
+        assertTrue(line.dictionarySize() < g.edgeCount() / 4);
+        assertEquals(g.getEdge(0).data.getString("name"), line.getString(0));
+    }
+
+    @Test
+    void viewBehavesLikeJson() {
+        Graph g = new Graph();
+        Node a = new Node("a", new JSONObject().put("x", 1).put("label", "A").put("flag", true));
+        g.addNode(a);
+        assertNotNull(g.nodeAttributes().longColumn("x"));
+        assertEquals(Set.of("x", "label", "flag"), a.data.keySet());
+        assertEquals(3, a.data.length());
+        assertTrue(a.data.getBoolean("flag"));  // Not columnar, kept in the view's own map
+
+        // A fraction doesn't fit the LONG column, so it moves to the view's map and back again
+        a.data.put("x", 1.5);
+        assertEquals(1.5, a.data.getDouble("x"));
+        assertFalse(g.nodeAttributes().longColumn("x").has(0));
+        a.data.put("x", 2);
+        assertEquals(2, a.data.getInt("x"));
+        assertEquals(2, g.nodeAttributes().longColumn("x").getLong(0, -1));
+
+        a.data.remove("label");
+        assertFalse(a.data.has("label"));
+        assertNull(g.nodeAttributes().stringColumn("label").getString(0));
+        assertEquals(new JSONObject("{\"x\":2,\"flag\":true}").toMap(), new JSONObject(a.data.toString()).toMap());
+        assertEquals(new JSONArray("[\"x\",\"flag\"]").toList(), a.data.names().toList());
+
+        // Merging edge data writes through to the columns
+        Node b = new Node("b");
+        g.addEdge(a, b, new JSONObject().put("w", 3.0));
+        g.getEdge("a", "b").addData(new JSONObject().put("w", 4.0).put("line", "L"));
+        assertEquals(4.0, g.edgeAttributes().doubleColumn("w").getDouble(0));
+        assertEquals("L", g.edgeAttributes().stringColumn("line").getString(0));
+    }
+
+    @Test
+    void integralValuesBoxLikeJson() {
+        Graph g = new Graph();
+        JSONObject parsed = new JSONObject("{\"k\":1,\"big\":10000000000}");
+        Node a = new Node("a", new JSONObject(parsed.toString()));
+        g.addNode(a);
+        assertNotNull(g.nodeAttributes().longColumn("k"));
+        assertEquals(parsed.get("k").getClass(), a.data.get("k").getClass());
+        assertEquals(Integer.valueOf(1), a.data.get("k"));
+        assertEquals(Long.valueOf(10000000000L), a.data.get("big"));
+        assertEquals(parsed.toMap(), a.data.toMap());
+    }
+
+    @Test
+    void sharedElementsKeepTheirOwner() {
+        Graph g = new Graph();
+        Node a = new Node("a", new JSONObject().put("x", 1.0)), b = new Node("b", new JSONObject().put("x", 2.0));
+        g.addEdge(a, b, new JSONObject().put("w", 5));
+        Graph copy = g.getConnectedComponents().get(0);
+
+        // The component copy shares the nodes and edges, and their data still writes through to g only
+        assertSame(a.data, copy.getNode("a").data);
+        assertNull(copy.nodeAttributes().column("x"));
+        a.data.put("x", 7.0);
+        assertEquals(7.0, g.nodeAttributes().doubleColumn("x").getDouble(0));
+        assertEquals(7.0, copy.getNode("a").data.getDouble("x"));
+        assertEquals(5, copy.getEdge("a", "b").data.getInt("w"));
+    }
+
+    @Test
+    void componentRoutesSeeEditsToSharedData() {
+        Graph g = new Graph();
+        Node a = new Node("a"), b = new Node("b"), c = new Node("c");
+        g.addEdge(a, b, new JSONObject().put("w", 1.0));
+        g.addEdge(b, c, new JSONObject().put("w", 1.0));
+        g.addEdge(a, c, new JSONObject().put("w", 5.0));
+        Graph copy = g.getConnectedComponents().get(0);
+        assertEquals(List.of(a, b, c), copy.getShortestPath(a, c, null, null, "w"));
+
+        // Edits made through the shared elements after the copy reach routes on it
+        g.getEdge("a", "b").data.put("w", 10.0);
+        assertEquals(List.of(a, c), copy.getShortestPath(a, c, null, null, "w"));
+        copy.getEdge("a", "c").data.put("w", 20.0);
+        assertEquals(List.of(a, b, c), copy.getShortestPath(a, c, null, null, "w"));
+    }
+
+    @Test
+    void dataVersionIsPerGraph() {
+        Graph g = new Graph(), other = new Graph();
+        Node a = new Node("a"), b = new Node("b");
+        g.addEdge(a, b, new JSONObject().put("w", 1.0));
+        other.addEdge(new Node("c"), new Node("d"), new JSONObject().put("w", 1.0));
+        PathMetric m = g.freeze().metric(null, null, "w");
+
+        // A write to another graph leaves this graph's version and resolved metric alone
+        long version = g.version();
+        other.getEdge("c", "d").data.put("w", 2.0);
+        assertEquals(version, g.version());
+        assertSame(m, g.freeze().metric(null, null, "w"));
+
+        g.getEdge("a", "b").data.put("w", 3.0);
+        assertNotEquals(version, g.version());
+        assertEquals(3.0, g.freeze().metric(null, null, "w").weight(0));
+    }
+}
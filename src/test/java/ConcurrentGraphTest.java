@@ -0,0 +1,90 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentGraphTest {
+
+    @Test
+    void readersSeeConsistentSnapshots() throws Exception {
+        int length = 2000;
+        ConcurrentGraph g = new ConcurrentGraph();
+        g.addNode(new Node("0"));
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ArrayList<Future<?>> readers = new ArrayList<>();
+
+        // Readers check that every snapshot is a whole chain 0 -> 1 -> ... -> k, never a partial batch, reading
+        // weights from the attribute columns the writer is growing
+        for (int r = 0; r < 3; r++) {
+            readers.add(pool.submit(() -> {
+                while (!done.get()) {
+                    CompactGraph cg = g.snapshot();
+                    int last = cg.nodeCount() - 1;
+                    assertEquals(last, cg.edgeCount());
+                    assertEquals(0, last % 2);
+                    ArrayList<Node> path = AStar.shortestPath(cg, cg.indexOf("0"), cg.indexOf(Integer.toString(last)),
+                            cg.metric(null, null, "w"), null);
+                    assertEquals(last + 1, path.size());
+                }
+            }));
+        }
+
+        // The writer extends the chain two links per batch
+        for (int i = 0; i < length; i += 2) {
+            String a = Integer.toString(i), b = Integer.toString(i + 1), c = Integer.toString(i + 2);
+            g.update(graph -> {
+                graph.addEdge(new Node(a), new Node(b), new JSONObject().put("w", 1));
+                graph.addEdge(graph.getNode(b), new Node(c), new JSONObject().put("w", 1));
+                return null;
+            });
+        }
+        done.set(true);
+        for (Future<?> f : readers) f.get();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(length, g.edgeCount());
+        assertTrue(g.isReachable("0", Integer.toString(length)));
+        assertEquals(length + 1, g.getShortestPath("0", Integer.toString(length), null, null, null).size());
+    }
+
+    @Test
+    void oldSnapshotsAreUnchanged() {
+        ConcurrentGraph g = new ConcurrentGraph();
+        g.addEdge(new Node("a"), new Node("b"), null);
+        CompactGraph before = g.snapshot();
+        g.addEdge(g.snapshot().node(1), new Node("c"), null);
+
+        assertEquals(2, before.nodeCount());
+        assertEquals(1, before.edgeCount());
+        assertEquals(-1, before.indexOf("c"));
+        assertEquals(3, g.snapshot().nodeCount());
+        assertFalse(g.snapshot() == before);
+    }
+
+    @Test
+    void failedBatchesAreNotPublished() {
+        ConcurrentGraph g = new ConcurrentGraph();
+        g.addEdge(new Node("a"), new Node("b"), null);
+        CompactGraph before = g.snapshot();
+        assertThrows(IllegalStateException.class, () -> g.update(graph -> {
+            graph.addEdge(graph.getNode("b"), new Node("c"), null);
+            throw new IllegalStateException();
+        }));
+        assertSame(before, g.snapshot());
+        assertEquals(-1, g.snapshot().indexOf("c"));
+
+        // The failed batch's writes stay in the graph and go out with the next batch
+        g.addNode(new Node("d"));
+        assertEquals(4, g.nodeCount());
+        assertTrue(g.isReachable("a", "c"));
+    }
+}
@@ -0,0 +1,79 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContractionHierarchyTest {
+
+    @Test
+    void matchesDijkstraOnRandomGraph() {
+        Graph g = randomGraph(300, 900, new Random(3));
+        ContractionHierarchy ch = g.buildContractionHierarchy("w");
+        assertAllPairsMatch(g, ch);
+    }
+
+    @Test
+    void roundTripsThroughFile(@TempDir Path dir) throws IOException {
+        Graph g = new Graph();
+        GraphLoader.loadUndirected(g, new File("src/test/resources/test-train-network.json"), "stations", "lines",
+                "name", "stations", "-north", "-south", null);
+        File file = dir.resolve("train.ch").toFile();
+        g.buildContractionHierarchy(null).write(file);
+
+        ContractionHierarchy ch = ContractionHierarchy.read(file, g);
+        assertNull(ch.weightLabel());
+        assertAllPairsMatch(g, ch);
+
+        g.addNode(new Node("extra", null));
+        assertThrows(IOException.class, () -> ContractionHierarchy.read(file, g));
+    }
+
+    /**
+     * Check every pair's distance against plain Dijkstra, and that every path is made of real edges.
+     */
+    private static void assertAllPairsMatch(Graph g, ContractionHierarchy ch) {
+        CompactGraph cg = ch.graph();
+        PathMetric metric = cg.metric(null, null, ch.weightLabel());
+        AStar.Scratch s = AStar.scratch();
+        for (int src = 0; src < cg.nodeCount(); src++) {
+            AStar.search(cg, src, -1, metric, null, s);
+            double[] expected = new double[cg.nodeCount()];
+            for (int dst = 0; dst < cg.nodeCount(); dst++) expected[dst] = s.distance(dst);
+            for (int dst = 0; dst < cg.nodeCount(); dst++) {
+                assertEquals(expected[dst], ch.distance(src, dst), 1e-9);
+                ArrayList<Node> path = ch.getShortestPath(cg.node(src), cg.node(dst));
+                if (expected[dst] == Double.POSITIVE_INFINITY) {
+                    assertNull(path);
+                    continue;
+                }
+                assertEquals(cg.node(src), path.get(0));
+                assertEquals(cg.node(dst), path.get(path.size() - 1));
+                double length = 0;
+                for (int i = 1; i < path.size(); i++) {
+                    double lightest = Double.POSITIVE_INFINITY; // Parallel edges are allowed
+                    for (Edge e : g.getEdges(path.get(i - 1).id, path.get(i).id))
+                        lightest = Math.min(lightest, (ch.weightLabel() == null) ? 1 : e.data.getDouble(ch.weightLabel()));
+                    length += lightest;
+                }
+                assertEquals(expected[dst], length, 1e-9);
+            }
+        }
+    }
+
+    private static Graph randomGraph(int n, int m, Random rnd) {
+        Graph g = new Graph();
+        for (int v = 0; v < n; v++) g.addNode(new Node(Integer.toString(v), null));
+        for (int i = 0; i < m; i++) {
+            Node a = g.getNode(rnd.nextInt(n)), b = g.getNode(rnd.nextInt(n));
+            g.addParallelEdge(a, b, new JSONObject().put("w", 1 + rnd.nextInt(20)));
+        }
+        return g;
+    }
+}
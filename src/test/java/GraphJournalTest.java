@@ -0,0 +1,138 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphJournalTest {
+
+    @Test
+    void recoverCommittedMutations(@TempDir Path dir) throws IOException {
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.COMMIT, 0)) {
+            journal.addNode(new Node("A", new JSONObject().put("name", "Alpha")));
+            journal.addEdge(new Node("A"), new Node("B"), new JSONObject().put("weight", 2.5)); // Adds B
+            journal.addParallelEdge(journal.graph().getNode("A"), journal.graph().getNode("B"), null);
+            journal.commit();
+        }
+
+        // Garbage after the last record, as a crash mid-write leaves, is dropped on recovery
+        File log = dir.resolve("journal-0.log").toFile();
+        long committed = log.length();
+        Files.write(log.toPath(), new byte[]{0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.COMMIT, 0)) {
+            Graph g = journal.graph();
+            assertEquals(committed, log.length());
+            assertEquals(2, g.nodeCount());
+            assertEquals(2, g.edgeCount());
+            assertEquals("Alpha", g.getNode("A").data.getString("name"));
+            assertEquals(2.5, g.getEdge("A", "B").data.getDouble("weight"));
+
+            // New records after recovery follow the last intact one
+            journal.addEdge("B", "A", null);
+            journal.commit();
+        }
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.COMMIT, 0)) {
+            assertEquals(3, journal.graph().edgeCount());
+            assertNotNull(journal.graph().getEdge("B", "A"));
+        }
+    }
+
+    @Test
+    void compactIntoNextGeneration(@TempDir Path dir) throws IOException {
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.NONE, 256)) {
+            for (int i = 0; i < 20; i++) {
+                journal.addEdge(new Node("n" + i), new Node("n" + (i + 1)), new JSONObject().put("weight", i));
+                journal.commit();
+            }
+            assertTrue(journal.generation() > 0);
+            assertTrue(journal.journalBytes() <= 256);
+            journal.addEdge("n20", "n0", null); // Only in the journal of the current generation
+        }
+        assertEquals(2, dir.toFile().list().length); // One base and one journal
+
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.NONE, 0)) {
+            Graph g = journal.graph();
+            assertEquals(21, g.nodeCount());
+            assertEquals(21, g.edgeCount());
+            assertEquals(7, g.getEdge("n7", "n8").data.getInt("weight"));
+            assertNotNull(g.getEdge("n20", "n0"));
+            int generation = journal.generation();
+            journal.compact();
+            assertEquals(generation + 1, journal.generation());
+            assertEquals(21, journal.graph().edgeCount());
+        }
+    }
+
+    @Test
+    void recoverUnfinishedCompaction(@TempDir Path dir) throws IOException {
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.COMMIT, 0)) {
+            journal.addEdge(new Node("a"), new Node("b"), null);
+            journal.commit();
+        }
+        Path saved = Files.copy(dir.resolve("journal-0.log"), dir.getParent().resolve(dir.getFileName() + "-journal-0"),
+                StandardCopyOption.REPLACE_EXISTING);
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.COMMIT, 0)) {
+            journal.compact();
+            journal.addEdge(journal.graph().getNode("b"), new Node("c"), null);
+            journal.commit();
+        }
+
+        // A crash before the new base was renamed in leaves the old base's journal and the new journal
+        Files.delete(dir.resolve("base-1.bin"));
+        Files.move(saved, dir.resolve("journal-0.log"));
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.COMMIT, 0)) {
+            assertEquals(0, journal.generation());
+            assertEquals(3, journal.graph().nodeCount());
+            assertEquals(2, journal.graph().edgeCount());
+            journal.addEdge(journal.graph().getNode("c"), journal.graph().getNode("a"), null);
+            journal.commit();
+            journal.compact();
+            assertEquals(2, journal.generation());
+        }
+        assertEquals(2, dir.toFile().list().length);
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.COMMIT, 0)) {
+            assertEquals(3, journal.graph().edgeCount());
+            assertNotNull(journal.graph().getEdge("c", "a"));
+        }
+    }
+
+    @Test
+    void mutateWhileCompacting(@TempDir Path dir) throws Exception {
+        int edges = 3000;
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.NONE, 0)) {
+            journal.addNode(new Node("0"));
+            Future<?> writer = pool.submit(() -> {
+                for (int i = 0; i < edges; i++) {
+                    journal.addEdge(journal.graph().getNode(Integer.toString(i)), new Node(Integer.toString(i + 1)),
+                            new JSONObject().put("i", i));
+                    if (i % 10 == 0) journal.commit();
+                }
+                return null;
+            });
+            while (!writer.isDone()) journal.compact();
+            writer.get();
+            journal.commit();
+        } finally {
+            pool.shutdown();
+        }
+        try (GraphJournal journal = GraphJournal.open(dir.toFile(), GraphJournal.SyncPolicy.NONE, 0)) {
+            Graph g = journal.graph();
+            assertEquals(edges + 1, g.nodeCount());
+            assertEquals(edges, g.edgeCount());
+            for (int i = 0; i < edges; i += 97)
+                assertEquals(i, g.getEdge(Integer.toString(i), Integer.toString(i + 1)).data.getInt("i"));
+        }
+    }
+}
@@ -2,11 +2,15 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,6 +52,88 @@ class GraphLoaderTest {
         edgeAssertions(g, "940GZZLUOAK", "940GZZLUCKS", "Piccadilly");
     }
 
+    @Test
+    void load() throws IOException {
+        // Streaming single pass load matches the two pass DOM load
+        File file = new File("src/test/resources/test-train-network.json");
+        Graph g = new Graph();
+        long[] lastProgress = new long[1];
+        GraphLoader.load(g, file, "stations", "lines", "name", "stations",
+                (bytesRead, totalBytes, nodesLoaded, pathsLoaded) -> lastProgress[0] = bytesRead);
+        assertEquals(file.length(), lastProgress[0]);
+
+        Node n = g.getNode("940GZZLUPCO");
+        assertEquals("Pimlico", n.data.getString("name"));
+        assertEquals(-0.133761, n.data.getDouble("longitude"));
+        assertFalse(n.data.has("id"));
+        edgeAssertions(g, "940GZZLUHSC", "940GZZLUGHK", "Circle");
+        edgeAssertions(g, "940GZZLUPCC", "940GZZLUOXC", "Bakerloo");
+        edgeAssertions(g, "940GZZLUOAK", "940GZZLUCKS", "Piccadilly");
+        assertNull(g.getEdge("940GZZLUGHK", "940GZZLUHSC"));
+    }
+
+    @Test
+    void loadUndirectedPathsBeforeNodes(@TempDir Path dir) throws IOException {
+        // Paths may reference nodes before their records, and unrelated values are skipped
+        Path file = dir.resolve("graph.json");
+        Files.writeString(file, "{ \"meta\": {\"nested\": [1, \"]\", {}]}, "
+                + "\"paths\": [ {\"line\": \"L\", \"nodes\": [\"a\", \"b\", \"c\"]}, ], "
+                + "\"nodes\": [ {\"id\": \"a\", \"x\": 1}, {\"id\": \"b\", \"x\": 2}, {\"id\": \"c\"} ] }");
+        Graph g = new Graph();
+        GraphLoader.loadUndirected(g, file.toFile(), "nodes", "paths", "line", "nodes", "-f", "-b", null);
+
+        assertEquals(3, g.nodeCount());
+        assertEquals(2, g.getNode("b").data.getInt("x"));
+        assertEquals("L-f", g.getEdge("a", "b").data.getString("line"));
+        assertEquals("L-b", g.getEdge("c", "b").data.getString("line"));
+        assertEquals(g.getNode("c"), g.getAdjList().get(g.getNode("b")).get(g.getNode("c")).head);
+    }
+
+    @Test
+    void buildShardsInParallel(@TempDir Path dir) throws IOException {
+        // Split the network into node and path shards
+        JSONObject network;
+        try (BufferedReader input = new BufferedReader(new FileReader("src/test/resources/test-train-network.json"))) {
+            network = new JSONObject(new JSONTokener(input));
+        }
+        JSONArray stations = network.getJSONArray("stations"), lines = network.getJSONArray("lines");
+        File[] nodeShards = new File[2], pathShards = new File[3];
+        for (int k = 0; k < nodeShards.length; k++) {
+            JSONArray shard = new JSONArray();
+            for (int i = k; i < stations.length(); i += nodeShards.length) shard.put(stations.get(i));
+            nodeShards[k] = dir.resolve("stations-" + k + ".json").toFile();
+            Files.writeString(nodeShards[k].toPath(), shard.toString());
+        }
+        for (int k = 0; k < pathShards.length; k++) {
+            JSONArray shard = new JSONArray();
+            for (int i = k; i < lines.length(); i += pathShards.length) shard.put(lines.get(i));
+            pathShards[k] = dir.resolve("lines-" + k + ".json").toFile();
+            Files.writeString(pathShards[k].toPath(), new JSONObject().put("lines", shard).toString());
+        }
+
+        // Building in parallel gives the same graph as loading the shards one by one
+        Graph serial = new Graph();
+        for (File f : nodeShards) GraphLoader.loadNodes(serial, f, null);
+        for (File f : pathShards) GraphLoader.addPathsDataUndirected(serial, f, "lines", "name", "stations", "-f", "-b");
+        Graph built = new Graph();
+        new GraphBuilder().nodes(null, nodeShards)
+                .undirectedPaths("lines", "name", "stations", "-f", "-b", pathShards)
+                .build(built);
+
+        assertEquals(serial.nodeCount(), built.nodeCount());
+        assertEquals(serial.edgeCount(), built.edgeCount());
+        for (int v = 0; v < serial.nodeCount(); v++) {
+            assertEquals(serial.getNode(v).id, built.getNode(v).id);
+            assertEquals(serial.getNode(v).data.getString("name"), built.getNode(v).data.getString("name"));
+        }
+        for (int e = 0; e < serial.edgeCount(); e++) {
+            Edge a = serial.getEdge(e), b = built.getEdge(e);
+            assertEquals(a.tail.id, b.tail.id);
+            assertEquals(a.head.id, b.head.id);
+            assertEquals(a.data.getString("name"), b.data.getString("name"));
+        }
+    }
+
     private void edgeAssertions(Graph g, String tailId, String headId, String name) {
         Edge e = g.getEdge(tailId, headId);
         assertNotNull(e);
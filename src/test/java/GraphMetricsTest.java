@@ -0,0 +1,92 @@
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphMetricsTest {
+
+    @AfterEach
+    void disable() {
+        GraphMetrics.setEnabled(false);
+        GraphMetrics.reset();
+    }
+
+    @Test
+    void recordsQueriesAndLoaderPhases() throws IOException {
+        List<GraphMetrics.Sample> samples = new ArrayList<>();
+        GraphMetrics.Listener listener = samples::add;
+        GraphMetrics.addListener(listener);
+        try {
+            Graph g = new Graph();
+            GraphLoader.load(g, new File("src/test/resources/test-graph-vec2d-1.json"), "nodes", "paths", null,
+                    "nodes", null);
+            g.getShortestPath(g.getNode("1"), g.getNode("10"), "x", "y");
+            assertTrue(GraphMetrics.names().isEmpty());  // Nothing is recorded while disabled
+            assertTrue(samples.isEmpty());
+
+            GraphMetrics.setEnabled(true);
+            g = new Graph();
+            GraphLoader.load(g, new File("src/test/resources/test-graph-vec2d-1.json"), "nodes", "paths", null,
+                    "nodes", null);
+            ArrayList<Node> path = g.getShortestPath(g.getNode("1"), g.getNode("10"), "x", "y");
+            g.getConnectedComponents();
+
+            GraphMetrics.Histogram nanos = GraphMetrics.histogram("shortestPath.nanos");
+            assertEquals(1, nanos.count());
+            assertTrue(nanos.max() > 0);
+            assertTrue(GraphMetrics.histogram("shortestPath.heapPops").max() >= path.size());
+            assertTrue(GraphMetrics.histogram("shortestPath.edgesRelaxed").max() >= path.size() - 1);
+            assertEquals(g.nodeCount(), GraphMetrics.histogram("connectedComponents.nodesExpanded").max());
+            assertEquals(g.nodeCount(), GraphMetrics.histogram("load.nodes.records").max());
+            assertNotNull(GraphMetrics.histogram("load.parse.nanos"));
+            assertNotNull(GraphMetrics.histogram("load.edges.nanos"));
+            assertTrue(samples.stream().anyMatch(s -> s.operation.equals("shortestPath") && s.heapPushes > 0));
+        } finally {
+            GraphMetrics.removeListener(listener);
+        }
+    }
+
+    @Test
+    void emitsFlightRecorderEvents() throws IOException {
+        Graph g = new Graph();
+        GraphLoader.load(g, new File("src/test/resources/test-graph-vec2d-1.json"), "nodes", "paths", null, "nodes",
+                null);
+        Path file = Files.createTempFile("graph-metrics", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("graph.Query");
+            recording.start();
+            g.getShortestPath(g.getNode("1"), g.getNode("10"), "x", "y");
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(1, events.size());
+            assertEquals("shortestPath", events.get(0).getString("operation"));
+            assertTrue(events.get(0).getLong("heapPops") > 0);
+            assertTrue(GraphMetrics.names().isEmpty());  // The registry stays off
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void histogramPercentiles() {
+        GraphMetrics.Histogram h = new GraphMetrics.Histogram();
+        for (int i = 1; i <= 100; i++) h.record(i);
+        assertEquals(100, h.count());
+        assertEquals(50.5, h.mean());
+        assertEquals(100, h.max());
+        assertEquals(63, h.percentile(0.5));  // 50 falls in the bucket [32, 63]
+        assertEquals(100, h.percentile(1.0));
+    }
+}
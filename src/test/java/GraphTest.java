@@ -1,13 +1,34 @@
+import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Random;
 
 import static org.junit.jupiter.api.Assertions.*;
 class GraphTest {
 
+    @Test
+    void weightEditsReachRouting() {
+        Graph g = new Graph();
+        g.addEdge(new Node("A"), new Node("B"), new JSONObject().put("w", 1));
+        g.addEdge(g.getNode("B"), new Node("C"), new JSONObject().put("w", 1));
+        g.addEdge(g.getNode("A"), g.getNode("C"), new JSONObject().put("w", 5));
+        PathMetric metric = g.freeze().metric(null, null, "w");
+        assertEquals(3, g.getShortestPath(g.getNode("A"), g.getNode("C"), null, null, "w").size());
+
+        long version = g.version();
+        g.getEdge("A", "B").data.put("w", 100.0);
+        assertNotEquals(version, g.version());
+        assertEquals(2, g.getShortestPath(g.getNode("A"), g.getNode("C"), null, null, "w").size());
+        assertEquals(2, g.getShortestPath(g.getNode("A"), g.getNode("C"), metric).size()); // Stale metric re-resolved
+
+        g.getEdge("A", "C").addData(new JSONObject().put("w", 500));
+        assertEquals(3, g.getShortestPath(g.getNode("A"), g.getNode("C"), null, null, "w").size());
+    }
+
     @Test
     void getConnectedComponent() throws FileNotFoundException {
         // Create a basic graph
@@ -50,6 +71,265 @@ class GraphTest {
             assertNull(CC.getNode(nodeId));
     }
 
+    @Test
+    void getDistanceMatrix() throws FileNotFoundException {
+        Graph g = loadGraph("src/test/resources/test-graph-vec2d-1.json");
+        ArrayList<Node> nodes = new ArrayList<>();
+        for (int v = 0; v < g.nodeCount(); v++) nodes.add(g.getNode(v));
+
+        // Every cell agrees with a point to point query
+        DistanceMatrix m = g.getDistanceMatrix(nodes, nodes, null, true);
+        int[][] hops = m.toHopArray();
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int j = 0; j < nodes.size(); j++) {
+                ArrayList<Node> path = g.getShortestPath(nodes.get(i), nodes.get(j), "x", "y");
+                assertEquals(path == null ? -1 : path.size() - 1, hops[i][j]);
+                if (path != null) assertEquals(path.size(), m.getPath(i, j).size());
+                else assertNull(m.getPath(i, j));
+            }
+        }
+
+        DistanceMatrix noPaths = g.getDistanceMatrix(nodes.subList(0, 2), nodes, null, false);
+        assertEquals(m.distance(1, 5), noPaths.distance(1, 5));
+        assertThrows(IllegalStateException.class, () -> noPaths.getPath(0, 0));
+    }
+
+    @Test
+    void freezeIncremental() {
+        // Grow a random graph in steps, checking each incremental snapshot against one built from scratch
+        Random rnd = new Random(11);
+        Graph g = new Graph();
+        for (int step = 0; step < 20; step++) {
+            for (int i = 0; i < 50; i++) {
+                Node a = new Node("n" + rnd.nextInt(200 + step * 10)), b = new Node("n" + rnd.nextInt(200 + step * 10));
+                Node ga = g.getNode(a.id), gb = g.getNode(b.id);
+                g.addParallelEdge(ga == null ? a : ga, gb == null ? b : gb, null);
+            }
+            CompactGraph incremental = g.freeze(), full = CompactGraph.of(g);
+            assertEquals(full.nodeCount(), incremental.nodeCount());
+            assertEquals(full.edgeCount(), incremental.edgeCount());
+            for (int v = 0; v < full.nodeCount(); v++) {
+                assertEquals(full.edgeStart(v), incremental.edgeStart(v));
+                assertEquals(full.indexOf(full.node(v).id), incremental.indexOf(full.node(v).id));
+            }
+            for (int e = 0; e < full.edgeCount(); e++) {
+                assertEquals(full.edgeTarget(e), incremental.edgeTarget(e));
+                assertSame(full.edge(e), incremental.edge(e));
+                assertEquals(full.edgeId(e), incremental.edgeId(e));
+            }
+        }
+    }
+
+    @Test
+    void freezeIncrementalAcrossChunks() {
+        // Enough nodes for several chunks, with each step adding edges to a few of them and nodes to the last
+        Random rnd = new Random(5);
+        Graph g = new Graph();
+        int n = 3 * (1 << CompactGraph.CHUNK_SHIFT) + 100;
+        for (int v = 0; v < n; v++) g.addNode(new Node("n" + v));
+        for (int i = 0; i < 2 * n; i++) g.addParallelEdge(g.getNode(rnd.nextInt(n)), g.getNode(rnd.nextInt(n)), null);
+        g.freeze();
+        for (int step = 0; step < 30; step++) {
+            for (int i = 0; i < 3; i++)
+                g.addParallelEdge(g.getNode(rnd.nextInt(g.nodeCount())), new Node("m" + step + "-" + i), null);
+            g.addParallelEdge(g.getNode(rnd.nextInt(g.nodeCount())), g.getNode(rnd.nextInt(g.nodeCount())), null);
+            CompactGraph incremental = g.freeze(), full = CompactGraph.of(g);
+            assertEquals(full.nodeCount(), incremental.nodeCount());
+            assertEquals(full.edgeCount(), incremental.edgeCount());
+            for (int v = 0; v < full.nodeCount(); v++) {
+                assertEquals(full.edgeStart(v), incremental.edgeStart(v));
+                assertEquals(full.edgeEnd(v), incremental.edgeEnd(v));
+                assertSame(full.node(v), incremental.node(v));
+                assertEquals(v, incremental.indexOf(full.node(v).id));
+            }
+            for (int e = 0; e < full.edgeCount(); e++) {
+                assertEquals(full.edgeTarget(e), incremental.edgeTarget(e));
+                assertSame(full.edge(e), incremental.edge(e));
+                assertEquals(full.edgeId(e), incremental.edgeId(e));
+            }
+        }
+        assertEquals(-1, g.freeze().indexOf("m"));
+    }
+
+    @Test
+    void sameComponent() throws FileNotFoundException {
+        Graph g = loadGraph("src/test/resources/test-graph-undirected-1.json");
+        assertTrue(g.sameComponent(g.getNode("1"), g.getNode("7")));
+        assertFalse(g.sameComponent(g.getNode("1"), g.getNode("8")));
+        assertEquals(3, g.componentCount());
+        assertEquals(7, g.componentSize(g.getNode("3")));
+        assertEquals(g.componentId(g.getNode("2")), g.componentId(g.getNode("6")));
+
+        // Later additions are tracked incrementally
+        g.addEdge(g.getNode("7"), g.getNode("8"), null);
+        g.addNode(new Node("11"));
+        assertTrue(g.sameComponent(g.getNode("1"), g.getNode("8")));
+        assertEquals(3, g.componentCount());
+        assertEquals(1, g.componentSize(g.getNode("11")));
+        assertEquals(g.getComponentLabels().count(), g.componentCount());
+        assertEquals(-1, g.componentId(new Node("missing")));
+    }
+
+    @Test
+    void getReachableNodes() throws FileNotFoundException {
+        Graph g = loadGraph("src/test/resources/test-graph-vec2d-1.json", "nodes", "paths", "nodes", null);
+
+        // Directed paths only lead forward
+        assertEquals(10, g.getReachableNodes(g.getNode("1")).size());
+        assertEquals(Arrays.asList(g.getNode("8"), g.getNode("9"), g.getNode("10")), g.getReachableNodes(g.getNode("8")));
+        assertEquals(Arrays.asList(g.getNode("1"), g.getNode("2"), g.getNode("3")), g.getReachableNodes(g.getNode("1"), 1));
+        assertEquals(5, g.getReachableNodes(g.getNode("1"), 2).size());
+        assertTrue(g.isReachable(g.getNode("2"), g.getNode("10")));
+        assertFalse(g.isReachable(g.getNode("10"), g.getNode("2")));
+    }
+
+    @Test
+    void traversals() throws FileNotFoundException {
+        Graph g = loadGraph("src/test/resources/test-graph-undirected-1.json");
+        assertEquals(Arrays.asList("1", "2", "3", "6", "4", "7", "5"), ids(g.breadthFirst(g.getNode("1"))));
+        assertEquals(Arrays.asList("1", "2", "3", "4", "5", "7", "6"), ids(g.depthFirst(g.getNode("1"))));
+        assertEquals(Arrays.asList("1", "2", "3", "6"), ids(g.breadthFirst(g.getNode("1"), 1, null)));
+        assertEquals(Arrays.asList("1", "2", "3", "4", "6", "7"), ids(g.depthFirst(g.getNode("1"), 2, null)));
+
+        // Filtered out nodes are not traversed through
+        assertEquals(Arrays.asList("1", "2", "6", "7", "5", "4"),
+                ids(g.breadthFirst(g.getNode("1"), Integer.MAX_VALUE, n -> !n.id.equals("3"))));
+        assertEquals("7", g.breadthFirst(g.getNode("1")).filter(n -> n.id.equals("7")).findFirst().get().id);
+        assertEquals(0, g.breadthFirst(new Node("missing")).count());
+
+        // The hop limit is the shortest distance: c is first reached two hops down, then again in one, and leads to d
+        Graph h = new Graph();
+        Node a = new Node("a"), b = new Node("b"), c = new Node("c"), d = new Node("d");
+        h.addEdge(a, b, null);
+        h.addEdge(b, c, null);
+        h.addEdge(a, c, null);
+        h.addEdge(c, d, null);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(h.depthFirst(a, 2, null)));
+        assertEquals(Arrays.asList("a", "b", "c"), ids(h.depthFirst(a, 1, null)));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(h.view().depthFirst(a, 2)));
+
+        assertEquals(10, g.nodeStream().parallel().count());
+        assertEquals(g.edgeCount(), g.edgeStream().parallel().filter(e -> e.tail != e.head).count());
+    }
+
+    private static java.util.List<String> ids(java.util.stream.Stream<Node> nodes) {
+        return nodes.map(n -> n.id).collect(java.util.stream.Collectors.toList());
+    }
+
+    @Test
+    void getReachableNodesLarge() {
+        // Grid large enough for bottom-up steps and parallel expansion, with one unreachable node
+        int side = 300;
+        Graph g = new Graph();
+        for (int i = 0; i < side * side; i++) g.addNode(new Node(Integer.toString(i)));
+        for (int r = 0; r < side; r++) {
+            for (int c = 0; c < side; c++) {
+                String id = Integer.toString(r * side + c);
+                if (c + 1 < side) g.addEdge(id, Integer.toString(r * side + c + 1), null);
+                if (r + 1 < side) g.addEdge(id, Integer.toString((r + 1) * side + c), null);
+            }
+        }
+        g.addNode(new Node("island"));
+
+        assertEquals(side * side, g.getReachableNodes(g.getNode("0")).size());
+        assertEquals(6, g.getReachableNodes(g.getNode("0"), 2).size());
+        assertTrue(g.isReachable(g.getNode("0"), g.getNode(Integer.toString(side * side - 1))));
+        assertFalse(g.isReachable(g.getNode("0"), g.getNode("island")));
+        assertEquals(side * 2, g.getReachableNodes(g.getNode(Integer.toString(side * (side - 2)))).size());
+    }
+
+    @Test
+    void getComponentLabels() throws FileNotFoundException {
+        Graph g = loadGraph("src/test/resources/test-graph-undirected-1.json");
+        Components cc = g.getComponentLabels();
+
+        assertEquals(3, cc.count());
+        assertArrayEquals(new int[] {7, 2, 1}, cc.sizes());
+        for (String nodeId : new String[] {"1", "2", "3", "4", "5", "6", "7"})
+            assertEquals(0, cc.componentOf(g.indexOf(g.getNode(nodeId))));
+        assertEquals(1, cc.componentOf(g.indexOf(g.getNode("9"))));
+        assertEquals(2, cc.componentOf(g.indexOf(g.getNode("10"))));
+
+        // Only the requested component is materialised
+        Graph cc1 = cc.toGraph(g.freeze(), 1);
+        assertNotNull(cc1.getEdge("8", "9"));
+        assertNull(cc1.getNode("1"));
+    }
+
+    @Test
+    void getComponentLabelsParallel() {
+        // Large enough to be split across fork-join tasks: a chain per residue class mod 7
+        Graph g = new Graph();
+        int n = 50_000;
+        for (int i = 0; i < n; i++) g.addNode(new Node(Integer.toString(i)));
+        for (int i = 7; i < n; i++) g.addEdge(Integer.toString(i), Integer.toString(i - 7), null);
+        Components cc = g.getComponentLabels();
+
+        assertEquals(7, cc.count());
+        for (int i = 0; i < n; i++) assertEquals(i % 7, cc.componentOf(i));
+    }
+
+    @Test
+    void freeze() throws FileNotFoundException {
+        Graph g = loadGraph("src/test/resources/test-graph-undirected-1.json");
+        CompactGraph cg = g.freeze();
+
+        // Snapshot shares the graph's dense indices and adjacency
+        assertEquals(10, cg.nodeCount());
+        assertEquals(20, cg.edgeCount());
+        int v = cg.indexOf("3");
+        assertEquals(g.indexOf(g.getNode("3")), v);
+        assertEquals(g.getNode("3"), cg.node(v));
+        assertEquals(4, cg.degree(v));
+        for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++)
+            assertEquals(g.getEdge("3", cg.node(cg.edgeTarget(e)).id), cg.edge(e));
+        assertEquals(0, cg.degree(cg.indexOf("10")));
+        assertEquals(-1, cg.indexOf("11"));
+
+        // Snapshot is cached until the topology changes
+        assertSame(cg, g.freeze());
+        g.addEdge("9", "10", null);
+        assertNotSame(cg, g.freeze());
+        assertEquals(21, g.freeze().edgeCount());
+    }
+
+    @Test
+    void getEdge() {
+        // "Aa" and "BB" have equal hash codes, so every pair of them has the same Objects.hash
+        Graph g = new Graph();
+        for (String[] pair : new String[][] {{"Aa", "BB"}, {"BB", "Aa"}, {"Aa", "Aa"}})
+            g.addEdge(new Node(pair[0]), new Node(pair[1]), new JSONObject().put("pair", pair[0] + pair[1]));
+        g.addNode(new Node("BB"));
+
+        assertEquals("AaBB", g.getEdge("Aa", "BB").data.getString("pair"));
+        assertEquals("BBAa", g.getEdge("BB", "Aa").data.getString("pair"));
+        assertEquals("AaAa", g.getEdge("Aa", "Aa").data.getString("pair"));
+        assertNull(g.getEdge("BB", "BB"));
+        assertNull(g.getEdge("Aa", "Cc"));
+        assertFalse(g.addEdge("Aa", "BB", null));
+    }
+
+    @Test
+    void addParallelEdge() throws FileNotFoundException {
+        File file = new File("src/test/resources/test-train-network.json");
+        Graph g = new Graph();
+        GraphLoader.loadNodes(g, file, "stations");
+        GraphLoader.addPathsDataParallel(g, file, "lines", "name", "stations");
+
+        // Baker Street to Great Portland Street is served by two lines, each with its own edge
+        ArrayList<Edge> edges = g.getEdges("940GZZLUBST", "940GZZLUGPS");
+        assertEquals(2, edges.size());
+        assertEquals(edges.get(0), g.getEdge("940GZZLUBST", "940GZZLUGPS"));
+        assertEquals(edges.get(0), g.getAdjList().get(g.getNode("940GZZLUBST")).get(g.getNode("940GZZLUGPS")));
+
+        // The snapshot holds every parallel edge
+        CompactGraph cg = g.freeze();
+        assertEquals(g.edgeCount(), cg.edgeCount());
+        int v = cg.indexOf("940GZZLUBST"), count = 0;
+        for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) if (cg.node(cg.edgeTarget(e)).id.equals("940GZZLUGPS")) count++;
+        assertEquals(2, count);
+    }
+
     @Test
     void getShortestPath() throws FileNotFoundException {
         Graph g = loadGraph("src/test/resources/test-graph-vec2d-1.json", "nodes",
@@ -64,6 +344,26 @@ class GraphTest {
         );
     }
 
+    @Test
+    void getShortestPathWeighted() {
+        // Diamond where the fewest-hop path is not the lightest, and the lightest is found only via a later update
+        Graph g = new Graph();
+        for (String id : new String[] {"a", "b", "c", "d", "e"}) g.addNode(new Node(id, new JSONObject().put("x", 0).put("y", 0)));
+        g.addEdge("a", "b", new JSONObject().put("w", 1));
+        g.addEdge("a", "c", new JSONObject().put("w", 4));
+        g.addEdge("b", "c", new JSONObject().put("w", 1));
+        g.addEdge("c", "e", new JSONObject().put("w", 1));
+        g.addEdge("a", "d", new JSONObject().put("w", 2));
+        g.addEdge("d", "e", new JSONObject().put("w", 5));
+
+        assertEquals(Arrays.asList(g.getNode("a"), g.getNode("b"), g.getNode("c"), g.getNode("e")),
+                g.getShortestPath(g.getNode("a"), g.getNode("e"), "x", "y", "w"));
+        assertEquals(Arrays.asList(g.getNode("a"), g.getNode("b"), g.getNode("c"), g.getNode("e")),
+                g.getShortestPath(g.getNode("a"), g.getNode("e"), e -> e.data.getDouble("w")));
+        assertEquals(3, g.getShortestPath(g.getNode("a"), g.getNode("e"), "x", "y").size()); // Fewest hops
+        assertNull(g.getShortestPath(g.getNode("e"), g.getNode("a"), "x", "y", "w"));
+    }
+
     @Test
     void getShortestPathTrain() throws FileNotFoundException {
         Graph g = loadUndirectedGraph("src/test/resources/test-train-network.json", "stations",
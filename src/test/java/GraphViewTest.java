@@ -0,0 +1,133 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphViewTest {
+
+    private static Graph trainNetwork() throws IOException {
+        Graph g = new Graph();
+        GraphLoader.loadUndirected(g, new File("src/test/resources/test-train-network.json"), "stations", "lines",
+                "name", "stations", "-north", "-south", null);
+        return g;
+    }
+
+    @Test
+    void lineView() throws IOException {
+        Graph g = trainNetwork();
+        GraphView bakerloo = g.view().filterEdges(e -> e.data.getString("name").startsWith("Bakerloo"));
+        assertEquals(g.nodeCount(), bakerloo.size()); // Edge filters leave every node visible
+
+        GraphView line = bakerloo.getConnectedComponent(g.getNode("940GZZLUOXC"));
+        assertEquals(16, line.size());
+        assertTrue(line.contains(g.getNode("940GZZLUQPS")));
+        assertFalse(line.contains(g.getNode("940GZZLUTCR")));
+        assertEquals(30, line.edges().count()); // 15 segments, each way
+        assertTrue(line.edges().allMatch(e -> e.data.getString("name").startsWith("Bakerloo")));
+
+        // Components of the view are the line plus every other station on its own
+        ArrayList<GraphView> components = bakerloo.getConnectedComponents();
+        assertEquals(g.nodeCount() - 15, components.size());
+        assertEquals(1, components.stream().filter(c -> c.size() == 16).count());
+    }
+
+    @Test
+    void closedStationView() throws IOException {
+        Graph g = trainNetwork();
+        Node oxfordCircus = g.getNode("940GZZLUOXC");
+        Node src = g.getNode("940GZZLURGP"), dst = g.getNode("940GZZLUTCR");
+        assertTrue(g.getShortestPath(src, dst, null, null).contains(oxfordCircus));
+
+        GraphView open = g.view().filterNodes(n -> n != oxfordCircus);
+        assertEquals(g.nodeCount() - 1, open.size());
+        ArrayList<Node> detour = open.getShortestPath(src, dst, null, null, null);
+        assertFalse(detour.contains(oxfordCircus));
+        assertNull(open.getShortestPath(src, oxfordCircus, null, null, null));
+
+        // Same answers as on a copied graph, without the copy
+        Graph copy = open.toGraph();
+        assertEquals(copy.getShortestPath(src, dst, null, null).size(), detour.size());
+        assertEquals(ids(copy.breadthFirst(src).collect(Collectors.toList())),
+                ids(open.breadthFirst(src, Integer.MAX_VALUE).collect(Collectors.toList())));
+        assertEquals(copy.getConnectedComponents().size(), open.getConnectedComponents().size());
+        ShortestPathTree tree = open.getShortestPathTree(src, null);
+        assertFalse(tree.reached(g.indexOf(oxfordCircus)));
+        assertEquals(detour.size() - 1, tree.distance(g.indexOf(dst)));
+    }
+
+    @Test
+    void stronglyConnectedComponentsOfView() {
+        // Two 3-cycles joined both ways through x, and a one-way edge c -> d
+        Graph g = new Graph();
+        String[][] edges = {{"a", "b"}, {"b", "c"}, {"c", "a"}, {"d", "e"}, {"e", "f"}, {"f", "d"},
+                {"c", "x"}, {"x", "d"}, {"d", "x"}, {"x", "c"}, {"c", "d"}};
+        for (String[] e : edges) {
+            Node tail = g.getNode(e[0]), head = g.getNode(e[1]);
+            g.addEdge(tail == null ? new Node(e[0]) : tail, head == null ? new Node(e[1]) : head, null);
+        }
+        assertEquals(1, g.getStronglyConnectedComponents().size());
+
+        // Without x, and without the edge f -> d, the cycles separate and d, e, f fall apart
+        Node x = g.getNode("x"), d = g.getNode("d"), f = g.getNode("f");
+        GraphView view = g.view().filterNodes(n -> n != x)
+                .filterEdges(e -> !(e.tail == f && e.head == d));
+        ArrayList<GraphView> sccs = view.getStronglyConnectedComponents();
+        assertEquals(4, sccs.size());
+        assertEquals(3, sccs.get(0).size());
+        assertTrue(sccs.get(0).contains(g.getNode("a")));
+        assertEquals(0, sccs.stream().filter(c -> c.contains(x)).count()); // Hidden, so in no component view
+        Components labels = StronglyConnectedComponents.parallel(view, ForkJoinPool.commonPool());
+        assertEquals(labels.componentOf(g.indexOf(g.getNode("a"))), labels.componentOf(g.indexOf(g.getNode("c"))));
+        assertNotEquals(labels.componentOf(g.indexOf(d)), labels.componentOf(g.indexOf(f)));
+        assertNotEquals(labels.componentOf(g.indexOf(d)), labels.componentOf(g.indexOf(x)));
+
+        // Reachability follows only visible edges
+        assertTrue(g.isReachable(f, g.getNode("a")));
+        assertTrue(view.isReachable(g.getNode("a"), f));
+        assertFalse(view.isReachable(f, g.getNode("a")));
+        assertFalse(view.isReachable(g.getNode("a"), x));
+        assertEquals(1, view.reverse().degree(g.indexOf(d))); // Only c -> d is left into d
+        assertSame(view.reverse(), view.reverse());
+    }
+
+    @Test
+    void stronglyConnectedComponentsOfLargeView() {
+        // A random graph big enough for forward-backward, viewed without a third of its nodes and a third of its edges
+        Random rnd = new Random(3);
+        Graph g = new Graph();
+        int n = 3 * StronglyConnectedComponents.PARALLEL_THRESHOLD;
+        for (int v = 0; v < n; v++) g.addNode(new Node(Integer.toString(v)));
+        for (int i = 0; i < 2 * n; i++)
+            g.addParallelEdge(g.getNode(rnd.nextInt(n)), g.getNode(rnd.nextInt(n)), new JSONObject().put("k", i % 3));
+        GraphView view = g.view().filterNodes(node -> Integer.parseInt(node.id) % 3 != 0)
+                .filterEdges(e -> e.data.getInt("k") != 0);
+        Components labels = StronglyConnectedComponents.parallel(view, ForkJoinPool.commonPool());
+
+        // Same components as the copied subgraph
+        Graph copy = view.toGraph();
+        Components expected = copy.getStronglyConnectedComponentLabels();
+        CompactGraph cg = view.graph();
+        for (int v = 0; v < n; v++) {
+            for (int e = view.edgeStart(v); e < view.edgeEnd(v); e++) {
+                if (!view.edgeVisible(e)) continue;
+                int u = view.edgeTarget(e);
+                int cv = copy.indexOf(cg.node(v)), cu = copy.indexOf(cg.node(u));
+                assertEquals(expected.componentOf(cv) == expected.componentOf(cu),
+                        labels.componentOf(v) == labels.componentOf(u));
+            }
+        }
+        assertEquals(expected.count() + n - view.size(), labels.count()); // Plus a singleton per hidden node
+    }
+
+    private static List<String> ids(List<Node> nodes) {
+        return nodes.stream().map(n -> n.id).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,84 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedGraphTest {
+
+    @Test
+    void saveAndOpen(@TempDir Path dir) throws IOException {
+        Graph g = loadTrainNetwork();
+        File file = dir.resolve("train-network.bin").toFile();
+        GraphLoader.saveBinary(g, file);
+        MappedGraph mg = GraphLoader.openBinary(file);
+
+        // Topology and ids match the graph's snapshot
+        CompactGraph cg = g.freeze();
+        assertEquals(cg.nodeCount(), mg.nodeCount());
+        assertEquals(cg.edgeCount(), mg.edgeCount());
+        for (int v = 0; v < cg.nodeCount(); v++) {
+            assertEquals(cg.node(v).id, mg.id(v));
+            assertEquals(v, mg.indexOf(cg.node(v).id));
+            assertEquals(cg.edgeStart(v), mg.edgeStart(v));
+            for (int e = cg.edgeStart(v); e < cg.edgeEnd(v); e++) assertEquals(cg.edgeTarget(e), mg.edgeTarget(e));
+        }
+        assertEquals(-1, mg.indexOf("not a station"));
+
+        // Typed columns
+        int v = mg.indexOf("940GZZLUPCO");
+        assertEquals(MappedGraph.ColumnType.DOUBLE, mg.nodeColumn("longitude").type());
+        assertEquals(-0.133761, mg.nodeColumn("longitude").getDouble(v));
+        assertEquals("Pimlico", mg.nodeColumn("name").getString(v));
+        assertEquals(MappedGraph.ColumnType.STRING, mg.edgeColumn("name").type());
+
+        // Algorithms run on the mapping and agree with the graph
+        ArrayList<String> path = mg.getShortestPath("940GZZLUWLA", "940GZZLUWSP", mg.metric("longitude", "latitude", null));
+        assertEquals(Arrays.asList("940GZZLUWLA", "940GZZLULRD", "940GZZLULAD", "940GZZLUWSP"), path);
+
+        // Round trip back to a mutable graph
+        Graph copy = mg.toGraph();
+        assertEquals("Pimlico", copy.getNode("940GZZLUPCO").data.getString("name"));
+        assertEquals(g.getEdge("940GZZLUHSC", "940GZZLUGHK").data.getString("name"),
+                copy.getEdge("940GZZLUHSC", "940GZZLUGHK").data.getString("name"));
+    }
+
+    @Test
+    void missingValues(@TempDir Path dir) throws IOException {
+        Graph g = new Graph();
+        g.addNode(new Node("a", new JSONObject().put("floors", 3).put("code", "12")));
+        g.addNode(new Node("b"));
+        File file = dir.resolve("sparse.bin").toFile();
+        GraphLoader.saveBinary(g, file);
+        MappedGraph mg = GraphLoader.openBinary(file);
+
+        // Absent values read as the fallback, whatever the column type
+        assertEquals(3, mg.nodeColumn("floors").getLong(0, -1));
+        assertEquals(-1, mg.nodeColumn("floors").getLong(1, -1));
+        assertEquals(12, mg.nodeColumn("code").getLong(0, -1));
+        assertEquals(-1, mg.nodeColumn("code").getLong(1, -1));
+        assertTrue(Double.isNaN(mg.nodeColumn("floors").getDouble(1)));
+        assertNull(mg.nodeColumn("code").getString(1));
+    }
+
+    @Test
+    void rejectsOtherFiles(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("not-a-graph.bin");
+        Files.write(file, new byte[32]);
+        assertThrows(IOException.class, () -> MappedGraph.open(file.toFile()));
+    }
+
+    private static Graph loadTrainNetwork() throws IOException {
+        Graph g = new Graph();
+        GraphLoader.loadUndirected(g, new File("src/test/resources/test-train-network.json"), "stations", "lines",
+                "name", "stations", "-north", "-south", null);
+        return g;
+    }
+}
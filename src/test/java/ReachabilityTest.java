@@ -0,0 +1,36 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReachabilityTest {
+
+    @Test
+    void directionOptimisingMatchesTopDown() {
+        // Dense enough random digraph that the frontier quickly outweighs the unexplored edges and goes bottom-up
+        IntTopology t = randomTopology(200_000, 8, new Random(7));
+        IntTopology reverse = IntTopology.transpose(t);
+
+        long[] topDown = Reachability.reachable(t, null, 0, -1, Integer.MAX_VALUE, null);
+        long[] sequential = Reachability.reachable(t, reverse, 0, -1, Integer.MAX_VALUE, null);
+        long[] parallel = Reachability.reachable(t, reverse, 0, -1, Integer.MAX_VALUE, ForkJoinPool.commonPool());
+        assertArrayEquals(topDown, sequential);
+        assertArrayEquals(topDown, parallel);
+
+        // Hop limits agree too
+        for (int hops = 0; hops < 5; hops++) {
+            assertArrayEquals(Reachability.reachable(t, null, 0, -1, hops, null),
+                    Reachability.reachable(t, reverse, 0, -1, hops, ForkJoinPool.commonPool()));
+        }
+    }
+
+    private static IntTopology randomTopology(int n, int degree, Random rnd) {
+        int[] offsets = new int[n + 1], targets = new int[n * degree];
+        for (int v = 0; v < n; v++) offsets[v + 1] = offsets[v] + degree;
+        Arrays.setAll(targets, e -> rnd.nextInt(n));
+        return new IntTopology(offsets, targets);
+    }
+}
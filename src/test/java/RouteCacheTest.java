@@ -0,0 +1,125 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RouteCacheTest {
+
+    @Test
+    void cachesAndInvalidates() throws IOException {
+        Graph g = new Graph();
+        GraphLoader.load(g, new File("src/test/resources/test-graph-vec2d-1.json"), "nodes", "paths", null, "nodes", null);
+        RouteCache cache = new RouteCache(g, 64);
+
+        List<Node> path = cache.getShortestPath(g.getNode("1"), g.getNode("10"), "x", "y");
+        assertEquals(g.getShortestPath(g.getNode("1"), g.getNode("10"), "x", "y"), path);
+        assertSame(path, cache.getShortestPath(g.getNode("1"), g.getNode("10"), "x", "y"));
+        assertNull(cache.getShortestPath(g.getNode("10"), g.getNode("1"), "x", "y"));
+        assertNull(cache.getShortestPath(g.getNode("10"), g.getNode("1"), "x", "y"));
+        assertEquals(2, cache.hitCount());
+        assertEquals(2, cache.missCount());
+
+        // A new edge invalidates cached routes, including cached misses
+        g.addEdge("10", "1", null);
+        assertEquals(2, cache.getShortestPath(g.getNode("10"), g.getNode("1"), "x", "y").size());
+        assertEquals(3, cache.missCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void boundedUnderConcurrentQueries() throws Exception {
+        Graph g = new Graph();
+        GraphLoader.loadUndirected(g, new File("src/test/resources/test-train-network.json"), "stations", "lines",
+                "name", "stations", "-north", "-south", null);
+        RouteCache cache = new RouteCache(g, 32);
+        ArrayList<Node> stations = new ArrayList<>();
+        for (int i = 0; i < 40; i++) stations.add(g.getNode(i));
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    Node src = stations.get(i % 40), dst = stations.get((i * 7) % 40);
+                    assertEquals(g.getShortestPath(src, dst, "longitude", "latitude"),
+                            cache.getShortestPath(src, dst, "longitude", "latitude"));
+                }
+            }));
+        }
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertTrue(cache.size() <= 32);
+        assertTrue(cache.evictionCount() > 0);
+        assertEquals(8 * 2000, cache.hitCount() + cache.missCount());
+    }
+
+    @Test
+    void weightEditsInvalidate() {
+        Graph g = new Graph();
+        g.addEdge(new Node("a"), new Node("b"), new JSONObject().put("w", 1));
+        g.addEdge(g.getNode("b"), new Node("c"), new JSONObject().put("w", 1));
+        g.addEdge(g.getNode("a"), g.getNode("c"), new JSONObject().put("w", 5));
+        RouteCache cache = new RouteCache(g, 16);
+        assertEquals(3, cache.getShortestPath(g.getNode("a"), g.getNode("c"), null, null, "w").size());
+
+        g.getEdges("a", "b").get(0).data.put("w", 10);
+        assertEquals(2, cache.getShortestPath(g.getNode("a"), g.getNode("c"), null, null, "w").size());
+        assertEquals(2, cache.missCount());
+
+        // Edits to another graph leave the cached routes alone
+        Graph other = new Graph();
+        other.addEdge(new Node("a"), new Node("b"), new JSONObject().put("w", 1));
+        other.getEdges("a", "b").get(0).data.put("w", 2);
+        assertEquals(2, cache.getShortestPath(g.getNode("a"), g.getNode("c"), null, null, "w").size());
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void concurrentGraphUpdatedWhileQueried() throws Exception {
+        int length = 400;
+        ConcurrentGraph g = new ConcurrentGraph();
+        g.addNode(new Node("0"));
+        RouteCache cache = new RouteCache(g, 64);
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ArrayList<Future<?>> readers = new ArrayList<>();
+
+        // Readers query a few fixed routes along a growing chain: each is either not there yet or whole
+        for (int r = 0; r < 3; r++) {
+            readers.add(pool.submit(() -> {
+                Node src = new Node("0");
+                while (!done.get()) {
+                    for (int k = 50; k <= length; k += 50) {
+                        List<Node> path = cache.getShortestPath(src, new Node(Integer.toString(k)), null, null);
+                        if (path != null) assertEquals(k + 1, path.size());
+                    }
+                }
+            }));
+        }
+        for (int i = 0; i < length; i++) {
+            Node tail = g.snapshot().node(i);
+            g.addEdge(tail, new Node(Integer.toString(i + 1)), null);
+        }
+        done.set(true);
+        for (Future<?> f : readers) f.get();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        // No route cached as missing while the chain was short survives the writes
+        for (int k = 50; k <= length; k += 50)
+            assertEquals(k + 1, cache.getShortestPath(new Node("0"), new Node(Integer.toString(k)), null, null).size());
+    }
+}
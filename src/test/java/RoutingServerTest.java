@@ -0,0 +1,128 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutingServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    void batchesRequestsFromOneSource() throws Exception {
+        Graph g = new Graph();
+        GraphLoader.load(g, new File("src/test/resources/test-graph-vec2d-1.json"), "nodes", "paths", null, "nodes", null);
+        ArrayList<Node> expected = g.getShortestPath(g.getNode("1"), g.getNode("10"), "x", "y");
+        RoutingServer server = new RoutingServer(new ConcurrentGraph(g), new InetSocketAddress("localhost", 0),
+                "x", "y", null, 64, 200_000);
+        server.start();
+        try {
+            // Requests arriving within the window share one search
+            List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+            for (String to : new String[] {"10", "9", "8", "5"}) responses.add(get(server, "/route?from=1&to=" + to));
+            for (CompletableFuture<HttpResponse<String>> r : responses) assertEquals(200, r.get().statusCode());
+            assertEquals(1, server.searchCount());
+
+            JSONObject route = new JSONObject(responses.get(0).get().body());
+            assertEquals(expected.size(), route.getJSONArray("path").length());
+            assertEquals(expected.size() - 1, route.getDouble("distance"));
+            for (int i = 0; i < expected.size(); i++)
+                assertEquals(expected.get(i).id, route.getJSONArray("path").getString(i));
+
+            assertEquals(404, get(server, "/route?from=10&to=1").get().statusCode());
+            assertEquals(400, get(server, "/route?from=1&to=missing").get().statusCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void rejectsBeyondAdmissionLimit() throws Exception {
+        Graph g = new Graph();
+        GraphLoader.load(g, new File("src/test/resources/test-graph-vec2d-1.json"), "nodes", "paths", null, "nodes", null);
+        RoutingServer server = new RoutingServer(new ConcurrentGraph(g), new InetSocketAddress("localhost", 0),
+                "x", "y", null, 1, 1_000_000);
+        server.start();
+        try {
+            CompletableFuture<HttpResponse<String>> first = get(server, "/route?from=1&to=10");
+            while (server.requestCount() == 0) Thread.sleep(1); // First request now holds the only permit
+            HttpResponse<String> second = get(server, "/route?from=2&to=10").get();
+            assertEquals(503, second.statusCode());
+            assertEquals(200, first.get().statusCode());
+            assertEquals(1, server.rejectedCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void shedsWhenPoolIsSaturated() throws Exception {
+        if (!(RoutingServer.newExecutor(1) instanceof ThreadPoolExecutor)) return; // Virtual threads never saturate
+        Graph g = new Graph();
+        GraphLoader.load(g, new File("src/test/resources/test-graph-vec2d-1.json"), "nodes", "paths", null, "nodes", null);
+        RoutingServer server = new RoutingServer(new ConcurrentGraph(g), new InetSocketAddress("localhost", 0),
+                "x", "y", null, 1, 0);
+        server.start();
+        // Two clients that never finish their request headers tie up both pool threads, leaving the permit free
+        try (Socket slow1 = slowClient(server); Socket slow2 = slowClient(server)) {
+            Thread.sleep(500);
+            HttpResponse<String> shed = get(server, "/route?from=1&to=10").get();
+            assertEquals(503, shed.statusCode());
+            assertEquals(1, server.rejectedCount());
+            assertEquals(0, server.searchCount());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    void errorsAnswerEveryBatchedRequest() throws Exception {
+        Graph g = new Graph();
+        GraphLoader.load(g, new File("src/test/resources/test-graph-vec2d-1.json"), "nodes", "paths", null, "nodes", null);
+        ConcurrentGraph broken = new ConcurrentGraph(g) {
+            @Override public CompactGraph snapshot() { throw new AssertionError("Broken snapshot"); }
+        };
+        RoutingServer server = new RoutingServer(broken, new InetSocketAddress("localhost", 0), "x", "y", null, 4,
+                200_000);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            // Both requests share a batch whose search fails with an Error, and neither is left waiting
+            Future<?> first = pool.submit(() -> server.route(0, 9));
+            Future<?> second = pool.submit(() -> server.route(0, 8));
+            assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+            assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    private static Socket slowClient(RoutingServer server) throws IOException {
+        Socket socket = new Socket("localhost", server.port());
+        socket.getOutputStream().write("GET /route?from=1&to=10 HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().flush();
+        return socket;
+    }
+
+    private CompletableFuture<HttpResponse<String>> get(RoutingServer server, String path) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.port() + path)).build();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,65 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShortestPathTreeTest {
+
+    @Test
+    void deltaSteppingMatchesDijkstra() {
+        Graph g = new Graph();
+        Random rnd = new Random(11);
+        int n = 20000;
+        for (int v = 0; v < n; v++) g.addNode(new Node(Integer.toString(v), null));
+        for (int i = 0; i < 4 * n; i++) { // Integer weights, some zero, so distances are exact whatever the order
+            Node a = g.getNode(rnd.nextInt(n)), b = g.getNode(rnd.nextInt(n));
+            g.addParallelEdge(a, b, new JSONObject().put("w", rnd.nextInt(30)));
+        }
+        CompactGraph cg = g.freeze();
+        PathMetric metric = cg.metric(null, null, "w");
+        ShortestPathTree expected = ShortestPathTree.dijkstra(cg, 0, metric);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (double delta : new double[]{0, 1, 7, 1000}) {
+                ShortestPathTree tree = ShortestPathTree.deltaStepping(cg, 0, metric, delta, pool);
+                assertArrayEquals(expected.distances(), tree.distances());
+                assertEquals(-1, tree.predecessor(0));
+                for (int v = 1; v < n; v++) {
+                    if (!tree.reached(v)) {
+                        assertEquals(-1, tree.predecessor(v));
+                        continue;
+                    }
+                    // Each predecessor is one edge short of the node, so paths are real and shortest
+                    int u = tree.predecessor(v);
+                    double lightest = Double.POSITIVE_INFINITY;
+                    for (Edge e : g.getEdges(cg.node(u).id, cg.node(v).id))
+                        lightest = Math.min(lightest, e.data.getInt("w"));
+                    assertEquals(tree.distance(v), tree.distance(u) + lightest);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void getShortestPathTree() {
+        Graph g = new Graph();
+        g.addEdge(new Node("a"), new Node("b"), new JSONObject().put("w", 2));
+        g.addEdge(g.getNode("b"), new Node("c"), new JSONObject().put("w", 2));
+        g.addEdge(g.getNode("a"), g.getNode("c"), new JSONObject().put("w", 5));
+        g.addNode(new Node("d"));
+
+        ShortestPathTree tree = g.getShortestPathTree(g.getNode("a"), "w");
+        assertArrayEquals(new double[]{0, 2, 4, Double.POSITIVE_INFINITY}, tree.distances());
+        assertArrayEquals(new int[]{0, 1, 2}, tree.path(2));
+        assertNull(tree.path(3));
+        assertArrayEquals(new double[]{0, 1, 1, Double.POSITIVE_INFINITY},
+                g.getShortestPathTree(g.getNode("a"), null).distances());
+        assertNull(g.getShortestPathTree(new Node("x"), "w"));
+    }
+}
@@ -0,0 +1,58 @@
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpatialIndexTest {
+
+    @Test
+    void matchesLinearScan() {
+        Random rnd = new Random(7);
+        Graph g = new Graph();
+        for (int i = 0; i < 2000; i++) addNode(g, i, rnd.nextDouble(), rnd.nextDouble());
+        g.addNode(new Node("bare"));  // No coordinates, so never returned
+        SpatialIndex index = g.spatialIndex("x", "y");
+
+        // Nodes added after the build are first scanned as pending, then folded into the tree
+        for (int round = 0; round < 2; round++) {
+            for (int q = 0; q < 50; q++) {
+                double x = rnd.nextDouble(), y = rnd.nextDouble();
+                int[] byDistance = byDistance(g, x, y);
+                assertArrayEquals(Arrays.copyOf(byDistance, 5), index.nearest(x, y, 5));
+                assertEquals(g.getNode(byDistance[0]), g.getNearestNode(x, y, "x", "y"));
+
+                ArrayList<Node> expected = new ArrayList<>();
+                for (int v = 0; v < g.nodeCount(); v++) {
+                    JSONObject d = g.getNode(v).data;
+                    if (d.has("x") && Math.hypot(d.getDouble("x") - x, d.getDouble("y") - y) <= 0.05)
+                        expected.add(g.getNode(v));
+                }
+                assertEquals(expected, g.getNodesWithin(x, y, 0.05, "x", "y"));
+            }
+            for (int i = 0; i < 400; i++) addNode(g, 2000 + round * 400 + i, rnd.nextDouble(), rnd.nextDouble());
+        }
+        assertEquals(2800, g.getNodesInBox(0, 0, 1, 1, "x", "y").size());
+        assertEquals(2800, index.size());
+    }
+
+    private static void addNode(Graph g, int i, double x, double y) {
+        g.addNode(new Node(Integer.toString(i), new JSONObject().put("x", x).put("y", y)));
+    }
+
+    private static int[] byDistance(Graph g, double x, double y) {
+        return java.util.stream.IntStream.range(0, g.nodeCount())
+                .filter(v -> g.getNode(v).data.has("x"))
+                .boxed()
+                .sorted((a, b) -> Double.compare(distance(g, a, x, y), distance(g, b, x, y)))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    private static double distance(Graph g, int v, double x, double y) {
+        JSONObject d = g.getNode(v).data;
+        return Math.hypot(d.getDouble("x") - x, d.getDouble("y") - y);
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StronglyConnectedComponentsTest {
+
+    @Test
+    void getStronglyConnectedComponents() {
+        // Two cycles joined one way, plus a tail node: {a, b, c} -> {d, e} -> f
+        Graph g = new Graph();
+        String[][] edges = {{"a", "b"}, {"b", "c"}, {"c", "a"}, {"c", "d"}, {"d", "e"}, {"e", "d"}, {"e", "f"}};
+        for (String[] e : edges) g.addEdge(new Node(e[0]), new Node(e[1]), null);
+        g.addEdge(g.getNode("a"), g.getNode("b"), null);
+        ArrayList<Graph> sccs = g.getStronglyConnectedComponents();
+
+        assertEquals(3, sccs.size());
+        assertNotNull(sccs.get(0).getEdge("c", "a"));
+        assertNull(sccs.get(0).getNode("d"));
+        assertNotNull(sccs.get(1).getEdge("e", "d"));
+        assertNotNull(sccs.get(2).getNode("f"));
+
+        // Condensation is the chain of components
+        Components labels = g.getStronglyConnectedComponentLabels();
+        IntTopology dag = StronglyConnectedComponents.condensation(g.freeze(), labels);
+        assertEquals(3, dag.nodeCount());
+        assertEquals(2, dag.edgeCount());
+        assertEquals(1, dag.edgeTarget(dag.edgeStart(0)));
+        assertEquals(2, dag.edgeTarget(dag.edgeStart(1)));
+    }
+
+    @Test
+    void deepChainDoesNotOverflow() {
+        // One million node cycle: recursive Tarjan would overflow the call stack
+        int n = 1_000_000;
+        int[] offsets = new int[n + 1], targets = new int[n];
+        for (int v = 0; v < n; v++) { offsets[v + 1] = v + 1; targets[v] = (v + 1) % n; }
+        Components scc = StronglyConnectedComponents.tarjan(new IntTopology(offsets, targets));
+        assertEquals(1, scc.count());
+        assertEquals(n, scc.size(0));
+    }
+
+    @Test
+    void longChainsOfSmallCycles() {
+        // 2-cycles 2i <-> 2i+1 chained by 2i+1 -> 2i+2: trim-2 peels them all off
+        int n = 200_000;
+        int[] offsets = new int[n + 1], targets = new int[2 * n];
+        int m = 0;
+        for (int v = 0; v < n; v++) {
+            targets[m++] = (v % 2 == 0) ? v + 1 : v - 1;
+            if (v % 2 == 1 && v + 1 < n) targets[m++] = v + 1;
+            offsets[v + 1] = m;
+        }
+        Components pairs = StronglyConnectedComponents.of(new IntTopology(offsets, Arrays.copyOf(targets, m)));
+        assertEquals(n / 2, pairs.count());
+        for (int i = 0; i < pairs.count(); i++) assertEquals(2, pairs.size(i));
+
+        // 3-cycles chained the same way survive trimming, so forward-backward peels them off without nesting
+        n = 60_000;
+        offsets = new int[n + 1];
+        m = 0;
+        for (int v = 0; v < n; v++) {
+            targets[m++] = (v % 3 == 2) ? v - 2 : v + 1;
+            if (v % 3 == 2 && v + 1 < n) targets[m++] = v + 1;
+            offsets[v + 1] = m;
+        }
+        IntTopology triples = new IntTopology(offsets, Arrays.copyOf(targets, m));
+        Components expected = StronglyConnectedComponents.tarjan(triples);
+        Components actual = StronglyConnectedComponents.parallel(triples, ForkJoinPool.commonPool());
+        assertEquals(n / 3, actual.count());
+        assertArrayEquals(expected.labels(), actual.labels());
+    }
+
+    @Test
+    void parallelMatchesTarjan() {
+        // Sparse random digraph with many small and one large component
+        Random rnd = new Random(42);
+        int n = 100_000, m = 130_000;
+        int[] offsets = new int[n + 1], targets = new int[m];
+        int[] tails = new int[m];
+        for (int i = 0; i < m; i++) { tails[i] = rnd.nextInt(n); offsets[tails[i] + 1]++; }
+        for (int v = 0; v < n; v++) offsets[v + 1] += offsets[v];
+        int[] fill = java.util.Arrays.copyOf(offsets, n);
+        for (int i = 0; i < m; i++) targets[fill[tails[i]]++] = rnd.nextInt(n);
+        IntTopology t = new IntTopology(offsets, targets);
+
+        Components expected = StronglyConnectedComponents.tarjan(t);
+        Components actual = StronglyConnectedComponents.parallel(t, ForkJoinPool.commonPool());
+        assertTrue(expected.count() > 1 && expected.count() < n);
+        assertArrayEquals(expected.labels(), actual.labels());
+        assertArrayEquals(expected.sizes(), actual.sizes());
+    }
+}